@@ -0,0 +1,61 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler.bench
+
+import java.util.concurrent.TimeUnit
+import onion.compiler.ClassTable
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+import scala.compiletime.uninitialized
+
+/**
+ * Cost of `ClassTable.load` for the JDK classes nearly every program uses:
+ * `cold` reads them into a fresh table (what each compilation pays),
+ * `warm` looks them up again in a table that already holds them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+class ClassTableBenchmarks {
+  private val classPath = "."
+
+  private val common = Seq(
+    "java.lang.Object", "java.lang.String", "java.lang.StringBuilder", "java.lang.Integer",
+    "java.lang.Long", "java.lang.Double", "java.lang.Boolean", "java.lang.Math",
+    "java.lang.System", "java.lang.Iterable", "java.util.List", "java.util.ArrayList",
+    "java.util.Map", "java.util.HashMap", "java.util.Set", "java.util.HashSet",
+    "java.util.Iterator", "java.util.Collections", "java.io.PrintStream", "java.util.function.Function"
+  )
+
+  private var loaded: ClassTable = uninitialized
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    loaded = new ClassTable(classPath)
+    for (name <- common) {
+      if (loaded.load(name) == null) throw new IllegalStateException(s"cannot load $name")
+    }
+  }
+
+  @TearDown(Level.Trial)
+  def tearDown(): Unit = loaded.close()
+
+  @Benchmark
+  def cold(blackhole: Blackhole): Unit = {
+    val table = new ClassTable(classPath)
+    try common.foreach(name => blackhole.consume(table.load(name)))
+    finally table.close()
+  }
+
+  @Benchmark
+  def warm(blackhole: Blackhole): Unit =
+    common.foreach(name => blackhole.consume(loaded.load(name)))
+}
@@ -0,0 +1,123 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler.bench
+
+import java.io.{File, Reader, StringReader}
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import onion.compiler.InputSource
+
+/**
+ * Programs the benchmarks compile.  A corpus is a list of programs, each a
+ * list of sources compiled together; the `run/` samples are separate
+ * programs (several of them are scripts with clashing class names), while
+ * each generated corpus is one large program.
+ *
+ * The generated programs are deterministic so results stay comparable
+ * across runs and releases.
+ */
+object Corpus {
+  /** A source that can be read any number of times. */
+  final case class Source(name: String, text: String) extends InputSource {
+    def openReader: Reader = new StringReader(text)
+  }
+
+  val Names: Seq[String] = Seq("samples", "methods", "generics", "closures")
+
+  def apply(name: String): Seq[Seq[Source]] = name match {
+    case "samples" => samples()
+    case "methods" => Seq(methods(classes = 20, methodsPerClass = 100))
+    case "generics" => Seq(generics(classes = 20, chainsPerClass = 20, depth = 8))
+    case "closures" => Seq(closures(classes = 20, closuresPerClass = 50))
+    case _ => throw new IllegalArgumentException(s"unknown corpus: $name (expected one of ${Names.mkString(", ")})")
+  }
+
+  /**
+   * The samples in `run/`, found through the `onion.samples` system
+   * property or a `run` directory in or next to the working directory.
+   */
+  def samples(): Seq[Seq[Source]] = {
+    val candidates = Option(System.getProperty("onion.samples")).toSeq ++ Seq("run", "../run")
+    val dir = candidates.map(new File(_)).find(_.isDirectory).getOrElse {
+      throw new IllegalStateException(s"cannot find the run/ samples (tried ${candidates.mkString(", ")})")
+    }
+    dir.listFiles().filter(_.getName.endsWith(".on")).sortBy(_.getName).toSeq.map { file =>
+      Seq(Source(file.getName, new String(Files.readAllBytes(file.toPath), StandardCharsets.UTF_8)))
+    }
+  }
+
+  /** Classes of static methods, each calling the previous one. */
+  def methods(classes: Int, methodsPerClass: Int): Seq[Source] =
+    for (c <- 0 until classes) yield {
+      val body = new StringBuilder
+      body ++= s"class Methods$c {\npublic:\n"
+      for (m <- 0 until methodsPerClass) {
+        val previous =
+          if (m > 0) s"Methods$c::m${m - 1}(x)"
+          else if (c > 0) s"Methods${c - 1}::m${methodsPerClass - 1}(x)"
+          else "x"
+        body ++= s"  static def m$m(x: Int): Int = $previous + $m\n"
+      }
+      body ++= "}\n"
+      Source(s"Methods$c.on", body.toString)
+    }
+
+  /**
+   * A generic cell type and classes whose methods wrap and unwrap it `depth`
+   * times through generic method calls.
+   */
+  def generics(classes: Int, chainsPerClass: Int, depth: Int): Seq[Source] = {
+    val cell =
+      """class Cell[T] {
+        |  val value: T;
+        |public:
+        |  def this(value: T) {
+        |    this.value = value
+        |  }
+        |  def get: T {
+        |    return this.value
+        |  }
+        |}
+        |""".stripMargin
+    val users = for (c <- 0 until classes) yield {
+      val body = new StringBuilder
+      body ++= s"class Generics$c {\npublic:\n"
+      body ++= "  static def id[A extends Object](x: A): A {\n    return x\n  }\n"
+      for (m <- 0 until chainsPerClass) {
+        var wrapped = "s"
+        var tpe = "String"
+        for (_ <- 0 until depth) {
+          wrapped = s"Generics$c::id(new Cell[$tpe]($wrapped))"
+          tpe = s"Cell[$tpe]"
+        }
+        body ++= s"  static def chain$m(s: String): String {\n"
+        body ++= s"    val wrapped: $tpe = $wrapped\n"
+        body ++= s"    return wrapped${".get" * depth}\n  }\n"
+      }
+      body ++= "}\n"
+      Source(s"Generics$c.on", body.toString)
+    }
+    Source("Cell.on", cell) +: users
+  }
+
+  /** Classes whose methods create and compose many small closures. */
+  def closures(classes: Int, closuresPerClass: Int): Seq[Source] =
+    for (c <- 0 until classes) yield {
+      val body = new StringBuilder
+      body ++= s"class Closures$c {\npublic:\n"
+      body ++= "  static def compose(f: Int -> Int, g: Int -> Int): Int -> Int {\n"
+      body ++= "    return (x: Int) -> { return g(f(x)); }\n  }\n"
+      body ++= "  static def run(seed: Int): Int {\n"
+      body ++= "    var f: Int -> Int = (x: Int) -> { return x; }\n"
+      for (i <- 0 until closuresPerClass) {
+        body ++= s"    f = Closures$c::compose(f, (x: Int) -> { return x + seed * $i; })\n"
+      }
+      body ++= "    return f(seed)\n  }\n}\n"
+      Source(s"Closures$c.on", body.toString)
+    }
+}
@@ -0,0 +1,106 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler.bench
+
+import java.util.concurrent.TimeUnit
+import onion.compiler.{AST, ClassTable, CompilationOutcome, CompiledClass, CompilerConfig, OnionCompiler, Optimizing, Parsing, Rewriting, TypedAST, TypedGenerating, Typing, WarningLevel}
+import onion.compiler.CompilationOutcome.{Failure, Success}
+import org.openjdk.jmh.annotations._
+import scala.compiletime.uninitialized
+
+/**
+ * Throughput of each compiler phase on its own, and of a whole compilation,
+ * per corpus (see [[Corpus]]).  One operation processes every program of the
+ * corpus.  The inputs of a phase are produced once by running the phases
+ * before it, so only the measured phase runs inside the benchmark.  The
+ * optimizing phase rewrites its input in place and gets freshly typed
+ * classes for every call (see [[TypedCorpus]]).
+ *
+ * Run with `sbt bench` (which adds `-prof gc`) to get allocation rates next
+ * to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+class PhaseBenchmarks {
+  @Param(Array("samples", "methods", "generics", "closures"))
+  var corpus: String = uninitialized
+
+  private[bench] val config = CompilerConfig(Seq("."), "", "UTF-8", "", 100, warningLevel = WarningLevel.Off)
+
+  private var programs: Seq[Seq[Corpus.Source]] = uninitialized
+  private var parsed: Seq[Seq[AST.CompilationUnit]] = uninitialized
+  private[bench] var rewritten: Seq[Seq[AST.CompilationUnit]] = uninitialized
+  private var optimized: Seq[(Seq[TypedAST.ClassDefinition], ClassTable)] = uninitialized
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    // Some samples no longer compile; they are left out (and reported) rather
+    // than failing the whole run, while generated corpora must compile
+    programs = Corpus(corpus).filter { program =>
+      new OnionCompiler(config).compile(program) match {
+        case Success(_) => true
+        case Failure(_) if corpus == "samples" =>
+          System.err.println(s"skipping sample ${program.map(_.name).mkString(", ")}: it does not compile")
+          false
+        case Failure(errors) =>
+          throw new IllegalStateException(s"corpus $corpus does not compile:\n${errors.mkString("\n")}")
+      }
+    }
+    parsed = programs.map(new Parsing(config).process(_))
+    rewritten = parsed.map(new Rewriting(config).process(_))
+    optimized = PhaseBenchmarks.typeAll(config, rewritten).map { case (classes, table) =>
+      (new Optimizing(config).process(classes), table)
+    }
+  }
+
+  @Benchmark
+  def parsing(): Seq[Seq[AST.CompilationUnit]] =
+    programs.map(new Parsing(config).process(_))
+
+  @Benchmark
+  def rewriting(): Seq[Seq[AST.CompilationUnit]] =
+    parsed.map(new Rewriting(config).process(_))
+
+  @Benchmark
+  def typing(): Seq[Seq[TypedAST.ClassDefinition]] =
+    rewritten.map(new Typing(config).process(_))
+
+  @Benchmark
+  def optimizing(input: TypedCorpus): Seq[Seq[TypedAST.ClassDefinition]] =
+    input.typed.map { case (classes, _) => new Optimizing(config).process(classes) }
+
+  @Benchmark
+  def generating(): Seq[Seq[CompiledClass]] =
+    optimized.map { case (classes, table) => new TypedGenerating(config, table).process(classes) }
+
+  @Benchmark
+  def compile(): Seq[CompilationOutcome] =
+    programs.map(new OnionCompiler(config).compile(_))
+}
+
+object PhaseBenchmarks {
+  private[bench] def typeAll(config: CompilerConfig, programs: Seq[Seq[AST.CompilationUnit]]): Seq[(Seq[TypedAST.ClassDefinition], ClassTable)] =
+    programs.map { units =>
+      val typing = new Typing(config)
+      (typing.process(units), typing.table_)
+    }
+}
+
+/** The corpus of a [[PhaseBenchmarks]] run, typed anew before each call of a benchmark. */
+@State(Scope.Thread)
+class TypedCorpus {
+  var typed: Seq[(Seq[TypedAST.ClassDefinition], ClassTable)] = uninitialized
+
+  @Setup(Level.Invocation)
+  def setup(benchmarks: PhaseBenchmarks): Unit =
+    typed = PhaseBenchmarks.typeAll(benchmarks.config, benchmarks.rewritten)
+}
@@ -106,7 +106,7 @@ public final class Colls {
      * @return a list containing integers from start to end-1 with the given step
      */
     public static List<Integer> rangeWithStep(int start, int end, int step) {
-        if (step == 0) throw new IllegalArgumentException("Step cannot be zero");
+        requireStep(step);
         List<Integer> result = new ArrayList<>();
         if (step > 0) {
             for (int i = start; i < end; i += step) {
@@ -120,6 +120,17 @@ public final class Colls {
         return java.util.Collections.unmodifiableList(result);
     }
 
+    /**
+     * Checks the step of a range; foreach loops over {@code rangeWithStep} call it instead of building the list.
+     * @param step the step between consecutive values
+     * @return the step
+     * @throws IllegalArgumentException if the step is zero
+     */
+    public static int requireStep(int step) {
+        if (step == 0) throw new IllegalArgumentException("Step cannot be zero");
+        return step;
+    }
+
     // ===== Set Creation =====
 
     /**
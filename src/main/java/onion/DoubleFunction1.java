@@ -0,0 +1,25 @@
+package onion;
+
+/**
+ * A {@link Function1} from a double, called without boxing the argument
+ * through {@link #apply}.  Closures of type {@code Double -> R}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ *
+ * @param <R> the result type
+ */
+public interface DoubleFunction1<R> extends Function1<Double, R> {
+  R apply(double arg);
+
+  @Override
+  default R call(Double arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static <R> R invoke(Function1<Double, R> function, double arg) {
+    return function instanceof DoubleFunction1<R> specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
@@ -0,0 +1,26 @@
+package onion;
+
+/**
+ * A {@link Function2} from two doubles, called without boxing the arguments
+ * through {@link #apply}.  Closures of type {@code (Double, Double) -> R}
+ * implement it; {@link #call} unboxes its arguments and delegates to it.
+ *
+ * @param <R> the result type
+ */
+public interface DoubleFunction2<R> extends Function2<Double, Double, R> {
+  R apply(double arg1, double arg2);
+
+  @Override
+  default R call(Double arg1, Double arg2) {
+    return apply(arg1, arg2);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg1} and {@code arg2}, through
+   * {@link #apply} if it implements this interface and through
+   * {@link Function2#call} otherwise.
+   */
+  static <R> R invoke(Function2<Double, Double, R> function, double arg1, double arg2) {
+    return function instanceof DoubleFunction2<R> specialized ? specialized.apply(arg1, arg2) : function.call(arg1, arg2);
+  }
+}
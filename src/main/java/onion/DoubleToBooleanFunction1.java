@@ -0,0 +1,23 @@
+package onion;
+
+/**
+ * A {@link Function1} from a double to a boolean, called without boxing
+ * through {@link #apply}.  Closures of type {@code Double -> Boolean}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ */
+public interface DoubleToBooleanFunction1 extends Function1<Double, Boolean> {
+  boolean apply(double arg);
+
+  @Override
+  default Boolean call(Double arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static boolean invoke(Function1<Double, Boolean> function, double arg) {
+    return function instanceof DoubleToBooleanFunction1 specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
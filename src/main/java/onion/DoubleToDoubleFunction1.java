@@ -0,0 +1,23 @@
+package onion;
+
+/**
+ * A {@link Function1} from a double to a double, called without boxing
+ * through {@link #apply}.  Closures of type {@code Double -> Double}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ */
+public interface DoubleToDoubleFunction1 extends Function1<Double, Double> {
+  double apply(double arg);
+
+  @Override
+  default Double call(Double arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static double invoke(Function1<Double, Double> function, double arg) {
+    return function instanceof DoubleToDoubleFunction1 specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
@@ -0,0 +1,24 @@
+package onion;
+
+/**
+ * A {@link Function2} from two doubles to a double, called without boxing
+ * through {@link #apply}.  Closures of type {@code (Double, Double) -> Double}
+ * implement it; {@link #call} unboxes its arguments and delegates to it.
+ */
+public interface DoubleToDoubleFunction2 extends Function2<Double, Double, Double> {
+  double apply(double arg1, double arg2);
+
+  @Override
+  default Double call(Double arg1, Double arg2) {
+    return apply(arg1, arg2);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg1} and {@code arg2}, through
+   * {@link #apply} if it implements this interface and through
+   * {@link Function2#call} otherwise.
+   */
+  static double invoke(Function2<Double, Double, Double> function, double arg1, double arg2) {
+    return function instanceof DoubleToDoubleFunction2 specialized ? specialized.apply(arg1, arg2) : function.call(arg1, arg2);
+  }
+}
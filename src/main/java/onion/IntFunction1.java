@@ -0,0 +1,25 @@
+package onion;
+
+/**
+ * A {@link Function1} from an int, called without boxing the argument
+ * through {@link #apply}.  Closures of type {@code Int -> R}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ *
+ * @param <R> the result type
+ */
+public interface IntFunction1<R> extends Function1<Integer, R> {
+  R apply(int arg);
+
+  @Override
+  default R call(Integer arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static <R> R invoke(Function1<Integer, R> function, int arg) {
+    return function instanceof IntFunction1<R> specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
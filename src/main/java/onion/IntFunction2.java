@@ -0,0 +1,26 @@
+package onion;
+
+/**
+ * A {@link Function2} from two ints, called without boxing the arguments
+ * through {@link #apply}.  Closures of type {@code (Int, Int) -> R}
+ * implement it; {@link #call} unboxes its arguments and delegates to it.
+ *
+ * @param <R> the result type
+ */
+public interface IntFunction2<R> extends Function2<Integer, Integer, R> {
+  R apply(int arg1, int arg2);
+
+  @Override
+  default R call(Integer arg1, Integer arg2) {
+    return apply(arg1, arg2);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg1} and {@code arg2}, through
+   * {@link #apply} if it implements this interface and through
+   * {@link Function2#call} otherwise.
+   */
+  static <R> R invoke(Function2<Integer, Integer, R> function, int arg1, int arg2) {
+    return function instanceof IntFunction2<R> specialized ? specialized.apply(arg1, arg2) : function.call(arg1, arg2);
+  }
+}
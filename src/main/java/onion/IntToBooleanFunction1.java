@@ -0,0 +1,23 @@
+package onion;
+
+/**
+ * A {@link Function1} from an int to a boolean, called without boxing
+ * through {@link #apply}.  Closures of type {@code Int -> Boolean}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ */
+public interface IntToBooleanFunction1 extends Function1<Integer, Boolean> {
+  boolean apply(int arg);
+
+  @Override
+  default Boolean call(Integer arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static boolean invoke(Function1<Integer, Boolean> function, int arg) {
+    return function instanceof IntToBooleanFunction1 specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
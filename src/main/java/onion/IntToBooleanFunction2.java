@@ -0,0 +1,24 @@
+package onion;
+
+/**
+ * A {@link Function2} from two ints to a boolean, called without boxing
+ * through {@link #apply}.  Closures of type {@code (Int, Int) -> Boolean}
+ * implement it; {@link #call} unboxes its arguments and delegates to it.
+ */
+public interface IntToBooleanFunction2 extends Function2<Integer, Integer, Boolean> {
+  boolean apply(int arg1, int arg2);
+
+  @Override
+  default Boolean call(Integer arg1, Integer arg2) {
+    return apply(arg1, arg2);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg1} and {@code arg2}, through
+   * {@link #apply} if it implements this interface and through
+   * {@link Function2#call} otherwise.
+   */
+  static boolean invoke(Function2<Integer, Integer, Boolean> function, int arg1, int arg2) {
+    return function instanceof IntToBooleanFunction2 specialized ? specialized.apply(arg1, arg2) : function.call(arg1, arg2);
+  }
+}
@@ -0,0 +1,23 @@
+package onion;
+
+/**
+ * A {@link Function1} from an int to an int, called without boxing
+ * through {@link #apply}.  Closures of type {@code Int -> Int}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ */
+public interface IntToIntFunction1 extends Function1<Integer, Integer> {
+  int apply(int arg);
+
+  @Override
+  default Integer call(Integer arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static int invoke(Function1<Integer, Integer> function, int arg) {
+    return function instanceof IntToIntFunction1 specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
@@ -0,0 +1,24 @@
+package onion;
+
+/**
+ * A {@link Function2} from two ints to an int, called without boxing
+ * through {@link #apply}.  Closures of type {@code (Int, Int) -> Int}
+ * implement it; {@link #call} unboxes its arguments and delegates to it.
+ */
+public interface IntToIntFunction2 extends Function2<Integer, Integer, Integer> {
+  int apply(int arg1, int arg2);
+
+  @Override
+  default Integer call(Integer arg1, Integer arg2) {
+    return apply(arg1, arg2);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg1} and {@code arg2}, through
+   * {@link #apply} if it implements this interface and through
+   * {@link Function2#call} otherwise.
+   */
+  static int invoke(Function2<Integer, Integer, Integer> function, int arg1, int arg2) {
+    return function instanceof IntToIntFunction2 specialized ? specialized.apply(arg1, arg2) : function.call(arg1, arg2);
+  }
+}
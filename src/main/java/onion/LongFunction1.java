@@ -0,0 +1,25 @@
+package onion;
+
+/**
+ * A {@link Function1} from a long, called without boxing the argument
+ * through {@link #apply}.  Closures of type {@code Long -> R}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ *
+ * @param <R> the result type
+ */
+public interface LongFunction1<R> extends Function1<Long, R> {
+  R apply(long arg);
+
+  @Override
+  default R call(Long arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static <R> R invoke(Function1<Long, R> function, long arg) {
+    return function instanceof LongFunction1<R> specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
@@ -0,0 +1,26 @@
+package onion;
+
+/**
+ * A {@link Function2} from two longs, called without boxing the arguments
+ * through {@link #apply}.  Closures of type {@code (Long, Long) -> R}
+ * implement it; {@link #call} unboxes its arguments and delegates to it.
+ *
+ * @param <R> the result type
+ */
+public interface LongFunction2<R> extends Function2<Long, Long, R> {
+  R apply(long arg1, long arg2);
+
+  @Override
+  default R call(Long arg1, Long arg2) {
+    return apply(arg1, arg2);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg1} and {@code arg2}, through
+   * {@link #apply} if it implements this interface and through
+   * {@link Function2#call} otherwise.
+   */
+  static <R> R invoke(Function2<Long, Long, R> function, long arg1, long arg2) {
+    return function instanceof LongFunction2<R> specialized ? specialized.apply(arg1, arg2) : function.call(arg1, arg2);
+  }
+}
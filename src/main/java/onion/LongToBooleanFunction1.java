@@ -0,0 +1,23 @@
+package onion;
+
+/**
+ * A {@link Function1} from a long to a boolean, called without boxing
+ * through {@link #apply}.  Closures of type {@code Long -> Boolean}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ */
+public interface LongToBooleanFunction1 extends Function1<Long, Boolean> {
+  boolean apply(long arg);
+
+  @Override
+  default Boolean call(Long arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static boolean invoke(Function1<Long, Boolean> function, long arg) {
+    return function instanceof LongToBooleanFunction1 specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
@@ -0,0 +1,24 @@
+package onion;
+
+/**
+ * A {@link Function2} from two longs to a boolean, called without boxing
+ * through {@link #apply}.  Closures of type {@code (Long, Long) -> Boolean}
+ * implement it; {@link #call} unboxes its arguments and delegates to it.
+ */
+public interface LongToBooleanFunction2 extends Function2<Long, Long, Boolean> {
+  boolean apply(long arg1, long arg2);
+
+  @Override
+  default Boolean call(Long arg1, Long arg2) {
+    return apply(arg1, arg2);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg1} and {@code arg2}, through
+   * {@link #apply} if it implements this interface and through
+   * {@link Function2#call} otherwise.
+   */
+  static boolean invoke(Function2<Long, Long, Boolean> function, long arg1, long arg2) {
+    return function instanceof LongToBooleanFunction2 specialized ? specialized.apply(arg1, arg2) : function.call(arg1, arg2);
+  }
+}
@@ -0,0 +1,23 @@
+package onion;
+
+/**
+ * A {@link Function1} from a long to a long, called without boxing
+ * through {@link #apply}.  Closures of type {@code Long -> Long}
+ * implement it; {@link #call} unboxes its argument and delegates to it.
+ */
+public interface LongToLongFunction1 extends Function1<Long, Long> {
+  long apply(long arg);
+
+  @Override
+  default Long call(Long arg) {
+    return apply(arg);
+  }
+
+  /**
+   * Calls {@code function} with {@code arg}, through {@link #apply} if it
+   * implements this interface and through {@link Function1#call} otherwise.
+   */
+  static long invoke(Function1<Long, Long> function, long arg) {
+    return function instanceof LongToLongFunction1 specialized ? specialized.apply(arg) : function.call(arg);
+  }
+}
@@ -2,7 +2,8 @@ package onion.compiler
 
 import org.objectweb.asm.{ClassWriter, Label, Opcodes, Type => AsmType}
 import org.objectweb.asm.commons.{GeneratorAdapter, Method => AsmMethod}
-import onion.compiler.bytecode.{AsmUtil, BridgeMethodEmitter, ClosureCodegen, LocalVarContext, ClosureLocalVarContext, MethodEmitter}
+import onion.compiler.bytecode.{AsmUtil, BridgeMethodEmitter, ClosureCodegen, LocalVarContext, ClosureLocalVarContext, MethodEmitter, StringConcatEmitter, TableClassWriter}
+import onion.compiler.toolbox.Parallel
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable
 
@@ -10,7 +11,7 @@ import scala.collection.mutable
  * ASM-based bytecode generator for the Onion language.
  * Generates JVM bytecode from the typed AST.
  */
-class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
+class AsmCodeGeneration(config: CompilerConfig, table: ClassTable) extends BytecodeGenerator:
   import TypedAST._
   import AsmCodeGeneration._
 
@@ -31,13 +32,24 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
   def boxClassName(tp: TypedAST.Type): String = AsmCodeGeneration.boxClassName(tp)
   def boxAsmType(tp: TypedAST.Type): AsmType = AsmCodeGeneration.boxAsmType(tp)
 
-  private def boxedValueType(tp: TypedAST.Type): AsmType = tp match
+  private[compiler] def boxedValueType(tp: TypedAST.Type): AsmType = tp match
     case BasicType.INT     => AsmType.INT_TYPE
     case BasicType.LONG    => AsmType.LONG_TYPE
     case BasicType.DOUBLE  => AsmType.DOUBLE_TYPE
     case BasicType.FLOAT   => AsmType.FLOAT_TYPE
     case _                 => AsmUtil.objectType(AsmUtil.JavaLangObject)
 
+  /** Narrows a value just read from a box to the type of the variable boxed. */
+  private def narrowBoxedValue(gen: GeneratorAdapter, tp: TypedAST.Type): Unit =
+    val valueType = asmType(tp)
+    if boxedValueType(tp) != valueType then
+      if isReferenceAsmType(valueType) then gen.checkCast(valueType) else gen.unbox(valueType)
+
+  /** Widens a value of a variable's type, on top of the stack, to what its box holds. */
+  private def widenForBox(gen: GeneratorAdapter, tp: TypedAST.Type): Unit =
+    val valueType = asmType(tp)
+    if !isReferenceAsmType(valueType) && boxedValueType(tp) != valueType then gen.valueOf(valueType)
+
   private[compiler] def isReferenceAsmType(tp: AsmType): Boolean =
     tp.getSort == AsmType.OBJECT || tp.getSort == AsmType.ARRAY
 
@@ -65,32 +77,45 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
       case _ =>
         ()
 
-  // Counter for generating unique closure class names
+  // Closure numbering is per class: process gives every class its own
+  // generator, so Foo.lambda$1 is named the same no matter which other classes
+  // were generated before it (or concurrently).
   private var closureCounter = 0
-  
-  // Collect generated closure classes
-  private val generatedClosures = mutable.ArrayBuffer[CompiledClass]()
 
   private def nextClosureId(): Int = {
     closureCounter += 1
     closureCounter
   }
 
-  private val closureCodegen =
-    new ClosureCodegen(this, config.outputDirectory, () => nextClosureId(), compiled => generatedClosures += compiled)
+  private val closureCodegen = new ClosureCodegen(this, () => nextClosureId())
   private val bridgeMethodEmitter = new BridgeMethodEmitter(this)
+
+  /** Creates a writer whose frame computation resolves types through the class table. */
+  private[compiler] def newClassWriter(flags: Int): ClassWriter = new TableClassWriter(flags, table)
   
+  /**
+   * Generates every class, closure bodies included.  Classes are independent,
+   * so with `config.parallelism` above 1 they are generated on a worker pool;
+   * the output is in input order either way.
+   */
   override def process(classes: Seq[TypedAST.ClassDefinition]): Seq[CompiledClass] =
-    generatedClosures.clear()
-    val mainClasses = classes.map(generateClass)
-    mainClasses ++ generatedClosures.toSeq
+    Parallel.map(classes, config.parallelism) { classDef =>
+      CompilerProfile.worker(table.profile, classDef.name) {
+        new AsmCodeGeneration(config, table).generateClassWithClosures(classDef)
+      }
+    }
+
+  private def generateClassWithClosures(classDef: ClassDefinition): CompiledClass =
+    val compiled = generateClass(classDef)
+    if table.profile != null then table.profile.closuresGenerated(closureCounter)
+    compiled
 
   private def sourceFileName(classDef: ClassDefinition): String =
     val simpleName = classDef.name.split('.').last
     s"$simpleName.on"
 
   private def generateClass(classDef: ClassDefinition): CompiledClass =
-    val cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES)
+    val cw = newClassWriter(ClassWriter.COMPUTE_FRAMES)
     
     // Generate class header
     // If class has no visibility modifiers, default to public
@@ -112,8 +137,9 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
       "java/lang/Object"
     val interfaces: Array[String] = classDef.interfaces.map(i => AsmUtil.internalName(i.name)).toArray
 
-    cw.visit(Opcodes.V17, access, name, null, superName, interfaces)
+    cw.visit(if config.release >= 21 then Opcodes.V21 else Opcodes.V17, access, name, null, superName, interfaces)
     cw.visitSource(sourceFileName(classDef), null)
+    closureCodegen.beginClass(cw, classDef.isInterface)
 
     // Generate fields
     for field <- classDef.fields do
@@ -285,6 +311,7 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
     val isSyntheticRecord = Modifier.isSyntheticRecord(node.modifier)
 
     if node.block != null then
+      localVars.markEntry()
       emitStatementsWithContext(gen, node.block.statements, className, localVars)
     else if isSyntheticRecord then
       // Generate synthetic record method bytecode
@@ -316,7 +343,7 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
     
   private[compiler] def hasReturn(stmts: Array[ActionStatement]): Boolean =
     stmts.exists {
-      case _: Return => true
+      case _: Return | _: TailCall => true
       case ifStmt: IfStatement =>
         ifStmt.elseStatement != null &&
         (ifStmt.thenStatement match {
@@ -327,6 +354,12 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
           case block: StatementBlock => hasReturn(block.statements)
           case _ => false
         })
+      case switch: SwitchStatement =>
+        switch.defaultStatement != null &&
+        (switch.defaultStatement +: switch.cases.map(_.statement)).forall {
+          case block: StatementBlock => hasReturn(block.statements)
+          case other => hasReturn(Array(other))
+        }
       case _ => false
     }
 
@@ -337,17 +370,6 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
   private val ObjectsType: AsmType = AsmType.getType(classOf[java.util.Objects])
   private val ObjectsEquals: AsmMethod = AsmMethod.getMethod("boolean equals(Object, Object)")
   private val ObjectsHashCode: AsmMethod = AsmMethod.getMethod("int hashCode(Object)")
-  private val StringBuilderType: AsmType = AsmType.getType(classOf[java.lang.StringBuilder])
-  private val StringBuilderAppendString: AsmMethod = AsmMethod.getMethod("StringBuilder append(String)")
-  private val StringBuilderAppendObject: AsmMethod = AsmMethod.getMethod("StringBuilder append(Object)")
-  private val StringBuilderAppendInt: AsmMethod = AsmMethod.getMethod("StringBuilder append(int)")
-  private val StringBuilderAppendLong: AsmMethod = AsmMethod.getMethod("StringBuilder append(long)")
-  private val StringBuilderAppendDouble: AsmMethod = AsmMethod.getMethod("StringBuilder append(double)")
-  private val StringBuilderAppendFloat: AsmMethod = AsmMethod.getMethod("StringBuilder append(float)")
-  private val StringBuilderAppendBoolean: AsmMethod = AsmMethod.getMethod("StringBuilder append(boolean)")
-  private val StringBuilderAppendChar: AsmMethod = AsmMethod.getMethod("StringBuilder append(char)")
-  private val StringBuilderToString: AsmMethod = AsmMethod.getMethod("String toString()")
-  private val StringBuilderInit: AsmMethod = AsmMethod.getMethod("void <init>(String)")
 
   /**
    * Generate equals method for record:
@@ -509,52 +531,18 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
     val classType = AsmUtil.objectType(className)
     val shortName = simpleName.split('.').last
 
-    // new StringBuilder("ClassName(")
-    gen.newInstance(StringBuilderType)
-    gen.dup()
-    gen.push(s"$shortName(")
-    gen.invokeConstructor(StringBuilderType, StringBuilderInit)
-
+    val parts = mutable.ArrayBuffer[StringConcatEmitter.Part](StringConcatEmitter.Constant(s"$shortName("))
     for i <- components.indices do
       val (name, fieldType) = components(i)
       val fieldAsmType = asmType(fieldType)
-
-      // "fieldName="
-      gen.push(s"$name=")
-      gen.invokeVirtual(StringBuilderType, StringBuilderAppendString)
-
-      // this.field
-      gen.loadThis()
-      gen.getField(classType, name, fieldAsmType)
-
-      // append field value
-      fieldType match
-        case BasicType.INT | BasicType.BYTE | BasicType.SHORT =>
-          gen.invokeVirtual(StringBuilderType, StringBuilderAppendInt)
-        case BasicType.LONG =>
-          gen.invokeVirtual(StringBuilderType, StringBuilderAppendLong)
-        case BasicType.DOUBLE =>
-          gen.invokeVirtual(StringBuilderType, StringBuilderAppendDouble)
-        case BasicType.FLOAT =>
-          gen.invokeVirtual(StringBuilderType, StringBuilderAppendFloat)
-        case BasicType.BOOLEAN =>
-          gen.invokeVirtual(StringBuilderType, StringBuilderAppendBoolean)
-        case BasicType.CHAR =>
-          gen.invokeVirtual(StringBuilderType, StringBuilderAppendChar)
-        case _ =>
-          gen.invokeVirtual(StringBuilderType, StringBuilderAppendObject)
-
-      // ", " except for last
-      if i < components.length - 1 then
-        gen.push(", ")
-        gen.invokeVirtual(StringBuilderType, StringBuilderAppendString)
-
-    // ")"
-    gen.push(")")
-    gen.invokeVirtual(StringBuilderType, StringBuilderAppendString)
-
-    // toString()
-    gen.invokeVirtual(StringBuilderType, StringBuilderToString)
+      if i > 0 then parts += StringConcatEmitter.Constant(", ")
+      parts += StringConcatEmitter.Constant(s"$name=")
+      parts += StringConcatEmitter.Argument(fieldAsmType, () => {
+        gen.loadThis()
+        gen.getField(classType, name, fieldAsmType)
+      })
+    parts += StringConcatEmitter.Constant(")")
+    StringConcatEmitter.emit(gen, parts.toSeq)
 
   /**
    * Generate copy method for record:
@@ -608,20 +596,15 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
         // Use frameIndex to handle nested closures correctly
         closureCtx.capturedBinding(ref.frame, ref.index) match
           case Some(binding) =>
-            gen.loadThis()
-            val fieldType = if binding.isBoxed then boxAsmType(binding.tp) else asmType(binding.tp)
-            gen.getField(
-              AsmUtil.objectType(closureCtx.closureClassName),
-              closureCtx.capturedFieldName(binding),
-              fieldType
-            )
+            gen.loadArg(closureCtx.capturedArgIndex(binding))
             // If boxed, also get the value from the box
             if binding.isBoxed then
               gen.getField(boxAsmType(binding.tp), "value", boxedValueType(binding.tp))
+              narrowBoxedValue(gen, binding.tp)
           case None =>
             // For frame=0 (current closure's own variables/parameters)
             if ref.frame == 0 && closureCtx.isParameter(ref.index) then
-              gen.loadArg(ref.index)
+              gen.loadArg(closureCtx.parameterArgIndex(ref.index))
             else if ref.frame == 0 then
               val slot = closureCtx.slotOf(ref.index).getOrElse(closureCtx.getOrAllocateSlot(ref.index, asmType(ref.`type`)))
               gen.loadLocal(slot)
@@ -636,6 +619,7 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
           val slot = localVars.slotOf(ref.index).getOrElse(localVars.getOrAllocateSlot(ref.index, boxType))
           gen.loadLocal(slot)
           gen.getField(boxType, "value", boxedValueType(ref.`type`))
+          narrowBoxedValue(gen, ref.`type`)
         else
           val slot = localVars.slotOf(ref.index).getOrElse(localVars.getOrAllocateSlot(ref.index, asmType(ref.`type`)))
           gen.loadLocal(slot)
@@ -647,33 +631,20 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
         closureCtx.capturedBinding(set.frame, set.index) match
           case Some(binding) if binding.isBoxed =>
             // Boxed captured variable: load box, compute value, put value into box
-            gen.loadThis()
             val boxType = boxAsmType(binding.tp)
-            gen.getField(
-              AsmUtil.objectType(closureCtx.closureClassName),
-              closureCtx.capturedFieldName(binding),
-              boxType
-            )
+            gen.loadArg(closureCtx.capturedArgIndex(binding))
             emitExpressionWithContext(gen, set.value, className, localVars)
-            val valueType = boxedValueType(set.`type`)
-            if valueType.getSize() == 2 then
+            if asmType(set.`type`).getSize() == 2 then
               gen.dup2X1()
             else
               gen.dupX1()
-            gen.putField(boxType, "value", valueType)
+            widenForBox(gen, set.`type`)
+            gen.putField(boxType, "value", boxedValueType(set.`type`))
           case Some(binding) =>
-            gen.loadThis()
             emitExpressionWithContext(gen, set.value, className, localVars)
             val valueType = asmType(set.`type`)
-            if valueType.getSize() == 2 then
-              gen.dup2X1()
-            else
-              gen.dupX1()
-            gen.putField(
-              AsmUtil.objectType(closureCtx.closureClassName),
-              closureCtx.capturedFieldName(binding),
-              asmType(binding.tp)
-            )
+            if valueType.getSize() == 2 then gen.dup2() else gen.dup()
+            gen.storeArg(closureCtx.capturedArgIndex(binding))
           case None =>
             // For frame=0 (current closure's own variables/parameters)
             if set.frame != 0 then
@@ -682,7 +653,7 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
             val valueType = asmType(set.`type`)
             if valueType.getSize() == 2 then gen.dup2() else gen.dup()
             if closureCtx.isParameter(set.index) then
-              gen.storeArg(set.index)
+              gen.storeArg(closureCtx.parameterArgIndex(set.index))
             else
               val slot = closureCtx.slotOf(set.index).getOrElse(closureCtx.getOrAllocateSlot(set.index, valueType))
               gen.storeLocal(slot)
@@ -700,19 +671,21 @@ class AsmCodeGeneration(config: CompilerConfig) extends BytecodeGenerator:
               // Update: load box, compute value, put into box.value
               gen.loadLocal(slot)
               emitExpressionWithContext(gen, set.value, className, localVars)
-              if valueType.getSize() == 2 then
+              if setValueType.getSize() == 2 then
                 gen.dup2X1()
               else
                 gen.dupX1()
+              widenForBox(gen, set.`type`)
               gen.putField(boxType, "value", valueType)
             case None =>
               // Initialize: compute value, create box, store box, return value
               emitExpressionWithContext(gen, set.value, className, localVars)
-              val tempSlot = gen.newLocal(valueType)
+              val tempSlot = gen.newLocal(setValueType)
               gen.storeLocal(tempSlot)
               gen.newInstance(boxType)
               gen.dup()
               gen.loadLocal(tempSlot)
+              widenForBox(gen, set.`type`)
               val ctorDesc = AsmType.getMethodDescriptor(AsmType.VOID_TYPE, valueType)
               gen.invokeConstructor(boxType, AsmMethod("<init>", ctorDesc))
               val slot = localVars.allocateSlot(set.index, boxType)
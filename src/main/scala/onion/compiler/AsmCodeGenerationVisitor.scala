@@ -2,7 +2,7 @@ package onion.compiler
 
 import org.objectweb.asm.{Label, Opcodes, Type => AsmType}
 import org.objectweb.asm.commons.{GeneratorAdapter, Method => AsmMethod}
-import onion.compiler.bytecode.{AsmUtil, ControlFlowEmitter, LocalVarContext, LoopContext, TermEmitter}
+import onion.compiler.bytecode.{AsmUtil, ControlFlowEmitter, LocalVarContext, LoopContext, StringConcatEmitter, TermEmitter}
 import TypedAST._
 
 /**
@@ -95,8 +95,22 @@ class AsmCodeGenerationVisitor(
   override def visitShortValue(node: ShortValue): Unit = gen.push(node.value.toInt)
   override def visitStringValue(node: StringValue): Unit = gen.push(node.value)
   override def visitNullValue(node: NullValue): Unit = gen.visitInsn(Opcodes.ACONST_NULL)
+
+  override def visitStringConcat(node: StringConcat): Unit =
+    StringConcatEmitter.emit(gen, node.parts.toSeq.map {
+      case constant: StringValue => StringConcatEmitter.Constant(constant.value)
+      case part => StringConcatEmitter.Argument(asmType(part.`type`), () => visitTerm(part))
+    })
+
+  override def visitTypeSwitch(node: TypeSwitch): Unit =
+    controlFlow.emitTypeSwitch(node)
   
   override def visitCall(node: Call): Unit =
+    // Through `invoke`, a primitive result would be unboxed even if unused
+    val specialized = specializedCall(node).filter(c => !c.isStatic || asmCodeGen.isReferenceAsmType(c.method.getReturnType))
+    if specialized.isDefined then
+      emitSpecializedCall(node, specialized.get, asmType(node.method.returnType))
+      return
     visitTerm(node.target)
     val argTypes = node.method.arguments.map(asmType)
     emitArgumentsWithAdaptation(node.parameters, argTypes)
@@ -111,6 +125,72 @@ class AsmCodeGenerationVisitor(
     else
       gen.invokeVirtual(ownerType, AsmMethod(node.method.name, methodDesc))
   
+  /** A call of `apply` of a specialized interface, or of its static `invoke`. */
+  private final case class SpecializedCall(owner: AsmType, method: AsmMethod, isStatic: Boolean)
+
+  /**
+   * The unboxed call to make instead of `onion.FunctionN.call` when the
+   * function type has a primitive specialization and every argument is a
+   * primitive, if any.  A receiver known to implement the specialization (a
+   * closure of a specialized type, or a value whose static type implements
+   * it) is called through `apply`; any other value of the function type
+   * through the interface's static `invoke`, which calls `apply` if the
+   * value implements it and `call` otherwise.  Reference arguments (e.g. a
+   * possibly null `Integer`) keep going through `call`; primitives boxed for
+   * it are passed as they are.
+   */
+  private def specializedCall(node: Call): Option[SpecializedCall] =
+    if node.method.name != "call" || !FunctionSpecialization.declaresFunctionCall(node.method.affiliation.name) then return None
+    if !node.parameters.forall(primitiveArgument(_).`type`.isBasicType) then return None
+    val known = node.target match
+      case closure: NewClosure => Option(closure.specialized)
+      case target => FunctionSpecialization.implementedBy(target.`type`)
+    known match
+      case Some(interface) =>
+        interface.methods(FunctionSpecialization.MethodName).find(_.arguments.length == node.parameters.length).map { apply =>
+          val descriptor = AsmType.getMethodDescriptor(asmType(apply.returnType), apply.arguments.map(asmType)*)
+          SpecializedCall(AsmUtil.objectType(interface.name), AsmMethod(FunctionSpecialization.MethodName, descriptor), isStatic = false)
+        }
+      case None =>
+        node.target.`type` match
+          case functionType: AppliedClassType =>
+            FunctionSpecialization.interfaceName(functionType).map { name =>
+              val arguments = functionType.typeArguments
+              val result = if arguments.last.isBasicType then asmType(arguments.last) else AsmUtil.objectType("java.lang.Object")
+              val parameters = AsmUtil.objectType(functionType.raw.name) +: arguments.init.map(asmType).toSeq
+              val descriptor = AsmType.getMethodDescriptor(result, parameters*)
+              SpecializedCall(AsmUtil.objectType(name), AsmMethod(FunctionSpecialization.InvokerName, descriptor), isStatic = true)
+            }
+          case _ =>
+            None
+
+  /** Makes the specialized call, leaving the result as `resultType`. */
+  private def emitSpecializedCall(node: Call, specialized: SpecializedCall, resultType: AsmType): Unit =
+    val method = specialized.method
+    visitTerm(node.target)
+    val parameterTypes = if specialized.isStatic then method.getArgumentTypes.tail else method.getArgumentTypes
+    node.parameters.map(primitiveArgument).zip(parameterTypes).foreach { case (param, parameterType) =>
+      visitTerm(param)
+      adaptAsmValue(asmType(param.`type`), parameterType)
+    }
+    if specialized.isStatic then
+      gen.visitMethodInsn(Opcodes.INVOKESTATIC, specialized.owner.getInternalName, method.getName, method.getDescriptor, true)
+    else
+      gen.invokeInterface(specialized.owner, method)
+    adaptAsmValue(method.getReturnType, resultType)
+
+  /** `param` without the boxing of a primitive, if it is one. */
+  private def primitiveArgument(param: Term): Term = toolbox.Boxing.boxedValue(param).getOrElse(param)
+
+  private def adaptAsmValue(actual: AsmType, expected: AsmType): Unit =
+    val actualIsReference = asmCodeGen.isReferenceAsmType(actual)
+    val expectedIsReference = asmCodeGen.isReferenceAsmType(expected)
+    if actual == expected then ()
+    else if !actualIsReference && !expectedIsReference then gen.cast(actual, expected)
+    else if !actualIsReference then gen.valueOf(actual)
+    else if !expectedIsReference then gen.unbox(expected)
+    else gen.checkCast(expected)
+
   override def visitCallStatic(node: CallStatic): Unit =
     val argTypes = node.method.arguments.map(asmType)
     emitArgumentsWithAdaptation(node.parameters, argTypes)
@@ -227,6 +307,14 @@ class AsmCodeGenerationVisitor(
     gen.visitLabel(endLabel)
 
   override def visitAsInstanceOf(node: AsInstanceOf): Unit =
+    node.target match
+      case call: Call if node.destination.isBasicType =>
+        val specialized = specializedCall(call)
+        // Keep a primitive result of the specialized method unboxed
+        if specialized.exists(_.method.getReturnType == asmType(node.destination)) then
+          emitSpecializedCall(call, specialized.get, asmType(node.destination))
+          return
+      case _ =>
     visitTerm(node.target)
     (node.target.`type`, node.destination) match
       case (from: BasicType, to: BasicType) =>
@@ -332,13 +420,8 @@ class AsmCodeGenerationVisitor(
     val ownerType = AsmUtil.objectType(node.target.name)
     gen.putStatic(ownerType, node.field.name, fieldType)
   
-  override def visitOuterThis(node: OuterThis): Unit =
-    gen.loadThis()
-    gen.getField(
-      AsmUtil.objectType(className),
-      "this$0",
-      asmType(node.`type`)
-    )
+  // Closure bodies are methods of the enclosing class, so its instance is `this`
+  override def visitOuterThis(node: OuterThis): Unit = gen.loadThis()
   
   override def visitThis(node: This): Unit = gen.loadThis()
   
@@ -370,6 +453,10 @@ class AsmCodeGenerationVisitor(
     emitLineNumber(node.location)
     controlFlow.emitIfStatement(node)
 
+  override def visitSwitchStatement(node: SwitchStatement): Unit =
+    emitLineNumber(node.location)
+    controlFlow.emitSwitchStatement(node)
+
   override def visitConditionalLoop(node: ConditionalLoop): Unit =
     emitLineNumber(node.location)
     controlFlow.emitConditionalLoop(node)
@@ -384,6 +471,14 @@ class AsmCodeGenerationVisitor(
     emitLineNumber(node.location)
     controlFlow.emitSynchronized(node)
 
+  override def visitTailCall(node: TailCall): Unit =
+    emitLineNumber(node.location)
+    val argTypes = node.method.arguments.map(asmType)
+    emitArgumentsWithAdaptation(node.arguments, argTypes)
+    // Every argument is evaluated before the first parameter is overwritten
+    for i <- argTypes.indices.reverse do gen.storeArg(i)
+    gen.goTo(localVars.entryLabel)
+
   override def visitThrow(node: Throw): Unit =
     emitLineNumber(node.location)
     controlFlow.emitThrow(node)
@@ -7,50 +7,114 @@
  * ************************************************************** */
 package onion.compiler
 
-import java.util.{HashMap => JHashMap}
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 import onion.compiler.environment.AsmRefs.AsmClassType
-import onion.compiler.environment.ClassFileTable
+import onion.compiler.environment.{ClassFileTable, ClassPathIndex}
 import onion.compiler.environment.ReflectionRefs.ReflectClassType
 
 /**
+ * Source classes are only added before the body pass, while class files and
+ * array types are loaded on demand and may be requested from several typing
+ * workers at once.  Loading can recurse into this table, so a racing load
+ * builds its own instance and then keeps whichever one was published first.
+ *
+ * A table may have a `parent` holding the class-path types shared between
+ * compilations (see [[SharedClassTables]]); such a table only owns the source
+ * classes and arrays of one compilation, and the classes of the entries of
+ * its class path that the parent leaves out, such as directories.
+ * It delegates everything else.
+ *
+ * Names that resolve to no class file are remembered, as name resolution
+ * tries every wildcard import for each simple name and most of those tries
+ * miss.  Source classes are looked up before the misses, so a class added to
+ * the table later is still found.
+ *
+ * @param profile counts the class-path classes read for this table's
+ *                compilation (including those read into its parent), or null
+ *
  * @author Kota Mizushima
  *
  */
-class ClassTable(classPath: String) {
-  val classes = new OrderedTable[TypedAST.ClassDefinition]
-  private val classFiles = new JHashMap[String, TypedAST.ClassType]
-  private val arrayClasses = new JHashMap[String, TypedAST.ArrayType]
-  private val table = new ClassFileTable(classPath)
+class ClassTable(private val classPath: String, parent: ClassTable, private[compiler] val profile: CompilerProfile = null) {
+  def this(classPath: String) = this(classPath, null)
+
+  val classes = new OrderedTable[TypedAST.ClassDefinition] {
+    override def add(entry: TypedAST.ClassDefinition): Unit = {
+      entry.owner = ClassTable.this
+      super.add(entry)
+    }
+  }
+  private val classFiles = new ConcurrentHashMap[String, TypedAST.ClassType]
+  private val arrayClasses = new ConcurrentHashMap[String, TypedAST.ArrayType]
+  private val missing = ConcurrentHashMap.newKeySet[String]()
+  private val table = if (parent == null) new ClassFileTable(classPath) else null
+  private val localIndex = if (parent == null) null else {
+    val inherited = parent.classPath.split(File.pathSeparator).toSet
+    val local = classPath.split(File.pathSeparator).filter(path => path.nonEmpty && !inherited(path))
+    if (local.isEmpty) null else ClassPathIndex.forClassPath(local.mkString(File.pathSeparator))
+  }
+
+  /**
+   * Bumped whenever a source class of this table gets a method or its
+   * supertypes change, invalidating the caches computed from the class.
+   */
+  private[compiler] val revision = new AtomicLong
+
+  /** Overload resolutions made against this table's types. */
+  private[compiler] val resolutions = new typing.MethodResolution.Resolutions
 
   def loadArray(component: TypedAST.Type, dimension: Int): TypedAST.ArrayType = {
     val arrayName = "[" * dimension + component.name
-    var array: TypedAST.ArrayType = arrayClasses.get(arrayName)
+    val array: TypedAST.ArrayType = arrayClasses.get(arrayName)
     if (array != null) return array
-    array = new TypedAST.ArrayType(component, dimension, this)
-    arrayClasses.put(arrayName, array)
-    array
+    publish(arrayClasses, arrayName, new TypedAST.ArrayType(component, dimension, this))
   }
 
   def load(className: String): TypedAST.ClassType = {
     var clazz: TypedAST.ClassType = lookup(className)
-    if (clazz == null) {
+    if (clazz == null && parent != null) {
+      clazz = parent.load(className)
+      if (clazz != null && profile != null) profile.classLoaded(clazz)
+      if (clazz == null && localIndex != null && !missing.contains(className)) {
+        val bytes = localIndex.loadBytes(className.replace('.', '/') + ".class")
+        if (bytes != null) {
+          val loaded = new AsmClassType(bytes, this)
+          clazz = publish(classFiles, loaded.name, loaded)
+          if (profile != null && (clazz eq loaded)) profile.classLoaded(loaded)
+        } else {
+          missing.add(className)
+        }
+      }
+    } else if (clazz == null && !missing.contains(className) && table.mayDefine(className)) {
       val bytes = table.loadBytes(className)
       if (bytes != null) {
-        clazz = new AsmClassType(bytes, this)
-        classFiles.put(clazz.name, clazz)
+        val loaded = new AsmClassType(bytes, this)
+        clazz = publish(classFiles, loaded.name, loaded)
+        if (profile != null && (clazz eq loaded)) profile.classLoaded(loaded)
       } else {
+        // Only classes without a class file (e.g. defined in memory) get here;
+        // they are reflected on without running their static initializers
         try {
-          clazz = new ReflectClassType(Class.forName(className, true, Thread.currentThread.getContextClassLoader), this)
-          classFiles.put(clazz.name, clazz)
+          val loaded = new ReflectClassType(Class.forName(className, false, Thread.currentThread.getContextClassLoader), this)
+          clazz = publish(classFiles, loaded.name, loaded)
+          if (profile != null && (clazz eq loaded)) profile.classLoaded(loaded)
         }
         catch {
           case e: ClassNotFoundException => {}
         }
       }
+      if (clazz == null) missing.add(className)
     }
     clazz
   }
 
+  private def publish[T <: AnyRef](map: ConcurrentHashMap[String, T], name: String, value: T): T = {
+    val existing = map.putIfAbsent(name, value)
+    if (existing != null) existing else value
+  }
+
   /** Option-returning version of load for safer null handling */
   def loadOpt(className: String): Option[TypedAST.ClassType] = Option(load(className))
 
@@ -59,11 +123,19 @@ class ClassTable(classPath: String) {
   def lookup(className: String): TypedAST.ClassType = {
     classes.get(className) match {
       case Some(ref) => ref
-      case None => classFiles.get(className)
+      case None =>
+        val loaded = classFiles.get(className)
+        if (loaded == null && parent != null) parent.lookup(className) else loaded
     }
   }
 
   /** Option-returning version of lookup for safer null handling */
   def lookupOpt(className: String): Option[TypedAST.ClassType] = Option(lookup(className))
 
+  /**
+   * Releases the resources owned by this table.  Class-path jars are shared
+   * by all tables (see [[environment.ClassPathIndex]]) and stay open.
+   */
+  def close(): Unit = if (table != null) table.close()
+
 }
\ No newline at end of file
@@ -9,6 +9,14 @@ package onion.compiler
 
 
 /**
+ * @param parallelism   maximum number of worker threads used by phases that can
+ *                      process sources independently (1 = sequential)
+ * @param profileOutput file the [[CompilerProfile]] of the compilation is
+ *                      written to as JSON, if any
+ * @param release       Java release the class files are generated for: 17 or
+ *                      21, which lets selects over types dispatch through
+ *                      `java.lang.runtime.SwitchBootstraps`
+ *
  * @author Kota Mizushima
  *
  */
@@ -22,5 +30,14 @@ case class CompilerConfig(
   warningLevel: WarningLevel = WarningLevel.On,
   suppressedWarnings: Set[WarningCategory] = Set.empty,
   dumpAst: Boolean = false,
-  dumpTypedAst: Boolean = false
+  dumpTypedAst: Boolean = false,
+  parallelism: Int = 1,
+  profileOutput: Option[String] = None,
+  release: Int = CompilerConfig.DefaultRelease
 )
+
+object CompilerConfig {
+  /** Java releases the class files can be generated for. */
+  val SupportedReleases: Seq[Int] = Seq(17, 21)
+  val DefaultRelease: Int = 17
+}
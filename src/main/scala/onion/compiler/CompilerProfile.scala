@@ -0,0 +1,172 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import onion.compiler.environment.AsmRefs.AsmClassType
+import onion.compiler.environment.ReflectionRefs.ReflectClassType
+import scala.collection.mutable
+import scala.jdk.CollectionConverters._
+
+/**
+ * Measurements of one compilation, written as JSON by `--profile-compiler`.
+ *
+ * Phases nest (Typing records its header, outline, body and duplication
+ * passes under `typing`) and each one records its wall time in nanoseconds,
+ * the bytes allocated by every thread that worked for it and, for phases that
+ * work file by file, the time spent on each source file.  Worker threads of
+ * [[toolbox.Parallel]] report their allocations through [[worker]], since
+ * they are gone by the time the phase ends.
+ *
+ * Counters are updated concurrently by typing and code generation workers.
+ *
+ * @author Kota Mizushima
+ */
+final class CompilerProfile {
+  import CompilerProfile._
+
+  private val roots = mutable.ArrayBuffer[Phase]()
+  @volatile private var current: Phase = null
+
+  private val asmClasses = new AtomicLong
+  private val reflectClasses = new AtomicLong
+  private val methodResolutions = new AtomicLong
+  private val closures = new AtomicLong
+
+  /** Runs `block` as phase `name`, nested in the phase currently running. */
+  def phase[A](name: String)(block: => A): A = {
+    val parent = current
+    val phase = new Phase(name, parent, Thread.currentThread)
+    if (parent == null) roots += phase else parent.children += phase
+    current = phase
+    val startBytes = allocatedBytes()
+    val start = System.nanoTime()
+    try block
+    finally {
+      phase.nanos = System.nanoTime() - start
+      phase.addAllocation(Thread.currentThread, allocatedBytes() - startBytes)
+      current = parent
+    }
+  }
+
+  /**
+   * Runs `block` on a worker thread of the current phase, charging what it
+   * allocates to that phase and the phases enclosing it.
+   */
+  def worker[A](block: => A): A = {
+    val phase = current
+    if (phase == null || (phase.thread eq Thread.currentThread)) return block
+    val startBytes = allocatedBytes()
+    try block
+    finally {
+      val bytes = allocatedBytes() - startBytes
+      var p = phase
+      while (p != null) {
+        p.addAllocation(Thread.currentThread, bytes)
+        p = p.parent
+      }
+    }
+  }
+
+  /** Runs `block` for source file `name`, adding its time to the current phase. */
+  def file[A](name: String)(block: => A): A = {
+    val phase = current
+    val start = System.nanoTime()
+    try block
+    finally if (phase != null) phase.files.merge(name, System.nanoTime() - start, (a, b) => a + b)
+  }
+
+  /** Records that a class-path class was read (by its bytecode or reflectively). */
+  def classLoaded(clazz: TypedAST.ClassType): Unit = clazz match {
+    case _: AsmClassType => asmClasses.incrementAndGet()
+    case _: ReflectClassType => reflectClasses.incrementAndGet()
+    case _ => ()
+  }
+
+  def methodResolved(): Unit = methodResolutions.incrementAndGet()
+
+  def closuresGenerated(count: Int): Unit = closures.addAndGet(count)
+
+  def toJson: String = {
+    val out = new StringBuilder
+    out ++= "{\n"
+    out ++= s"""  "totalNanos": ${roots.map(_.nanos).sum},\n"""
+    out ++= "  \"phases\": ["
+    writePhases(out, roots.toSeq, "  ")
+    out ++= "],\n"
+    out ++= s"""  "classLoads": {"asm": ${asmClasses.get}, "reflect": ${reflectClasses.get}},\n"""
+    out ++= s"""  "methodResolutions": ${methodResolutions.get},\n"""
+    out ++= s"""  "closuresGenerated": ${closures.get}\n"""
+    out ++= "}\n"
+    out.toString
+  }
+
+  private def writePhases(out: StringBuilder, phases: Seq[Phase], indent: String): Unit = {
+    for ((phase, i) <- phases.zipWithIndex) {
+      if (i > 0) out ++= ","
+      out ++= s"\n$indent  {\"name\": ${quote(phase.name)}, \"nanos\": ${phase.nanos}"
+      out ++= s", \"allocatedBytes\": ${longs(phase.allocations)}"
+      if (!phase.files.isEmpty) out ++= s", \"files\": ${longs(phase.files)}"
+      if (phase.children.nonEmpty) {
+        out ++= ", \"passes\": ["
+        writePhases(out, phase.children.toSeq, indent + "  ")
+        out ++= "]"
+      }
+      out ++= "}"
+    }
+    if (phases.nonEmpty) out ++= s"\n$indent"
+  }
+}
+
+object CompilerProfile {
+  private final class Phase(val name: String, val parent: Phase, val thread: Thread) {
+    @volatile var nanos: Long = 0
+    val children = mutable.ArrayBuffer[Phase]()
+    val allocations = new ConcurrentHashMap[String, java.lang.Long]
+    val files = new ConcurrentHashMap[String, java.lang.Long]
+
+    def addAllocation(thread: Thread, bytes: Long): Unit =
+      if (bytes > 0) allocations.merge(thread.getName, bytes, (a, b) => a + b)
+  }
+
+  private val threads: com.sun.management.ThreadMXBean = ManagementFactory.getThreadMXBean match {
+    case bean: com.sun.management.ThreadMXBean if bean.isThreadAllocatedMemorySupported =>
+      if (!bean.isThreadAllocatedMemoryEnabled) bean.setThreadAllocatedMemoryEnabled(true)
+      bean
+    case _ => null
+  }
+
+  /** Bytes allocated so far by the calling thread, or 0 if the JVM cannot tell. */
+  private def allocatedBytes(): Long =
+    if (threads == null) 0 else math.max(threads.getCurrentThreadAllocatedBytes, 0)
+
+  // Helpers for components whose profile is optional (null when not profiling)
+
+  def phase[A](profile: CompilerProfile, name: String)(block: => A): A =
+    if (profile == null) block else profile.phase(name)(block)
+
+  def worker[A](profile: CompilerProfile, file: String)(block: => A): A =
+    if (profile == null) block else profile.worker(profile.file(file)(block))
+
+  private def longs(map: ConcurrentHashMap[String, java.lang.Long]): String =
+    map.asScala.toSeq.sortBy(_._1).map { case (k, v) => s"${quote(k)}: $v" }.mkString("{", ", ", "}")
+
+  private def quote(value: String): String = {
+    val out = new StringBuilder("\"")
+    value.foreach {
+      case '"' => out ++= "\\\""
+      case '\\' => out ++= "\\\\"
+      case c if c < ' ' => out ++= f"\\u${c.toInt}%04x"
+      case c => out += c
+    }
+    out += '"'
+    out.toString
+  }
+}
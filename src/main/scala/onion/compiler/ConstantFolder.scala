@@ -0,0 +1,381 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler
+
+import onion.compiler.TypedAST.*
+import onion.compiler.TypedAST.BinaryTerm.Kind.*
+import onion.compiler.TypedAST.UnaryTerm.Kind.*
+
+import scala.collection.mutable
+
+/**
+ * Folds the constant expressions of one function body (a method, constructor,
+ * static initializer or closure) and removes the statements they make dead.
+ *
+ *   - Operators on literals are evaluated as Java evaluates them: integers
+ *     wrap around, floating point follows IEEE 754 and numeric conversions
+ *     truncate and saturate like the JVM's.  Integer division and remainder
+ *     by zero are kept, so they still throw at run time.
+ *   - `&&` and `||` with a literal left operand reduce to one of their
+ *     operands, and literal parts of a string concatenation are merged.
+ *   - `if` on a literal condition keeps only the branch taken, a `while`
+ *     whose condition is `false` disappears and a switch on a literal keeps
+ *     only the case it selects.  Statements following a `return`, `throw`,
+ *     `break` or `continue` in the same block are dropped.
+ *   - A local the body assigns exactly once, to a literal, is replaced by the
+ *     literal in the rest of the block assigning it.  This is what reduces a
+ *     `select` on a literal, whose scrutinee is stored in a temporary first.
+ *
+ * @author Kota Mizushima
+ */
+final class ConstantFolder private (assignments: collection.Map[Int, Int]) extends TypedASTTransformer {
+  import ConstantFolder.*
+
+  override def transformTerm(term: Term): Term = transformChildren(term) match {
+    case node: BinaryTerm => foldBinary(node)
+    case node: UnaryTerm => foldUnary(node)
+    case node: AsInstanceOf => foldCast(node)
+    case node: StringConcat => foldConcat(node)
+    case other => other
+  }
+
+  override def transformStatement(statement: ActionStatement): ActionStatement = statement match {
+    case block: StatementBlock => foldBlock(block)
+    case _ => transformChildren(statement) match {
+      case node: IfStatement =>
+        literalValue(node.condition) match {
+          case Some(true) => node.thenStatement
+          case Some(false) => if (node.elseStatement == null) new NOP(node.location) else node.elseStatement
+          case _ => node
+        }
+      case node: ConditionalLoop if literalValue(node.condition).contains(false) =>
+        new NOP(node.location)
+      case node: SwitchStatement =>
+        selectedCase(node).getOrElse(node)
+      case node: ExpressionActionStatement if literalValue(node.term).isDefined || node.term.isInstanceOf[NullValue] =>
+        new NOP(node.location)
+      case other => other
+    }
+  }
+
+  override protected def transformClosureBody(closure: NewClosure): ActionStatement = fold(closure.block)
+
+  private def foldBlock(block: StatementBlock): StatementBlock = {
+    val original = block.statements
+    val result = mutable.ArrayBuffer[ActionStatement]()
+    var pending = original.toList
+    while (pending.nonEmpty) {
+      val folded = transformStatement(pending.head)
+      pending = pending.tail
+      folded match {
+        case _: NOP =>
+        case nested: StatementBlock => result ++= nested.statements
+        case other => result += other
+      }
+      folded match {
+        case assignment: ExpressionActionStatement =>
+          assignment.term match {
+            case set: SetLocal if set.frame == 0 && assignments.getOrElse(set.index, 0) == 1 && literalValue(set.value).isDefined =>
+              val substitution = new Substitution(set.index, set.value)
+              pending = pending.map(substitution.transformStatement)
+            case _ =>
+          }
+        case _ =>
+      }
+      if (result.nonEmpty && isJump(result.last)) pending = Nil
+    }
+    if (result.length == original.length && result.indices.forall(i => result(i) eq original(i))) block
+    else new StatementBlock(block.location, result.toSeq*)
+  }
+
+  /** The statement a switch on a literal runs, or None if its scrutinee is not a literal. */
+  private def selectedCase(node: SwitchStatement): Option[ActionStatement] = {
+    val key: Option[Any] = literalValue(node.scrutinee).collect {
+      case value: Int => value
+      case value: Char => value.toInt
+      case value: Short => value.toInt
+      case value: Byte => value.toInt
+      case value: String => value
+    }
+    key.map { value =>
+      val matching = node.cases.find(_.labels.exists(label => literalValue(label).contains(value)))
+      matching.map(_.statement).orElse(Option(node.defaultStatement)).getOrElse(new NOP(node.location))
+    }
+  }
+
+  private def foldBinary(node: BinaryTerm): Term = node.kind match {
+    case LOGICAL_AND =>
+      literalValue(node.lhs) match {
+        case Some(true) => node.rhs
+        case Some(false) => node.lhs
+        case _ => node
+      }
+    case LOGICAL_OR =>
+      literalValue(node.lhs) match {
+        case Some(true) => node.lhs
+        case Some(false) => node.rhs
+        case _ => node
+      }
+    case ELVIS =>
+      node
+    case kind =>
+      val folded = for {
+        lhs <- literalValue(node.lhs)
+        rhs <- literalValue(node.rhs)
+        value <- evaluate(kind, lhs, rhs)
+        literal <- literalOf(node.location, value)
+        if literal.`type` eq node.`type`
+      } yield literal
+      folded.getOrElse(node)
+  }
+
+  private def foldUnary(node: UnaryTerm): Term = {
+    val folded = literalValue(node.operand).flatMap { operand =>
+      val value: Option[Any] = (node.kind, operand) match {
+        case (PLUS, v) => Some(v)
+        case (MINUS, v: Int) => Some(-v)
+        case (MINUS, v: Long) => Some(-v)
+        case (MINUS, v: Float) => Some(-v)
+        case (MINUS, v: Double) => Some(-v)
+        case (NOT, v: Boolean) => Some(!v)
+        case (BIT_NOT, v: Int) => Some(~v)
+        case (BIT_NOT, v: Long) => Some(~v)
+        case _ => None
+      }
+      value.flatMap(literalOf(node.location, _)).filter(_.`type` eq node.`type`)
+    }
+    folded.getOrElse(node)
+  }
+
+  private def foldCast(node: AsInstanceOf): Term = {
+    if (!node.destination.isBasicType) return node
+    literalValue(node.target) match {
+      case Some(_) if node.target.`type` eq node.destination => node.target
+      case Some(value) => convert(value, node.destination).flatMap(literalOf(node.location, _)).getOrElse(node)
+      case None => node
+    }
+  }
+
+  private def foldConcat(node: StringConcat): Term = {
+    val parts = mutable.ArrayBuffer[Term]()
+    val text = new java.lang.StringBuilder
+    var literalParts = 0
+    def flush(): Unit =
+      if (literalParts > 0) {
+        parts += new StringValue(node.location, text.toString, node.`type`)
+        text.setLength(0)
+        literalParts = 0
+      }
+    for (part <- node.parts) {
+      val value = if (part.isInstanceOf[NullValue]) Some(null) else literalValue(part)
+      value match {
+        case Some(v) =>
+          text.append(String.valueOf(v))
+          literalParts += 1
+        case None =>
+          flush()
+          parts += part
+      }
+    }
+    flush()
+    if (parts.length == 1 && parts.head.isInstanceOf[StringValue]) parts.head
+    else if (parts.length == node.parts.length && parts.indices.forall(i => parts(i) eq node.parts(i))) node
+    else new StringConcat(node.location, parts.toArray, node.`type`)
+  }
+
+  /** Replaces the reads of local `index` of the body being folded by `value`. */
+  private final class Substitution(index: Int, value: Term) extends TypedASTTransformer {
+    private var depth = 0
+
+    override def transformTerm(term: Term): Term = term match {
+      case ref: RefLocal if ref.frame == depth && ref.index == index && sameType(ref.`type`, value.`type`) => value
+      case _ => super.transformTerm(term)
+    }
+
+    override protected def transformClosureBody(closure: NewClosure): ActionStatement = {
+      depth += 1
+      try super.transformClosureBody(closure) finally depth -= 1
+    }
+  }
+}
+
+object ConstantFolder {
+  /** Folds a whole function body. */
+  def fold(body: StatementBlock): StatementBlock =
+    new ConstantFolder(assignmentsIn(body)).transformBlock(body)
+
+  def fold(body: ActionStatement): ActionStatement =
+    new ConstantFolder(assignmentsIn(body)).transformStatement(body)
+
+  /** Folds terms evaluated outside of any block of the function, such as the arguments of a super constructor call. */
+  def fold(terms: Array[Term]): Array[Term] =
+    new ConstantFolder(Map.empty).transformTerms(terms)
+
+  /** How many times `body` (including the closures in it) assigns each of its own locals. */
+  private def assignmentsIn(body: ActionStatement): collection.Map[Int, Int] = {
+    val counts = mutable.Map[Int, Int]()
+    def count(index: Int): Unit = counts(index) = counts.getOrElse(index, 0) + 1
+    new TypedASTTransformer {
+      private var depth = 0
+
+      override def transformTerm(term: Term): Term = {
+        term match {
+          case set: SetLocal if set.frame == depth => count(set.index)
+          case _ =>
+        }
+        super.transformTerm(term)
+      }
+
+      override def transformStatement(statement: ActionStatement): ActionStatement = {
+        statement match {
+          case node: Try if depth == 0 =>
+            (node.resources.map(_._1) ++ node.catchTypes).filter(_.frameIndex == 0).foreach(binding => count(binding.index))
+          case _ =>
+        }
+        super.transformStatement(statement)
+      }
+
+      override protected def transformClosureBody(closure: NewClosure): ActionStatement = {
+        depth += 1
+        try super.transformClosureBody(closure) finally depth -= 1
+      }
+    }.transformStatement(body)
+    counts
+  }
+
+  private def isJump(statement: ActionStatement): Boolean = statement match {
+    case _: Return | _: Throw | _: Break | _: Continue | _: TailCall => true
+    case _ => false
+  }
+
+  private def sameType(a: Type, b: Type): Boolean = (a eq b) || ((a, b) match {
+    case (x: ClassType, y: ClassType) => x.name == y.name
+    case _ => false
+  })
+
+  /** The value of a literal term, boxed as the Scala type matching its own type. */
+  private def literalValue(term: Term): Option[Any] = term match {
+    case v: IntValue => Some(v.value)
+    case v: LongValue => Some(v.value)
+    case v: FloatValue => Some(v.value)
+    case v: DoubleValue => Some(v.value)
+    case v: BoolValue => Some(v.value)
+    case v: CharacterValue => Some(v.value)
+    case v: ByteValue => Some(v.value)
+    case v: ShortValue => Some(v.value)
+    case v: StringValue => Some(v.value)
+    case _ => None
+  }
+
+  private def literalOf(location: Location, value: Any): Option[Term] = value match {
+    case v: Int => Some(new IntValue(location, v))
+    case v: Long => Some(new LongValue(location, v))
+    case v: Float => Some(new FloatValue(location, v))
+    case v: Double => Some(new DoubleValue(location, v))
+    case v: Boolean => Some(new BoolValue(location, v))
+    case v: Char => Some(new CharacterValue(location, v))
+    case v: Byte => Some(new ByteValue(location, v))
+    case v: Short => Some(new ShortValue(location, v))
+    case _ => None
+  }
+
+  /** `value` converted to the primitive `destination` the way the JVM's conversion instructions do. */
+  private def convert(value: Any, destination: Type): Option[Any] = {
+    def to(asInt: Int, asLong: Long, asFloat: Float, asDouble: Double): Option[Any] = destination match {
+      case BasicType.INT => Some(asInt)
+      case BasicType.LONG => Some(asLong)
+      case BasicType.FLOAT => Some(asFloat)
+      case BasicType.DOUBLE => Some(asDouble)
+      case BasicType.BYTE => Some(asInt.toByte)
+      case BasicType.SHORT => Some(asInt.toShort)
+      case BasicType.CHAR => Some(asInt.toChar)
+      case _ => None
+    }
+    value match {
+      case v: Int => to(v, v.toLong, v.toFloat, v.toDouble)
+      case v: Long => to(v.toInt, v, v.toFloat, v.toDouble)
+      case v: Float => to(v.toInt, v.toLong, v, v.toDouble)
+      case v: Double => to(v.toInt, v.toLong, v.toFloat, v)
+      case v: Char => to(v.toInt, v.toLong, v.toFloat, v.toDouble)
+      case v: Byte => to(v.toInt, v.toLong, v.toFloat, v.toDouble)
+      case v: Short => to(v.toInt, v.toLong, v.toFloat, v.toDouble)
+      case _ => None
+    }
+  }
+
+  /** `lhs kind rhs` for operands of the same (promoted) type, or None if it cannot be folded. */
+  private def evaluate(kind: BinaryTerm.Kind, lhs: Any, rhs: Any): Option[Any] = (lhs, rhs) match {
+    case (a: Int, b: Int) => kind match {
+      case ADD => Some(a + b)
+      case SUBTRACT => Some(a - b)
+      case MULTIPLY => Some(a * b)
+      case DIVIDE if b != 0 => Some(a / b)
+      case MOD if b != 0 => Some(a % b)
+      case BIT_AND => Some(a & b)
+      case BIT_OR => Some(a | b)
+      case XOR => Some(a ^ b)
+      case BIT_SHIFT_L2 => Some(a << b)
+      case BIT_SHIFT_R2 => Some(a >> b)
+      case BIT_SHIFT_R3 => Some(a >>> b)
+      case _ => compare(kind, Integer.compare(a, b), unordered = false)
+    }
+    case (a: Long, b: Long) => kind match {
+      case ADD => Some(a + b)
+      case SUBTRACT => Some(a - b)
+      case MULTIPLY => Some(a * b)
+      case DIVIDE if b != 0 => Some(a / b)
+      case MOD if b != 0 => Some(a % b)
+      case BIT_AND => Some(a & b)
+      case BIT_OR => Some(a | b)
+      case XOR => Some(a ^ b)
+      case _ => compare(kind, java.lang.Long.compare(a, b), unordered = false)
+    }
+    case (a: Long, b: Int) => kind match {
+      case BIT_SHIFT_L2 => Some(a << b)
+      case BIT_SHIFT_R2 => Some(a >> b)
+      case BIT_SHIFT_R3 => Some(a >>> b)
+      case _ => None
+    }
+    case (a: Float, b: Float) => kind match {
+      case ADD => Some(a + b)
+      case SUBTRACT => Some(a - b)
+      case MULTIPLY => Some(a * b)
+      case DIVIDE => Some(a / b)
+      case MOD => Some(a % b)
+      case _ => compare(kind, if (a < b) -1 else if (a > b) 1 else 0, unordered = a.isNaN || b.isNaN)
+    }
+    case (a: Double, b: Double) => kind match {
+      case ADD => Some(a + b)
+      case SUBTRACT => Some(a - b)
+      case MULTIPLY => Some(a * b)
+      case DIVIDE => Some(a / b)
+      case MOD => Some(a % b)
+      case _ => compare(kind, if (a < b) -1 else if (a > b) 1 else 0, unordered = a.isNaN || b.isNaN)
+    }
+    case (a: Boolean, b: Boolean) => kind match {
+      case BIT_AND => Some(a & b)
+      case BIT_OR => Some(a | b)
+      case XOR => Some(a ^ b)
+      case EQUAL => Some(a == b)
+      case NOT_EQUAL => Some(a != b)
+      case _ => None
+    }
+    case _ => None
+  }
+
+  /** A comparison given the sign of `lhs - rhs`; every comparison involving NaN but `!=` is false. */
+  private def compare(kind: BinaryTerm.Kind, sign: Int, unordered: Boolean): Option[Any] = kind match {
+    case LESS_THAN => Some(!unordered && sign < 0)
+    case GREATER_THAN => Some(!unordered && sign > 0)
+    case LESS_OR_EQUAL => Some(!unordered && sign <= 0)
+    case GREATER_OR_EQUAL => Some(!unordered && sign >= 0)
+    case EQUAL => Some(!unordered && sign == 0)
+    case NOT_EQUAL => Some(unordered || sign != 0)
+    case _ => None
+  }
+}
@@ -7,11 +7,20 @@
  * ************************************************************** */
 package onion.compiler
 
-import java.io.Reader
+import java.io.{File, Reader}
 import onion.compiler.toolbox.Inputs
 
-class FileInputSource(val name: String) extends InputSource {
-  private lazy val reader: Reader = Inputs.newReader(name)
+/**
+ * @param baseDirectory directory a relative `name` is resolved against, or
+ *                      null for the current directory; `name` itself is kept
+ *                      as given so diagnostics read the same either way
+ */
+class FileInputSource(val name: String, baseDirectory: File = null) extends InputSource {
+  private lazy val reader: Reader = Inputs.newReader(path)
+
+  private def path: String =
+    if (baseDirectory == null || new File(name).isAbsolute) name
+    else new File(baseDirectory, name).getPath
 
   def openReader: Reader = reader
 }
\ No newline at end of file
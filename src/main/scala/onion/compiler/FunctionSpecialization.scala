@@ -0,0 +1,88 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler
+
+import onion.compiler.TypedAST.*
+
+/**
+ * The primitive specializations of `onion.Function1` and `onion.Function2`
+ * (`onion.IntToIntFunction1`, `onion.LongFunction2` and so on).
+ *
+ * A function type whose parameters are all `Int`, all `Long` or all `Double`
+ * and whose result is that same type, `Boolean` or a reference type has a
+ * specialization: a subinterface of the generic one with an abstract method
+ * [[MethodName]] taking and returning the primitives themselves.  Closures of
+ * such a type implement the specialization, and its `call` delegates to
+ * `apply`.  Other values of the function type (e.g. instances of classes
+ * implementing `Function1[Int, Int]`) need not implement it, so calls only
+ * go to `apply` directly when the receiver is known to implement the
+ * specialization (see [[implementedBy]]), and otherwise to [[InvokerName]].
+ *
+ * @author Kota Mizushima
+ */
+object FunctionSpecialization {
+  /** The abstract method of every specialized interface. */
+  val MethodName = "apply"
+
+  /**
+   * The static method of every specialized interface that calls a value of
+   * the generic interface through `apply` if it implements the
+   * specialization and through `call` otherwise.
+   */
+  val InvokerName = "invoke"
+
+  private val parameterPrefixes = Map[Type, String](
+    BasicType.INT -> "Int",
+    BasicType.LONG -> "Long",
+    BasicType.DOUBLE -> "Double"
+  )
+
+  private val interfaceNames: Set[String] =
+    (for (prefix <- parameterPrefixes.values; arity <- Seq(1, 2); result <- Seq(s"To$prefix", "ToBoolean", ""))
+      yield s"onion.$prefix${result}Function$arity").toSet
+
+  /**
+   * Fully qualified name of the interface specializing `functionType`, or
+   * None if it is not an application of `onion.Function1` or
+   * `onion.Function2` with a specialization.
+   */
+  def interfaceName(functionType: Type): Option[String] = functionType match {
+    case applied: AppliedClassType =>
+      val arguments = applied.typeArguments
+      val arity = arguments.length - 1
+      if ((arity != 1 && arity != 2) || applied.raw.name != s"onion.Function$arity") return None
+      val parameters = arguments.init
+      if (parameters.exists(_ ne parameters.head)) return None
+      parameterPrefixes.get(parameters.head).flatMap { prefix =>
+        arguments.last match {
+          case result if result eq parameters.head => Some(s"onion.${prefix}To${prefix}Function$arity")
+          case BasicType.BOOLEAN => Some(s"onion.${prefix}ToBooleanFunction$arity")
+          case _: ClassType | _: ArrayType => Some(s"onion.${prefix}Function$arity")
+          case _ => None
+        }
+      }
+    case _ =>
+      None
+  }
+
+  /** Whether `call` of the interface named `name` is the call of a function (generic or specialized). */
+  def declaresFunctionCall(name: String): Boolean =
+    name == "onion.Function1" || name == "onion.Function2" || interfaceNames(name)
+
+  /** The specialized interface a value of static type `tp` is known to implement, if any. */
+  def implementedBy(tp: Type): Option[ClassType] = tp match {
+    case applied: AppliedClassType =>
+      implementedBy(applied.raw)
+    case classType: ClassType if interfaceNames(classType.name) =>
+      Some(classType)
+    case classType: ClassType =>
+      (Option(classType.superClass).iterator ++ classType.interfaces.iterator).map(implementedBy).collectFirst { case Some(found) => found }
+    case _ =>
+      None
+  }
+}
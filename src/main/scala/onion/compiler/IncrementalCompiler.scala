@@ -0,0 +1,271 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.security.MessageDigest
+import onion.compiler.CompilationOutcome.Success
+import org.objectweb.asm.{ClassReader, ClassVisitor, MethodVisitor, Opcodes}
+import org.objectweb.asm.commons.{ClassRemapper, Remapper}
+import scala.collection.mutable
+import scala.jdk.CollectionConverters._
+import scala.util.control.NonFatal
+
+/**
+ * Recompiles only the sources that need it.
+ *
+ * For every source the previous run recorded a hash of its content, a hash of
+ * its API (class headers and non-private member signatures as resolved by the
+ * outline pass) and the source classes its bytecode refers to.  A run types
+ * the changed sources, then keeps adding the sources that refer to a class
+ * whose API changed until nothing more is affected, and generates code only
+ * for that set.  Unchanged classes are read back from the output directory,
+ * which is put in front of the class path.
+ *
+ * Class files do not carry everything the compiler knows about a source class
+ * (e.g. default argument values), so an incremental run that fails falls back
+ * to compiling every source before reporting errors.
+ *
+ * @param config       compiler configuration; `outputDirectory` also holds the
+ *                     incremental state
+ * @param sharedTables class-path tables reused across compilations, or null
+ *
+ * @author Kota Mizushima
+ */
+class IncrementalCompiler(config: CompilerConfig, sharedTables: SharedClassTables = null) {
+  import IncrementalCompiler._
+
+  private val stateFile = new File(config.outputDirectory, StateFileName)
+
+  /**
+   * Compiles the sources in `fileNames` that changed since the last
+   * [[saveState saved]] run, resolving relative names against `baseDirectory`.
+   */
+  def compile(fileNames: Seq[String], baseDirectory: File = null): Result = {
+    def resolve(name: String): File =
+      if (baseDirectory == null || new File(name).isAbsolute) new File(name) else new File(baseDirectory, name)
+    val hashes = fileNames.map(name => name -> digest(Files.readAllBytes(resolve(name).toPath))).toMap
+    val previous = load().filter(_.options == optionsHash).map(_.sources).getOrElse(Map.empty[String, SourceRecord])
+    val changed = fileNames.filter(name => previous.get(name).forall(_.contentHash != hashes(name)))
+    val removed = previous.keySet -- fileNames
+    if (changed.isEmpty && removed.isEmpty && previous.nonEmpty) {
+      return Result(Success(Seq()), Seq(), Seq(), State(optionsHash, previous))
+    }
+    val profile = OnionCompiler.newProfile(config)
+    def fullBuild: Result =
+      build(fileNames, fileNames, previous, hashes, baseDirectory, profile, incremental = false).get
+    try {
+      if (previous.isEmpty || removed.nonEmpty || fileNames.size == changed.size) {
+        // The class files of removed classes would still be found on the output directory
+        fullBuild
+      } else {
+        build(fileNames, changed, previous, hashes, baseDirectory, profile, incremental = true)
+          .filter(_.outcome.isInstanceOf[Success])
+          .getOrElse(fullBuild)
+      }
+    } finally {
+      OnionCompiler.writeProfile(config, profile)
+    }
+  }
+
+  /** Persists the state of `result`; call it once its classes are written. */
+  def saveState(result: Result): Unit = {
+    stateFile.getParentFile.mkdirs()
+    val lines = mutable.ArrayBuffer(Header, s"options ${result.state.options}")
+    for ((name, record) <- result.state.sources.toSeq.sortBy(_._1)) {
+      lines += Seq(name, record.contentHash, record.apiHash, record.classes.mkString(","), record.references.toSeq.sorted.mkString(",")).mkString("\t")
+    }
+    Files.write(stateFile.toPath, lines.asJava, StandardCharsets.UTF_8)
+  }
+
+  private def load(): Option[State] = {
+    if (!stateFile.isFile) return None
+    try {
+      val lines = Files.readAllLines(stateFile.toPath, StandardCharsets.UTF_8).asScala.toList
+      lines match {
+        case Header :: options :: records if options.startsWith("options ") =>
+          val sources = records.filter(_.nonEmpty).map { line =>
+            val Array(name, content, api, classes, references) = line.split("\t", -1)
+            name -> SourceRecord(content, api, split(classes), split(references).toSet)
+          }
+          Some(State(options.stripPrefix("options "), sources.toMap))
+        case _ => None
+      }
+    } catch {
+      case NonFatal(_) => None
+    }
+  }
+
+  private def optionsHash: String =
+    digest(Seq(config.classPath.mkString(File.pathSeparator), config.superClass, config.encoding, config.release.toString).mkString("\n").getBytes(StandardCharsets.UTF_8))
+
+  /**
+   * Types `initial` (and, when `incremental`, the sources depending on any
+   * API that changed) and generates code for them.  An incremental build
+   * gives up (None) when a recompiled source no longer declares one of its
+   * classes, for the same reason removed sources force a full build.  The
+   * phases run as in [[OnionCompiler]], so internal errors are reported and
+   * every round of typing shows up in the profile.
+   */
+  private def build(
+    fileNames: Seq[String],
+    initial: Seq[String],
+    previous: Map[String, SourceRecord],
+    hashes: Map[String, String],
+    baseDirectory: File,
+    profile: CompilerProfile,
+    incremental: Boolean
+  ): Option[Result] = {
+    val compileConfig =
+      if (incremental) config.copy(classPath = config.outputDirectory +: config.classPath) else config
+    val phases = new OnionCompiler.Phases(compileConfig, profile)
+    var targets = initial.toSet
+    var result: Option[Result] = None
+    var gaveUp = false
+    val outcome = phases.outcome(initial.size) {
+      var generated = Seq[CompiledClass]()
+      while (result.isEmpty && !gaveUp) {
+        val compiled = fileNames.filter(targets)
+        val typing = new Typing(compileConfig, sharedTables, profile)
+        val typed = phases.typeCheck(compiled.map(new FileInputSource(_, baseDirectory)), typing)
+        val apis = compiled.map(name => name -> apiHash(typing.classesOf(name), hashes(name))).toMap
+        val vanished = compiled.exists { name =>
+          val declared = typing.classesOf(name).map(_.name).toSet
+          previous.get(name).exists(_.classes.exists(c => !declared(c)))
+        }
+        val changedClasses = compiled.flatMap { name =>
+          val declared = typing.classesOf(name).map(_.name)
+          previous.get(name) match {
+            case Some(record) if record.apiHash == apis(name) => Seq()
+            case Some(record) => record.classes ++ declared
+            case None => declared
+          }
+        }
+        val dependents =
+          if (!incremental) Seq()
+          else fileNames.filter(name => !targets(name) && previous.get(name).exists(_.references.exists(changedClasses.contains)))
+        if (incremental && vanished) {
+          gaveUp = true
+        } else if (dependents.isEmpty) {
+          generated = phases.generate(typed, typing)
+          result = Some(record(fileNames, compiled, typing, generated, previous, hashes, apis))
+        }
+        targets ++= dependents
+      }
+      generated
+    }
+    outcome match {
+      case _ if gaveUp => None
+      case Success(_) => result
+      case failure => Some(Result(failure, Seq(), Seq(), State(optionsHash, previous)))
+    }
+  }
+
+  private def record(
+    fileNames: Seq[String],
+    compiled: Seq[String],
+    typing: Typing,
+    generated: Seq[CompiledClass],
+    previous: Map[String, SourceRecord],
+    hashes: Map[String, String],
+    apis: Map[String, String]
+  ): Result = {
+    val owners = (for (name <- compiled; c <- typing.classesOf(name)) yield c.name -> name).toMap
+    val byOwner = generated.groupBy(c => owners.get(c.className))
+    val unchanged = previous.filter { case (name, _) => fileNames.contains(name) && !compiled.contains(name) }
+    val sourceClasses = unchanged.values.flatMap(_.classes).toSet ++ generated.map(_.className)
+    val records = compiled.map { name =>
+      val classes = byOwner.getOrElse(Some(name), Seq())
+      val references = classes.flatMap(c => referencedClasses(c.content)).toSet.intersect(sourceClasses) -- classes.map(_.className)
+      name -> SourceRecord(hashes(name), apis(name), classes.map(_.className), references)
+    }.toMap
+    val replaced = previous.filter { case (name, _) => compiled.contains(name) || !fileNames.contains(name) }
+    val stale = replaced.values.flatMap(_.classes).toSet -- generated.map(_.className)
+    Result(Success(generated), stale.toSeq.sorted, compiled, State(optionsHash, unchanged ++ records))
+  }
+}
+
+object IncrementalCompiler {
+  /** Name of the state file kept in the output directory. */
+  val StateFileName = ".onion-incremental"
+
+  private val Header = "onion-incremental 1"
+
+  /**
+   * @param outcome         classes generated by this run, or its errors
+   * @param staleClasses    previously generated classes that no longer exist
+   * @param compiledSources sources that were recompiled
+   */
+  final case class Result(outcome: CompilationOutcome, staleClasses: Seq[String], compiledSources: Seq[String], private[compiler] val state: State)
+
+  private[compiler] final case class SourceRecord(contentHash: String, apiHash: String, classes: Seq[String], references: Set[String])
+
+  private[compiler] final case class State(options: String, sources: Map[String, SourceRecord])
+
+  private def split(value: String): Seq[String] = if (value.isEmpty) Seq() else value.split(",").toSeq
+
+  private def digest(bytes: Array[Byte]): String =
+    MessageDigest.getInstance("SHA-256").digest(bytes).map(b => f"${b & 0xff}%02x").mkString
+
+  /**
+   * Hash of what other sources can observe of `classes`.  Default argument
+   * values are inlined into callers, so a source declaring any of them has its
+   * content hash folded in as well.
+   */
+  private def apiHash(classes: Seq[TypedAST.ClassDefinition], contentHash: String): String = {
+    val lines = mutable.ArrayBuffer[String]()
+    var hasDefaults = false
+    def visible(modifier: Int): Boolean = (modifier & Modifier.PRIVATE) == 0
+    def types(tps: Seq[TypedAST.Type]): String = tps.map(_.displayName).mkString("(", ",", ")")
+    def typeParams(tps: Seq[TypedAST.TypeParameter]): String =
+      tps.map(tp => tp.name + tp.upperBound.map(b => "<:" + b.displayName).getOrElse("")).mkString("[", ",", "]")
+    for (c <- classes) {
+      val superName = Option(c.superClass).map(_.displayName).getOrElse("")
+      lines += s"class ${c.modifier} ${c.isInterface} ${c.name}${typeParams(c.typeParameters.toSeq)} $superName ${c.interfaces.map(_.displayName).mkString(",")}"
+      for (f <- c.fields.toSeq.filter(f => visible(f.modifier)).sortBy(_.name)) {
+        lines += s"  field ${f.modifier} ${f.name} ${f.`type`.displayName}"
+      }
+      val methods = c.methods.filter(m => visible(m.modifier)).map { m =>
+        hasDefaults = hasDefaults || m.argumentsWithDefaults.exists(_.defaultValue.isDefined)
+        val names = m.argumentsWithDefaults.map(_.name).mkString(",")
+        s"  method ${m.modifier} ${m.name}${typeParams(m.typeParameters.toSeq)}${types(m.arguments.toSeq)}${m.isVararg} $names : ${m.returnType.displayName}"
+      }
+      lines ++= methods.sorted
+      val constructors = c.constructors.toSeq.filter(ct => visible(ct.modifier)).map {
+        case ct: TypedAST.ConstructorDefinition =>
+          hasDefaults = hasDefaults || ct.argumentsWithDefaults.exists(_.defaultValue.isDefined)
+          s"  new ${ct.modifier}${types(ct.getArgs.toSeq)} ${ct.argumentsWithDefaults.map(_.name).mkString(",")}"
+        case ct =>
+          s"  new ${ct.modifier}${types(ct.getArgs.toSeq)}"
+      }
+      lines ++= constructors.sorted
+    }
+    if (hasDefaults) lines += contentHash
+    digest(lines.mkString("\n").getBytes(StandardCharsets.UTF_8))
+  }
+
+  /** Names (in dotted form) of every class the given class file refers to. */
+  private def referencedClasses(content: Array[Byte]): Set[String] = {
+    val names = mutable.Set[String]()
+    val remapper = new Remapper() {
+      override def map(internalName: String): String = {
+        names += internalName.replace('/', '.')
+        internalName
+      }
+    }
+    // Method bodies are only remapped when the delegate asks to visit them
+    val sink = new ClassVisitor(Opcodes.ASM9) {
+      override def visitMethod(access: Int, name: String, descriptor: String, signature: String, exceptions: Array[String]): MethodVisitor =
+        new MethodVisitor(Opcodes.ASM9) {}
+    }
+    new ClassReader(content).accept(new ClassRemapper(sink, remapper), ClassReader.SKIP_FRAMES)
+    names.toSet
+  }
+}
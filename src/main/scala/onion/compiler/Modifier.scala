@@ -27,6 +27,7 @@ object Modifier {
   final val SEALED = 2048
   final val ENUM = 4096
   final val SYNTHETIC_RECORD = 8192  // Auto-generated record methods
+  final val TAILREC = 16384
 
   def check(modifier: Int, bitFlag: Int): Boolean = {
      (modifier & bitFlag) != 0
@@ -88,4 +89,8 @@ object Modifier {
      check(modifier, SYNTHETIC_RECORD)
   }
 
+  def isTailrec(modifier: Int): Boolean = {
+     check(modifier, TAILREC)
+  }
+
 }
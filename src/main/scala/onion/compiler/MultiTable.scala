@@ -1,35 +1,29 @@
 package onion.compiler
 
+import scala.annotation.tailrec
 import scala.collection.Iterable
 import scala.collection.Iterator
-import scala.collection.mutable
+import scala.collection.concurrent.TrieMap
 
+/**
+ * Name to entries table.  Buckets are immutable and swapped atomically, so
+ * readers (e.g. parallel typing workers) never observe a half-built bucket
+ * and lookups do not copy.
+ */
 class MultiTable[E <: Named] extends Iterable[E] {
-  private[this] final val mapping = new mutable.HashMap[String, mutable.Buffer[E]]
+  private[this] final val mapping = TrieMap.empty[String, Vector[E]]
 
   def add(entry: E): Boolean = {
-    mapping.get(entry.name) match {
+    @tailrec def loop(): Boolean = mapping.get(entry.name) match {
       case Some(v) =>
-        v += entry
-        true
+        if (mapping.replace(entry.name, v, v :+ entry)) true else loop()
       case None =>
-        val v = mutable.Buffer[E]()
-        v += entry
-        mapping(entry.name) = v
-        false
+        if (mapping.putIfAbsent(entry.name, Vector(entry)).isEmpty) false else loop()
     }
+    loop()
   }
 
-  def get(key: String): Seq[E] = {
-    (mapping.get(key) match {
-      case None =>
-        val v = mutable.Buffer[E]()
-        mapping(key) = v
-        v
-      case Some(v) =>
-        v
-    }).toList
-  }
+  def get(key: String): Seq[E] = mapping.getOrElse(key, Vector.empty)
 
   def values: Seq[E] =  mapping.values.toList.flatten
 
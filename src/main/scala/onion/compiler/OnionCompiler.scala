@@ -7,21 +7,21 @@
  * ************************************************************** */
 package onion.compiler
 
+import java.io.IOException
+import java.nio.file.{Files, Paths}
 import onion.compiler.CompilationOutcome.{Failure, Success}
 import onion.compiler.exceptions.CompilationException
 import scala.util.control.NonFatal
 
 /**
+ * @param sharedTables class-path tables to reuse across compilations (e.g. in
+ *                     the compile daemon); null to load class-path types afresh
+ *
  * @author Kota Mizushima
  *
  */
-class OnionCompiler(val config: CompilerConfig) {
-  private val InternalErrorCode = "I0000"
-
-  private def internalError(e: Throwable): CompileError = {
-    val message = Option(e.getMessage).filter(_.nonEmpty).getOrElse(e.getClass.getSimpleName)
-    CompileError(null, null, s"Internal compiler error: $message", Some(InternalErrorCode))
-  }
+class OnionCompiler(val config: CompilerConfig, sharedTables: SharedClassTables = null) {
+  import OnionCompiler._
 
   def compile(fileNames: Array[String]): CompilationOutcome = {
     val sources = fileNames.iterator.map(new FileInputSource(_)).toSeq
@@ -29,83 +29,96 @@ class OnionCompiler(val config: CompilerConfig) {
   }
 
   def compile(srcs: Seq[InputSource]): CompilationOutcome = {
-    if (config.verbose) {
-      compileVerbose(srcs)
-    } else {
-      compileNormal(srcs)
+    val phases = new Phases(config, newProfile(config))
+    try {
+      phases.outcome(srcs.size) {
+        val typing = new Typing(config, sharedTables, phases.profile)
+        phases.generate(phases.typeCheck(srcs, typing), typing)
+      }
+    } finally {
+      writeProfile(config, phases.profile)
     }
   }
 
-  private def compileNormal(srcs: Seq[InputSource]): CompilationOutcome = {
-    try {
-      val parsing = new Parsing(config)
-      val rewriting = new Rewriting(config)
-      val typing = new Typing(config)
-      val generating = new TypedGenerating(config)
-
-      val parsed = parsing.process(srcs)
-      if (config.dumpAst) DiagnosticsPrinter.dumpAst(parsed)
-      val rewritten = rewriting.process(parsed)
-      val typed = typing.process(rewritten)
-      if (config.dumpTypedAst) DiagnosticsPrinter.dumpTyped(typed)
-      val generated = generating.process(typed)
+  def compileOrThrow(fileNames: Array[String]): Seq[CompiledClass] =
+    compile(fileNames) match {
+      case Success(classes) => classes
+      case Failure(errors) => throw new CompilationException(errors)
+    }
 
-      Success(generated)
-    } catch {
-      case e: CompilationException =>
-        Failure(e.problems.toIndexedSeq)
-      case NonFatal(e) =>
-        Failure(Seq(internalError(e)))
+  def compileOrThrow(srcs: Seq[InputSource]): Seq[CompiledClass] =
+    compile(srcs) match {
+      case Success(classes) => classes
+      case Failure(errors) => throw new CompilationException(errors)
     }
+}
+
+object OnionCompiler {
+  private val InternalErrorCode = "I0000"
+
+  private def internalError(e: Throwable): CompileError = {
+    val message = Option(e.getMessage).filter(_.nonEmpty).getOrElse(e.getClass.getSimpleName)
+    CompileError(null, null, s"Internal compiler error: $message", Some(InternalErrorCode))
   }
 
-  private def compileVerbose(srcs: Seq[InputSource]): CompilationOutcome = {
-    import java.lang.System.{currentTimeMillis => now}
+  /** A profile for `--profile-compiler`, or null. */
+  private[compiler] def newProfile(config: CompilerConfig): CompilerProfile =
+    config.profileOutput.map(_ => new CompilerProfile).orNull
 
-    def timed[A](phaseName: String)(block: => A): A = {
-      val start = now()
-      val result = block
-      val elapsed = now() - start
-      System.err.println(f"[verbose] $phaseName: ${elapsed}ms")
-      result
+  private[compiler] def writeProfile(config: CompilerConfig, profile: CompilerProfile): Unit = {
+    if (profile == null) return
+    val path = config.profileOutput.get
+    try Files.writeString(Paths.get(path), profile.toJson)
+    catch {
+      case e: IOException => System.err.println(s"Cannot write compiler profile to $path: ${e.getMessage}")
     }
+  }
 
-    try {
-      val totalStart = now()
-
-      val parsing = new Parsing(config)
-      val rewriting = new Rewriting(config)
-      val typing = new Typing(config)
-      val generating = new TypedGenerating(config)
+  /**
+   * The phase sequence of a compilation, shared with [[IncrementalCompiler]].
+   * Each phase is recorded in `profile` (if any) and, with `--verbose`, its
+   * time is printed to stderr.
+   */
+  private[compiler] final class Phases(config: CompilerConfig, val profile: CompilerProfile) {
+    private def phase[A](name: String)(block: => A): A = {
+      if (!config.verbose) return CompilerProfile.phase(profile, name.toLowerCase)(block)
+      val start = System.currentTimeMillis()
+      val result = CompilerProfile.phase(profile, name.toLowerCase)(block)
+      System.err.println(f"[verbose] $name: ${System.currentTimeMillis() - start}ms")
+      result
+    }
 
-      val parsed = timed("Parsing")(parsing.process(srcs))
+    /** Parses, rewrites and types `srcs` with `typing`. */
+    def typeCheck(srcs: Seq[InputSource], typing: Typing): Seq[TypedAST.ClassDefinition] = {
+      val parsed = phase("Parsing")(new Parsing(config, profile).process(srcs))
       if (config.dumpAst) DiagnosticsPrinter.dumpAst(parsed)
-      val rewritten = timed("Rewriting")(rewriting.process(parsed))
-      val typed = timed("Typing")(typing.process(rewritten))
+      val rewritten = phase("Rewriting")(new Rewriting(config).process(parsed))
+      val typed = phase("Typing")(typing.process(rewritten))
       if (config.dumpTypedAst) DiagnosticsPrinter.dumpTyped(typed)
-      val generated = timed("CodeGen")(generating.process(typed))
-
-      val totalElapsed = now() - totalStart
-      System.err.println(f"[verbose] Total: ${totalElapsed}ms (${srcs.size} source files)")
-
-      Success(generated)
-    } catch {
-      case e: CompilationException =>
-        Failure(e.problems.toIndexedSeq)
-      case NonFatal(e) =>
-        Failure(Seq(internalError(e)))
+      typed
     }
-  }
 
-  def compileOrThrow(fileNames: Array[String]): Seq[CompiledClass] =
-    compile(fileNames) match {
-      case Success(classes) => classes
-      case Failure(errors) => throw new CompilationException(errors)
+    /** Optimizes `typed` and generates its classes against the table of `typing`. */
+    def generate(typed: Seq[TypedAST.ClassDefinition], typing: Typing): Seq[CompiledClass] = {
+      val optimized = phase("Optimizing")(new Optimizing(config).process(typed))
+      phase("CodeGen")(new TypedGenerating(config, typing.table_).process(optimized))
     }
 
-  def compileOrThrow(srcs: Seq[InputSource]): Seq[CompiledClass] =
-    compile(srcs) match {
-      case Success(classes) => classes
-      case Failure(errors) => throw new CompilationException(errors)
+    /** The classes `run` generates, or the problems it reports, including internal errors. */
+    def outcome(sourceCount: Int)(run: => Seq[CompiledClass]): CompilationOutcome = {
+      val start = System.currentTimeMillis()
+      try {
+        val generated = run
+        if (config.verbose) {
+          System.err.println(f"[verbose] Total: ${System.currentTimeMillis() - start}ms ($sourceCount source files)")
+        }
+        Success(generated)
+      } catch {
+        case e: CompilationException =>
+          Failure(e.problems.toIndexedSeq)
+        case NonFatal(e) =>
+          Failure(Seq(internalError(e)))
+      }
     }
+  }
 }
@@ -0,0 +1,56 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler
+
+import onion.compiler.TypedAST.*
+import onion.compiler.toolbox.Parallel
+
+/**
+ * Optimization phase between [[Typing]] and [[TypedGenerating]].
+ *
+ * Every function body of the typed classes goes through [[ConstantFolder]],
+ * so literal arithmetic, literal string concatenation and branches on
+ * constant conditions never reach code generation.  Bodies are rewritten in
+ * place; classes are independent of each other and, like code generation,
+ * are processed on `config.parallelism` workers.
+ *
+ * @author Kota Mizushima
+ */
+class Optimizing(config: CompilerConfig) extends AnyRef with Processor[Seq[ClassDefinition], Seq[ClassDefinition]] {
+  class OptimizingEnvironment
+  type Environment = OptimizingEnvironment
+
+  def newEnvironment(source: Seq[ClassDefinition]): OptimizingEnvironment = new OptimizingEnvironment
+
+  def processBody(source: Seq[ClassDefinition], environment: OptimizingEnvironment): Seq[ClassDefinition] = {
+    Parallel.map(source, config.parallelism)(optimize)
+    source
+  }
+
+  private def optimize(classDef: ClassDefinition): Unit = {
+    for (method <- classDef.methods) method match {
+      case definition: MethodDefinition if definition.block != null =>
+        definition.block = ConstantFolder.fold(definition.block)
+      case _ =>
+    }
+    for (constructor <- classDef.constructors) constructor match {
+      case definition: ConstructorDefinition =>
+        if (definition.block != null) definition.block = ConstantFolder.fold(definition.block)
+        val init = definition.superInitializer
+        if (init != null) {
+          val terms = ConstantFolder.fold(init.terms)
+          if (terms ne init.terms) definition.superInitializer = new Super(init.classType, init.arguments, terms)
+        }
+      case _ =>
+    }
+    val initializers = classDef.staticInitializers
+    if (initializers.nonEmpty) {
+      classDef.setStaticInitializers(ConstantFolder.fold(new StatementBlock(initializers.toIndexedSeq*)).statements)
+    }
+  }
+}
@@ -6,7 +6,7 @@ import java.io.{IOException, Reader}
 import java.util.Arrays.ArrayList
 import java.util.Collections
 
-import _root_.onion.compiler.toolbox.Message
+import _root_.onion.compiler.toolbox.{Message, Parallel}
 import _root_.onion.compiler.exceptions.CompilationException
 import _root_.onion.compiler.parser.{JJOnionParser, ParseException}
 
@@ -17,8 +17,12 @@ import _root_.onion.compiler.parser.{JJOnionParser, ParseException}
  * - Collects multiple syntax errors per file (up to maxErrorsPerFile)
  * - Continues parsing after errors to find more issues
  * - Provides better error messages with expected token information
+ * - Parses files concurrently when `config.parallelism` is greater than 1,
+ *   one parser per file, merging results in source order
+ *
+ * @param profile receives per-file parse times, or null
  */
-class Parsing(config: CompilerConfig) extends AnyRef
+class Parsing(config: CompilerConfig, profile: CompilerProfile = null) extends AnyRef
   with Processor[Seq[InputSource], Seq[AST.CompilationUnit]] {
 
   /** Maximum number of syntax errors to collect per file before stopping */
@@ -32,8 +36,16 @@ class Parsing(config: CompilerConfig) extends AnyRef
     val buffer = new ArrayBuffer[AST.CompilationUnit]()
     val problems = new ArrayBuffer[CompileError]()
 
-    for (i <- source.indices) {
-      parseFile(source(i), buffer, problems)
+    // Each file gets its own buffers so that results can be merged in source order
+    val results = Parallel.map(source, config.parallelism) { input =>
+      val units = new ArrayBuffer[AST.CompilationUnit](1)
+      val fileProblems = new ArrayBuffer[CompileError]()
+      CompilerProfile.worker(profile, input.name)(parseFile(input, units, fileProblems))
+      (units, fileProblems)
+    }
+    for ((units, fileProblems) <- results) {
+      buffer ++= units
+      problems ++= fileProblems
     }
 
     if (problems.nonEmpty) throw new CompilationException(problems.toSeq)
@@ -11,7 +11,7 @@ package onion.compiler
  * Semantic Error Codes for the Onion Compiler
  *
  * This object defines all semantic error types that can be reported during
- * type checking. Each error has a unique code (E0000-E0052) for identification
+ * type checking. Each error has a unique code (E0000-E0054) for identification
  * and i18n message lookup.
  *
  * == Error Categories ==
@@ -39,8 +39,9 @@ package onion.compiler
  *   - TYPE_NOT_GENERIC, TYPE_ARGUMENT_ARITY_MISMATCH, TYPE_ARGUMENT_MUST_BE_REFERENCE
  *   - METHOD_NOT_GENERIC, METHOD_TYPE_ARGUMENT_ARITY_MISMATCH, ERASURE_SIGNATURE_COLLISION
  *
- * '''Control Flow Errors (E0048-E0050)'''
+ * '''Control Flow Errors (E0048-E0050, E0053-E0054)'''
  *   - BREAK_OUTSIDE_LOOP, CONTINUE_OUTSIDE_LOOP, CURRENT_INSTANCE_NOT_AVAILABLE
+ *   - TAILREC_METHOD_OVERRIDABLE, TAILREC_CALL_NOT_IN_TAIL_POSITION
  *
  * '''Pattern Matching Errors (E0042-E0047)'''
  *   - NON_EXHAUSTIVE_PATTERN_MATCH, UNKNOWN_PARAMETER_NAME, DUPLICATE_ARGUMENT
@@ -118,6 +119,8 @@ object SemanticError {
   case object CURRENT_INSTANCE_NOT_AVAILABLE extends SemanticError(50)
   case object RETURN_TYPE_REQUIRED extends SemanticError(51)
   case object LAMBDA_PARAM_TYPE_REQUIRED extends SemanticError(52)
+  case object TAILREC_METHOD_OVERRIDABLE extends SemanticError(53)
+  case object TAILREC_CALL_NOT_IN_TAIL_POSITION extends SemanticError(54)
 }
 sealed abstract class SemanticError(val code: Int) {
   /** Returns the error code in format "E0001" */
@@ -72,6 +72,8 @@ import onion.compiler.exceptions.CompilationException
  * }}}
  *
  * @param threshold Maximum number of errors before throwing CompilationException
+ * @param suggestions indexes of member and class names, shared by the
+ *                    reporters of one compilation
  *
  * @see [[SemanticError]] for error type definitions
  * @see [[CompileError]] for error representation
@@ -79,7 +81,7 @@ import onion.compiler.exceptions.CompilationException
  *
  * @author Kota Mizushima
  */
-class SemanticErrorReporter(threshold: Int) {
+class SemanticErrorReporter(threshold: Int, suggestions: toolbox.Suggestions.Indexes = new toolbox.Suggestions.Indexes) {
   private val problems = Buffer[CompileError]()
   private var sourceFile: String = null
   private var errorCount: Int = 0
@@ -339,6 +341,14 @@ class SemanticErrorReporter(threshold: Int) {
       "error.semantic.lambdaParamTypeRequired",
       Seq(items => asString(items(0)))
     ),
+    SemanticError.TAILREC_METHOD_OVERRIDABLE -> ErrorDef(
+      "error.semantic.tailrecMethodOverridable",
+      Seq(items => asString(items(0)))
+    ),
+    SemanticError.TAILREC_CALL_NOT_IN_TAIL_POSITION -> ErrorDef(
+      "error.semantic.tailrecCallNotInTailPosition",
+      Seq(items => asString(items(0)))
+    ),
 
     // Other errors
     SemanticError.UNIMPLEMENTED_FEATURE -> ErrorDef(
@@ -369,10 +379,10 @@ class SemanticErrorReporter(threshold: Int) {
     val name = asString(items(1))
     val args = typeNames(asTypeArray(items(2)))
     val baseMessage = format(message("error.semantic.methodNotFound"), Seq(typeName(targetType), name, args))
-    val candidates = targetType match
-      case obj: TypedAST.ObjectType => obj.methods.map(_.name).distinct.toSeq
-      case _ => Seq.empty
-    val suggestion = toolbox.Suggestions.formatSuggestion(name, candidates)
+    val suggestion = targetType match
+      case obj: TypedAST.ObjectType =>
+        toolbox.Suggestions.formatSuggestion(name, suggestions(obj, "methods", obj.methods.map(_.name).distinct.toSeq))
+      case _ => None
     problem(position, appendSuggestion(baseMessage, suggestion))
   }
 
@@ -380,10 +390,10 @@ class SemanticErrorReporter(threshold: Int) {
     val targetType = items(0).asInstanceOf[TypedAST.Type]
     val name = asString(items(1))
     val baseMessage = format(message("error.semantic.fieldNotFound"), Seq(typeName(targetType), name))
-    val candidates = targetType match
-      case obj: TypedAST.ObjectType => obj.fields.map(_.name).distinct.toSeq
-      case _ => Seq.empty
-    val suggestion = toolbox.Suggestions.formatSuggestion(name, candidates)
+    val suggestion = targetType match
+      case obj: TypedAST.ObjectType =>
+        toolbox.Suggestions.formatSuggestion(name, suggestions(obj, "fields", obj.fields.map(_.name).distinct.toSeq))
+      case _ => None
     problem(position, appendSuggestion(baseMessage, suggestion))
   }
 
@@ -394,9 +404,10 @@ class SemanticErrorReporter(threshold: Int) {
     val name = asString(items(0))
     val baseMessage = format(message("error.semantic.classNotFound"), Seq(name))
 
+    // Name mappers hand out the same candidate array, so it can key an index
     val suggestion = if (items.length > 1) {
       val candidates = items(1).asInstanceOf[Array[String]]
-      toolbox.Suggestions.formatSuggestion(name, candidates.toSeq)
+      toolbox.Suggestions.formatSuggestion(name, suggestions(candidates, "classes", candidates.toSeq))
     } else None
 
     problem(position, appendSuggestion(baseMessage, suggestion))
@@ -508,6 +519,20 @@ class SemanticErrorReporter(threshold: Int) {
 
   def getProblems: Array[CompileError] = problems.toArray
 
+  /**
+   * Appends the problems collected by another reporter (e.g. one owned by a
+   * parallel typing worker), counting each against this reporter's threshold.
+   */
+  def merge(other: SemanticErrorReporter): Unit = {
+    for (p <- other.problems) {
+      errorCount += 1
+      problems.append(p)
+      if (errorCount >= threshold) {
+        throw new CompilationException(problems.toSeq)
+      }
+    }
+  }
+
   def setSourceFile(sourceFile: String): Unit = {
     this.sourceFile = sourceFile
   }
@@ -0,0 +1,74 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler
+
+import java.io.File
+import scala.collection.mutable
+
+/**
+ * Class-path type universes shared by the compilations of a long-running
+ * process such as the compile daemon.
+ *
+ * Each distinct set of class-path jars gets one [[ClassTable]] holding only
+ * the JDK and library types; compilations put their source classes into a
+ * child table on top of it, so the shared table never sees them.  A table is
+ * replaced when one of its jars changes.
+ *
+ * Directories on the class path are left out of the shared table and read by
+ * the child table of each compilation instead: the output directory is often
+ * one of them or below one (e.g. `-d out` with the default class path `.`),
+ * so they change with every compilation, and stamping them would mean
+ * walking them on every request.
+ *
+ * @author Kota Mizushima
+ */
+class SharedClassTables {
+  private case class Entry(stamp: Seq[(String, Long, Long)], table: ClassTable)
+
+  private val entries = mutable.HashMap[String, Entry]()
+
+  /**
+   * Returns the shared table for the jars of `classPath`, building it on
+   * first use or after one of them changed.
+   */
+  def tableFor(classPath: String): ClassTable = synchronized {
+    val shared = SharedClassTables.jars(classPath)
+    val stamp = SharedClassTables.stamp(shared)
+    entries.get(shared) match {
+      case Some(entry) if entry.stamp == stamp =>
+        entry.table
+      case previous =>
+        previous.foreach(_.table.close())
+        val table = new ClassTable(shared)
+        entries(shared) = Entry(stamp, table)
+        table
+    }
+  }
+
+  /**
+   * Drops all tables.  The jars they read stay open, shared with other
+   * compilations through [[onion.compiler.environment.ClassPathIndex]].
+   */
+  def clear(): Unit = synchronized {
+    entries.values.foreach(_.table.close())
+    entries.clear()
+  }
+}
+
+object SharedClassTables {
+  /** The entries of `classPath` that are files, i.e. jars. */
+  private def jars(classPath: String): String =
+    classPath.split(File.pathSeparator).filter(path => path.nonEmpty && new File(path).isFile).mkString(File.pathSeparator)
+
+  /** Path, size and modification time of every jar of the class path. */
+  private def stamp(classPath: String): Seq[(String, Long, Long)] =
+    classPath.split(File.pathSeparator).filter(_.nonEmpty).toSeq.map { path =>
+      val file = new File(path)
+      (path, file.length, file.lastModified)
+    }
+}
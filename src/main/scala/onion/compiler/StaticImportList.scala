@@ -10,20 +10,86 @@ package onion.compiler
 import java.util.ArrayList
 import java.util.List
 import collection.mutable.ArrayBuffer
+import collection.mutable.HashMap
 
 /**
  * A type safe import list.
+ *
+ * Unqualified calls are resolved against the static methods of every
+ * imported class, so the list indexes those methods by name (see
+ * [[methodsNamed]]) the first time it is asked and keeps the index until an
+ * import is added or a source class of its table changes.
+ *
  * @author Kota Mizushima
  *
  */
 class StaticImportList {
+  import StaticImportList._
+
   private val items = new ArrayBuffer[StaticImportItem]
+  @volatile private var index: Index = null
+
+  def add(item: StaticImportItem): Unit = synchronized {
+    items += item
+    index = null
+  }
+
+  /**
+   * Imported classes declaring or inheriting static methods named `name`,
+   * in import order, each with those methods.
+   */
+  def methodsNamed(name: String, table: ClassTable): Array[Candidates] = {
+    var current = index
+    if (current == null || !current.isCurrent(table)) {
+      current = synchronized(buildIndex(table))
+      index = current
+    }
+    current.byName.getOrElse(name, NoCandidates)
+  }
 
-  def add(item: StaticImportItem): Unit =  items += item
+  private def buildIndex(table: ClassTable): Index = {
+    val byName = HashMap[String, ArrayBuffer[Candidates]]()
+    var stamp = TypedAST.Stamp.fixed
+    for (item <- items) {
+      val owner = table.load(item.getName)
+      if (owner != null) {
+        if (stamp eq TypedAST.Stamp.fixed) stamp = TypedAST.Stamp(TypedAST.ClassDefinition.revisionOf(owner))
+        for (name <- staticMethodNames(owner)) {
+          val methods = owner.allMethods(name).filter(m => Modifier.isStatic(m.modifier))
+          byName.getOrElseUpdate(name, ArrayBuffer()) += Candidates(owner, methods)
+        }
+      }
+    }
+    new Index(table, byName.map { case (name, found) => name -> found.toArray }.toMap, stamp)
+  }
 
   def get(index: Int): StaticImportItem = items(index)
 
   def getItems: Array[StaticImportItem] = items.toArray
 
   def size: Int = items.size
+}
+
+object StaticImportList {
+  /** Static methods named alike of one imported class. */
+  final case class Candidates(owner: TypedAST.ClassType, methods: Array[TypedAST.Method])
+
+  private val NoCandidates = new Array[Candidates](0)
+
+  private final class Index(table: ClassTable, val byName: Map[String, Array[Candidates]], stamp: TypedAST.Stamp) {
+    def isCurrent(table: ClassTable): Boolean = (this.table eq table) && stamp.isCurrent
+  }
+
+  private def staticMethodNames(owner: TypedAST.ClassType): Set[String] = {
+    val names = Set.newBuilder[String]
+    val visited = new java.util.HashSet[TypedAST.ObjectType]
+    def visit(tp: TypedAST.ObjectType): Unit = {
+      if (tp == null || !visited.add(tp)) return
+      for (method <- tp.methods if Modifier.isStatic(method.modifier)) names += method.name
+      visit(tp.superClass)
+      tp.interfaces.foreach(visit)
+    }
+    visit(owner)
+    names.result()
+  }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package onion.compiler
+
+import onion.compiler.TypedAST.*
+
+import scala.collection.mutable.Buffer
+
+/**
+ * Self tail-call elimination.  A call of a method on its own receiver that is
+ * the last thing the method does becomes a [[TypedAST.TailCall]], which
+ * rebinds the parameters and jumps back to the start of the body instead of
+ * growing the stack.
+ *
+ * Tail positions are `return` statements, also in loops, the values of an
+ * `if` or `select` expression that is returned and, in a method returning
+ * Unit, a call statement after which the method returns.  Nothing inside
+ * `try` or `synchronized` is in tail position: the jump would skip the
+ * pending `finally` or monitor exit.  Closures are functions of their own.
+ */
+object TailCalls {
+  /** Whether a call of `method` on its own receiver cannot dispatch to an override. */
+  def isEffectivelyFinal(method: MethodDefinition): Boolean = {
+    val modifier = method.modifier
+    Modifier.isStatic(modifier) || Modifier.isPrivate(modifier) || Modifier.isFinal(modifier) ||
+      (method.affiliation match {
+        case classDef: ClassDefinition => Modifier.isFinal(classDef.modifier)
+        case _ => false
+      })
+  }
+
+  /**
+   * `body` of `method` with its self calls in tail position eliminated, and
+   * the calls of `method` on its own receiver left in it.
+   */
+  def eliminate(method: MethodDefinition, body: StatementBlock): (StatementBlock, Seq[Term]) = {
+    val eliminator = new Eliminator(method)
+    val result = eliminator.statement(body, tail = true) match {
+      case block: StatementBlock => block
+      case other => new StatementBlock(body.location, other)
+    }
+    (result, remainingCalls(method, result))
+  }
+
+  private def remainingCalls(method: Method, body: ActionStatement): Seq[Term] = {
+    val calls = Buffer[Term]()
+    new TypedASTTransformer {
+      override def transformTerm(term: Term): Term = {
+        term match {
+          case call: Call if (call.method eq method) && isOwnReceiver(call.target) => calls += call
+          case call: CallStatic if call.method eq method => calls += call
+          case _ =>
+        }
+        transformChildren(term)
+      }
+    }.transformStatement(body)
+    calls.toSeq
+  }
+
+  private def isOwnReceiver(target: Term): Boolean = target match {
+    case _: This | _: OuterThis => true
+    case _ => false
+  }
+
+  private final class Eliminator(method: MethodDefinition) {
+    private val returnsUnit = method.returnType == BasicType.VOID
+    private var eliminated = 0
+
+    /** `s` with its tail calls eliminated; `tail` if the method returns when `s` completes. */
+    def statement(s: ActionStatement, tail: Boolean): ActionStatement = s match {
+      case n: StatementBlock =>
+        val statements = n.statements
+        val result = statements.indices.map { i =>
+          val last = if (i == statements.length - 1) tail else returnsNothing(statements(i + 1))
+          statement(statements(i), last)
+        }
+        if (result.indices.forall(i => result(i) eq statements(i))) n
+        else new StatementBlock(n.location, result*)
+      case n: IfStatement =>
+        val thenStatement = statement(n.thenStatement, tail)
+        val elseStatement = if (n.elseStatement == null) null else statement(n.elseStatement, tail)
+        if ((thenStatement eq n.thenStatement) && (elseStatement eq n.elseStatement)) n
+        else new IfStatement(n.location, n.condition, thenStatement, elseStatement)
+      case n: SwitchStatement =>
+        val cases = n.cases.map { c =>
+          val body = statement(c.statement, tail)
+          if (body eq c.statement) c else new SwitchStatement.Case(c.labels, body)
+        }
+        val default = if (n.defaultStatement == null) null else statement(n.defaultStatement, tail)
+        if (cases.indices.forall(i => cases(i) eq n.cases(i)) && (default eq n.defaultStatement)) n
+        else new SwitchStatement(n.location, n.scrutinee, cases, default)
+      case n: ConditionalLoop =>
+        val body = statement(n.stmt, tail = false)
+        if (body eq n.stmt) n else new ConditionalLoop(n.location, n.condition, body)
+      case n: Return =>
+        returning(n)
+      case n: ExpressionActionStatement if tail && returnsUnit =>
+        n.term match {
+          case SelfCall(arguments) => tailCall(n.location, arguments)
+          case term: StatementTerm =>
+            val result = statement(term.statement, tail)
+            if (result eq term.statement) n else result
+          case _ => n
+        }
+      case other =>
+        other
+    }
+
+    private def returnsNothing(s: ActionStatement): Boolean = s match {
+      case n: Return => n.term == null
+      case _ => false
+    }
+
+    private def returning(n: Return): ActionStatement = n.term match {
+      case SelfCall(arguments) =>
+        tailCall(n.location, arguments)
+      case begin: Begin => begin.terms match {
+        // The value of an if or select expression: its branches assign `result`
+        case Array(value: StatementTerm, result: RefLocal) if result.frame == 0 =>
+          val before = eliminated
+          val branches = returningFrom(value.statement, result.index)
+          if (eliminated == before) n
+          else new StatementBlock(n.location, branches, new Return(n.location, result))
+        case _ => n
+      }
+      case _ => n
+    }
+
+    /** `s` with each assignment of local `result` it completes with turned into a return. */
+    private def returningFrom(s: ActionStatement, result: Int): ActionStatement = s match {
+      case n: StatementBlock if n.statements.nonEmpty =>
+        val statements = n.statements
+        val last = returningFrom(statements.last, result)
+        if (last eq statements.last) n else new StatementBlock(n.location, (statements.init :+ last).toIndexedSeq*)
+      case n: IfStatement =>
+        val thenStatement = returningFrom(n.thenStatement, result)
+        val elseStatement = if (n.elseStatement == null) null else returningFrom(n.elseStatement, result)
+        if ((thenStatement eq n.thenStatement) && (elseStatement eq n.elseStatement)) n
+        else new IfStatement(n.location, n.condition, thenStatement, elseStatement)
+      case n: SwitchStatement =>
+        val cases = n.cases.map { c =>
+          val body = returningFrom(c.statement, result)
+          if (body eq c.statement) c else new SwitchStatement.Case(c.labels, body)
+        }
+        val default = if (n.defaultStatement == null) null else returningFrom(n.defaultStatement, result)
+        if (cases.indices.forall(i => cases(i) eq n.cases(i)) && (default eq n.defaultStatement)) n
+        else new SwitchStatement(n.location, n.scrutinee, cases, default)
+      case n: ExpressionActionStatement => n.term match {
+        case set: SetLocal if set.frame == 0 && set.index == result =>
+          returning(new Return(n.location, set.value))
+        case _ => n
+      }
+      case other =>
+        other
+    }
+
+    private def tailCall(location: Location, arguments: Array[Term]): ActionStatement = {
+      eliminated += 1
+      new TailCall(location, method, arguments)
+    }
+
+    private object SelfCall {
+      def unapply(term: Term): Option[Array[Term]] = term match {
+        case call: Call if (call.method eq method) && call.target.isInstanceOf[This] => Some(call.parameters)
+        case call: CallStatic if call.method eq method => Some(call.parameters)
+        case _ => None
+      }
+    }
+  }
+}
@@ -292,6 +292,31 @@ object TypedAST {
    * @author Kota Mizushima
    */
   object ClassDefinition {
+    /** Stands in for the revision of a source class not added to a table yet. */
+    private[compiler] val unowned = new java.util.concurrent.atomic.AtomicLong
+
+    /**
+     * The revision of the table owning the source class `tp` is (or applies,
+     * or is bounded by), or null if `tp` comes from class files.
+     */
+    private[compiler] def revisionOf(tp: TypedAST.ObjectType): java.util.concurrent.atomic.AtomicLong = tp match {
+      case definition: ClassDefinition => if (definition.owner == null) unowned else definition.owner.revision
+      case applied: AppliedClassType => revisionOf(applied.raw)
+      case variable: TypeVariableType => if (variable.upperBound == null) null else revisionOf(variable.upperBound)
+      case _ => null
+    }
+
+    /** Like [[revisionOf]], also looking into type arguments, array components and bounds. */
+    private[compiler] def revisionIn(tp: TypedAST.Type): java.util.concurrent.atomic.AtomicLong = tp match {
+      case applied: AppliedClassType => applied.sourceRevision
+      case variable: TypeVariableType => if (variable.upperBound == null) null else revisionIn(variable.upperBound)
+      case array: ArrayType => revisionIn(array.component)
+      case wildcard: WildcardType =>
+        val upper = revisionIn(wildcard.upperBound)
+        if (upper != null) upper else wildcard.lowerBound.map(revisionIn).orNull
+      case objectType: ObjectType => revisionOf(objectType)
+      case _ => null
+    }
     /**
      * This method creates interface definition.
      * @param modifier
@@ -338,6 +363,9 @@ object TypedAST {
     private var typeParameters_ = typeParameters0
     private var staticInitializers_ = Array[TypedAST.ActionStatement]()
 
+    /** The table this class was added to, whose revision counts its changes. */
+    @volatile private[compiler] var owner: ClassTable = null
+
     /**
      * Record components: (name, type) pairs for each record field.
      * Present only for record types. Used by codegen to generate
@@ -391,10 +419,17 @@ object TypedAST {
 
     def setSuperClass(superClass: TypedAST.ClassType):Unit = {
       this.superClass = superClass
+      changed()
     }
 
     def setInterfaces(interfaces: Array[TypedAST.ClassType]):Unit = {
       this.interfaces = interfaces.toIndexedSeq
+      changed()
+    }
+
+    private def changed(): Unit = {
+      val table = owner
+      if (table != null) table.revision.incrementAndGet()
     }
 
     def setResolutionComplete(isInResolution: Boolean):Unit = {
@@ -403,6 +438,7 @@ object TypedAST {
 
     def add(method: TypedAST.Method): Unit = {
       methods_.add(method)
+      changed()
     }
 
     def add(field: TypedAST.FieldRef):Unit = {
@@ -451,8 +487,9 @@ object TypedAST {
 
     var frame: LocalFrame = _
 
-    // Named arguments and default values support
-    private var argsWithDefaults_ : Array[MethodArgument] = null
+    // Named arguments and default values support; set by the body pass of the
+    // declaring unit and read by callers that may be typed on other workers
+    @volatile private var argsWithDefaults_ : Array[MethodArgument] = null
 
     def setArgumentsWithDefaults(args: Array[MethodArgument]): Unit =
       argsWithDefaults_ = args
@@ -657,6 +694,8 @@ object TypedAST {
    */
   class NewClosure(location: Location, val `type`: TypedAST.ClassType, val method: TypedAST.Method, val block: TypedAST.ActionStatement) extends Term(location) {
     var frame: LocalFrame = _
+    /** The primitive specialization of `type` the closure implements, or null (see [[FunctionSpecialization]]). */
+    var specialized: TypedAST.ClassType = _
 
     def this(`type`: TypedAST.ClassType, method: TypedAST.Method, block: TypedAST.ActionStatement) = {
       this(null, `type`, method, block)
@@ -719,7 +758,7 @@ object TypedAST {
   ) extends Node with Method {
     private var closure: Boolean = false
     private var frame: LocalFrame = _
-    private var argsWithDefaults_ : Array[MethodArgument] = null
+    @volatile private var argsWithDefaults_ : Array[MethodArgument] = null
 
     def affiliation: TypedAST.ClassType = classType
 
@@ -882,6 +921,17 @@ object TypedAST {
     def `type`: TypedAST.Type = field.`type`
   }
 
+  /**
+   * Concatenation of `parts` into a String, as written with `+` or string
+   * interpolation.  Parts keep their own types (primitives are not boxed) and
+   * null parts read as `"null"`, like Java's string concatenation.
+   */
+  class StringConcat(location: Location, val parts: Array[TypedAST.Term], val `type`: TypedAST.Type) extends Term(location) {
+    def this(parts: Array[TypedAST.Term], `type`: TypedAST.Type) = {
+      this(null, parts, `type`)
+    }
+  }
+
   /**
    * @author Kota Mizushima
    */
@@ -893,6 +943,40 @@ object TypedAST {
 
   class Super(val classType: TypedAST.ClassType, val arguments: Array[TypedAST.Type], val terms: Array[TypedAST.Term]) extends Node
 
+  object SwitchStatement {
+    /** A case running `statement` when the value equals one of `labels`. */
+    final class Case(val labels: Array[TypedAST.Term], val statement: TypedAST.ActionStatement)
+  }
+
+  /**
+   * Dispatch on the value of `scrutinee` to the first case listing it, or to
+   * `defaultStatement` (which may be null).  The scrutinee is an int-like
+   * primitive with `IntValue` labels, a String with `StringValue` labels or an
+   * enum with its constants (`RefStaticField`) as labels.
+   */
+  class SwitchStatement(
+    location: Location,
+    val scrutinee: TypedAST.Term,
+    val cases: Array[SwitchStatement.Case],
+    val defaultStatement: TypedAST.ActionStatement
+  ) extends ActionStatement(location)
+
+  /**
+   * Index of the first of `labels`, starting at `restart`, that the value of
+   * `target` is an instance of; `labels.length` if it is none of them and -1
+   * if it is null.  Compiled to `SwitchBootstraps.typeSwitch`, which needs
+   * Java 21.
+   */
+  class TypeSwitch(location: Location, val target: TypedAST.Term, val labels: Array[TypedAST.ClassType], val restart: TypedAST.Term) extends Term(location) {
+    def `type`: TypedAST.Type = BasicType.INT
+  }
+
+  /**
+   * A call of `method` in tail position of `method` itself: the arguments
+   * replace the parameters and control jumps back to the start of the body.
+   */
+  class TailCall(location: Location, val method: TypedAST.Method, val arguments: Array[TypedAST.Term]) extends ActionStatement(location)
+
   class Synchronized(location: Location, val term: TypedAST.Term, val statement: TypedAST.ActionStatement)  extends ActionStatement(location) {
     def this(term: TypedAST.Term, statement: TypedAST.ActionStatement) = {
       this(null, term, statement)
@@ -954,15 +1038,83 @@ object TypedAST {
 
   case class TypeParameter(name: String, upperBound: Option[TypedAST.Type])
 
+  /**
+   * Applied types are interned per raw type (see [[ClassType.appliedTypes]])
+   * rather than in a global table, so they go away with the class table that
+   * owns the raw type.  Long-lived raw types (class-path types shared by the
+   * compile daemon or the language server) only hold their applications
+   * weakly, so those mentioning the source classes of a finished compilation
+   * can be collected too.
+   */
   object AppliedClassType {
-    private val cache = scala.collection.mutable.HashMap[(TypedAST.ClassType, scala.collection.immutable.List[TypedAST.Type]), AppliedClassType]()
+    def apply(raw: TypedAST.ClassType, typeArguments: Array[TypedAST.Type]): AppliedClassType =
+      raw.appliedTypes.intern(typeArguments)
+
+    def apply(raw: TypedAST.ClassType, typeArguments: Seq[TypedAST.Type]): AppliedClassType =
+      raw.appliedTypes.intern(typeArguments.toArray)
+
+    /** Type arguments compared element-wise, as a map key. */
+    private final class Arguments(val types: Array[TypedAST.Type]) {
+      override val hashCode: Int = util.Arrays.hashCode(types.asInstanceOf[Array[AnyRef]])
+      override def equals(other: Any): Boolean = other match
+        case that: Arguments => types.sameElements(that.types)
+        case _ => false
+    }
+
+    private final class Entry(value: AppliedClassType, val key: Arguments, queue: java.lang.ref.ReferenceQueue[AppliedClassType])
+      extends java.lang.ref.WeakReference[AppliedClassType](value, queue)
+
+    /** The applications of one raw type. */
+    private[compiler] final class Interner(raw: TypedAST.ClassType) {
+      private val entries = new util.concurrent.ConcurrentHashMap[Arguments, Entry]
+      private val queue = new java.lang.ref.ReferenceQueue[AppliedClassType]
+
+      def intern(typeArguments: Array[TypedAST.Type]): AppliedClassType = {
+        expunge()
+        val key = new Arguments(typeArguments)
+        while (true) {
+          val entry = entries.get(key)
+          val existing = if (entry == null) null else entry.get
+          if (existing != null) return existing
+          val created = new AppliedClassType(raw, typeArguments.clone())
+          val replacement = new Entry(created, new Arguments(created.typeArguments), queue)
+          val published =
+            if (entry == null) entries.putIfAbsent(replacement.key, replacement) == null
+            else entries.replace(key, entry, replacement)
+          if (published) return created
+        }
+        throw new IllegalStateException("unreachable")
+      }
 
-    def apply(raw: TypedAST.ClassType, typeArguments: scala.collection.immutable.List[TypedAST.Type]): AppliedClassType =
-      cache.getOrElseUpdate((raw, typeArguments), new AppliedClassType(raw, typeArguments.toArray[TypedAST.Type]))
+      private def expunge(): Unit = {
+        var stale = queue.poll()
+        while (stale != null) {
+          val entry = stale.asInstanceOf[Entry]
+          entries.remove(entry.key, entry)
+          stale = queue.poll()
+        }
+      }
+    }
   }
 
   final class AppliedClassType private(val raw: TypedAST.ClassType, val typeArguments: Array[TypedAST.Type])
     extends AbstractClassType {
+    /**
+     * Whether this type accepts an application of the same raw type, as
+     * decided by its type arguments (see [[TypeRules]]), each answer stamped
+     * like a method table.  The applications are held weakly, so the memo
+     * does not keep them interned.
+     */
+    private[compiler] lazy val acceptedArguments =
+      util.Collections.synchronizedMap(new util.WeakHashMap[AppliedClassType, TypeRules.Accepted])
+
+    /** The revision of the table owning a source class this type mentions, or null. */
+    private[compiler] lazy val sourceRevision: java.util.concurrent.atomic.AtomicLong = {
+      val own = ClassDefinition.revisionOf(raw)
+      if (own != null) own
+      else typeArguments.iterator.map(ClassDefinition.revisionIn).find(_ != null).orNull
+    }
+
     def name: String = raw.name
     override def displayName: String =
       if (typeArguments.isEmpty) raw.name
@@ -979,7 +1131,7 @@ object TypedAST {
       case ap: TypedAST.AppliedClassType =>
         val newArgs = ap.typeArguments.map(substitute)
         if newArgs.sameElements(ap.typeArguments) then ap
-        else TypedAST.AppliedClassType(ap.raw, newArgs.toList)
+        else TypedAST.AppliedClassType(ap.raw, newArgs)
       case at: TypedAST.ArrayType =>
         val newComponent = substitute(at.component)
         if newComponent eq at.component then at
@@ -1005,6 +1157,7 @@ object TypedAST {
     def interfaces: Seq[TypedAST.ClassType] = interfaces0
     def methods: Seq[TypedAST.Method] = raw.methods
     def methods(name: String): Array[TypedAST.Method] = raw.methods(name)
+    override def allMethods(name: String): Array[TypedAST.Method] = raw.allMethods(name)
     def fields: Array[TypedAST.FieldRef] = raw.fields
     def field(name: String): TypedAST.FieldRef = raw.field(name)
     def constructors: Array[TypedAST.ConstructorRef] = raw.constructors
@@ -1018,6 +1171,7 @@ object TypedAST {
     def interfaces: Seq[TypedAST.ClassType] = upperBound.interfaces
     def methods: Seq[TypedAST.Method] = upperBound.methods
     def methods(name: String): Array[TypedAST.Method] = upperBound.methods(name)
+    override def allMethods(name: String): Array[TypedAST.Method] = upperBound.allMethods(name)
     def fields: Array[TypedAST.FieldRef] = upperBound.fields
     def field(name: String): TypedAST.FieldRef = upperBound.field(name)
     def constructors: Array[TypedAST.ConstructorRef] = upperBound.constructors
@@ -1042,6 +1196,15 @@ object TypedAST {
 
   abstract class AbstractClassType extends AbstractObjectType with ClassType {
     private val constructorRefFinder: TypedAST.ConstructorFinder = new TypedAST.ConstructorFinder()
+    @volatile private var supertypes_ : TypedAST.Supertypes = null
+
+    def supertypes: TypedAST.Supertypes = {
+      val cached = supertypes_
+      if (cached != null && cached.isCurrent) return cached
+      val built = TypedAST.Supertypes(this)
+      supertypes_ = built
+      built
+    }
 
     def findConstructor(params: Array[TypedAST.Term]): Array[TypedAST.ConstructorRef] = constructorRefFinder.find(this, params)
 
@@ -1056,6 +1219,15 @@ object TypedAST {
   abstract class AbstractObjectType extends ObjectType {
     private var methodRefFinder: TypedAST.MethodFinder = new TypedAST.MethodFinder
     private var fieldRefFinder: TypedAST.FieldFinder   = new TypedAST.FieldFinder
+    private val methodTables = new java.util.concurrent.ConcurrentHashMap[String, TypedAST.MethodTable]
+
+    def allMethods(name: String): Array[TypedAST.Method] = {
+      val cached = methodTables.get(name)
+      if (cached != null && cached.isCurrent) return cached.methods
+      val table = TypedAST.MethodTable(this, name)
+      methodTables.put(name, table)
+      table.methods
+    }
 
     def findField(name: String): TypedAST.FieldRef = fieldRefFinder.find(this, name)
 
@@ -1143,6 +1315,12 @@ object TypedAST {
   final val BASIC_TYPE_VOID = BasicType.VOID
 
   abstract sealed trait ClassType extends ObjectType {
+    /** Interned applications of this type to type arguments. */
+    private[compiler] lazy val appliedTypes: AppliedClassType.Interner = new AppliedClassType.Interner(this)
+
+    /** This type and all of its supertypes, for constant-time subtype checks. */
+    def supertypes: TypedAST.Supertypes
+
     def constructors: Array[TypedAST.ConstructorRef]
 
     def findConstructor(params: Array[TypedAST.Term]): Array[TypedAST.ConstructorRef]
@@ -1235,32 +1413,111 @@ object TypedAST {
   /**
    * @author Kota Mizushima
    */
-  class MethodFinder {
-    def find(target: TypedAST.ObjectType, name: String, arguments: Array[TypedAST.Term]): Array[TypedAST.Method] = {
-      val methods: Set[TypedAST.Method] = new TreeSet[TypedAST.Method](new TypedAST.MethodComparator)
-      find(methods, target, name, arguments)
-      val sorted = methods.asScala.toArray.sortWith((m1, m2) => sorter.compare(m1, m2) < 0)
-      if (sorted.length < 2 || isAmbiguous(sorted(0), sorted(1))) sorted
-      else Array(sorted(0))
+  /**
+   * A class type and all of its supertypes, indexed for [[TypeRules]]: the
+   * raw classes (applied supertypes count as their raw type) and, per raw
+   * class, the applications of it among the supertypes.  Like method tables,
+   * closures over class files are built once and closures that saw a source
+   * class are stamped with the revision of its [[ClassTable]].
+   */
+  final class Supertypes private (
+    raws: util.Set[TypedAST.ClassType],
+    applications: util.Map[TypedAST.ClassType, Array[AppliedClassType]],
+    stamp: Stamp
+  ) {
+    def isCurrent: Boolean = stamp.isCurrent
+
+    def contains(raw: TypedAST.ClassType): Boolean = raws.contains(raw)
+
+    /** Supertypes applying `raw`, or an empty array. */
+    def applicationsOf(raw: TypedAST.ClassType): Array[AppliedClassType] =
+      applications.getOrDefault(raw, Supertypes.none)
+  }
+
+  object Supertypes {
+    private val none = new Array[AppliedClassType](0)
+
+    def apply(clazz: TypedAST.ClassType): Supertypes = {
+      val visited = Collections.newSetFromMap(new IdentityHashMap[TypedAST.ClassType, java.lang.Boolean])
+      val raws = Collections.newSetFromMap(new IdentityHashMap[TypedAST.ClassType, java.lang.Boolean])
+      val applied = new IdentityHashMap[TypedAST.ClassType, scala.collection.mutable.ArrayBuffer[AppliedClassType]]
+      var stamp = Stamp.fixed
+      def visit(tp: TypedAST.ClassType): Unit = {
+        if (tp == null || !visited.add(tp)) return
+        if (stamp eq Stamp.fixed) stamp = Stamp(ClassDefinition.revisionOf(tp))
+        tp match {
+          case application: AppliedClassType =>
+            raws.add(application.raw)
+            applied.computeIfAbsent(application.raw, _ => scala.collection.mutable.ArrayBuffer()) += application
+          case _ =>
+            raws.add(tp)
+        }
+        visit(tp.superClass)
+        tp.interfaces.foreach(visit)
+      }
+      visit(clazz)
+      val applications = new IdentityHashMap[TypedAST.ClassType, Array[AppliedClassType]]
+      applied.forEach((raw, found) => applications.put(raw, found.toArray))
+      new Supertypes(raws, applications, stamp)
     }
+  }
 
-    def isAmbiguous(method1: TypedAST.Method, method2: TypedAST.Method): Boolean =  sorter.compare(method1, method2) >= 0
+  /**
+   * The revision of the table whose source classes a cached result was
+   * computed from, as it was then.  Results computed from class files only
+   * never change and get [[Stamp.fixed]]; results that saw a source class not
+   * added to a table yet are never current.
+   */
+  final class Stamp private (revision: java.util.concurrent.atomic.AtomicLong, at: Long) {
+    def isCurrent: Boolean = revision == null || revision.get == at
+  }
+
+  object Stamp {
+    val fixed: Stamp = new Stamp(null, 0)
 
-    private def find(methods: Set[TypedAST.Method], target: TypedAST.ObjectType, name: String, params: Array[TypedAST.Term]): Unit = {
-      if (target == null) return
-      val ms: Array[TypedAST.Method] = target.methods(name)
-      for (m <- ms) {
-        if (matcher.matches(m.arguments, params)) methods.add(m)
-        else if (m.isVararg && matcher.matchesVararg(m.arguments, params)) methods.add(m)
+    /** A stamp of the current value of `revision` (see [[ClassDefinition.revisionOf]]). */
+    def apply(revision: java.util.concurrent.atomic.AtomicLong): Stamp =
+      if (revision == null) fixed
+      else new Stamp(revision, if (revision eq ClassDefinition.unowned) -1 else revision.get)
+  }
+
+  /**
+   * The flattened methods of one name of a type, see [[ObjectType.allMethods]].
+   * Tables built from class files only never change; tables that saw a
+   * source class are stamped with the revision of its [[ClassTable]].
+   */
+  final class MethodTable private (val methods: Array[TypedAST.Method], stamp: Stamp) {
+    def isCurrent: Boolean = stamp.isCurrent
+  }
+
+  object MethodTable {
+    def apply(target: TypedAST.ObjectType, name: String): MethodTable = {
+      val methods = new TreeSet[TypedAST.Method](new TypedAST.MethodComparator)
+      var stamp = Stamp.fixed
+      def collect(tp: TypedAST.ObjectType): Unit = {
+        if (tp == null) return
+        if (stamp eq Stamp.fixed) stamp = Stamp(ClassDefinition.revisionOf(tp))
+        for (m <- tp.methods(name)) methods.add(m)
+        collect(tp.superClass)
+        tp.interfaces.foreach(collect)
       }
-      val superClass: TypedAST.ClassType = target.superClass
-      find(methods, superClass, name, params)
-      val interfaces = target.interfaces
-      for (anInterface <- interfaces) {
-        find(methods, anInterface, name, params)
+      collect(target)
+      new MethodTable(methods.toArray(new Array[TypedAST.Method](0)), stamp)
+    }
+  }
+
+  class MethodFinder {
+    def find(target: TypedAST.ObjectType, name: String, params: Array[TypedAST.Term]): Array[TypedAST.Method] = {
+      val methods = target.allMethods(name).filter { m =>
+        matcher.matches(m.arguments, params) || (m.isVararg && matcher.matchesVararg(m.arguments, params))
       }
+      val sorted = methods.sortWith((m1, m2) => sorter.compare(m1, m2) < 0)
+      if (sorted.length < 2 || isAmbiguous(sorted(0), sorted(1))) sorted
+      else Array(sorted(0))
     }
 
+    def isAmbiguous(method1: TypedAST.Method, method2: TypedAST.Method): Boolean =  sorter.compare(method1, method2) >= 0
+
     private final val sorter: Comparator[TypedAST.Method] = new Comparator[TypedAST.Method] {
       def compare(m1: TypedAST.Method, m2: TypedAST.Method): Int = {
         val arg1: Array[TypedAST.Type] = m1.arguments
@@ -1409,6 +1666,14 @@ object TypedAST {
 
     def methods(name: String): Array[TypedAST.Method]
 
+    /**
+     * Methods named `name` declared by this type or inherited from its
+     * supertypes, one per signature (the first found, walking superclasses
+     * before interfaces) and ordered by [[MethodComparator]].  Built once per
+     * name and kept until a source class changes (see [[MethodTable]]).
+     */
+    def allMethods(name: String): Array[TypedAST.Method]
+
     def fields: Array[TypedAST.FieldRef]
 
     def field(name: String): TypedAST.FieldRef
@@ -1574,59 +1839,79 @@ object TypedAST {
     private def isSuperTypeForClass(left: TypedAST.ClassType, right: TypedAST.ClassType): Boolean = {
       if (right == null) return false
       if (left eq right) return true
-
-      (left, right) match
-        case (lraw, rapp: TypedAST.AppliedClassType) if lraw eq rapp.raw =>
-          return true
-        case (lapp: TypedAST.AppliedClassType, rapp: TypedAST.AppliedClassType)
-          if (lapp.raw eq rapp.raw) && lapp.typeArguments.length == rapp.typeArguments.length =>
-          val expectedArgs = lapp.typeArguments
-          val actualArgs = rapp.typeArguments
+      left match
+        case lapp: TypedAST.AppliedClassType =>
+          val candidates = right.supertypes.applicationsOf(lapp.raw)
           var i = 0
-          while (i < expectedArgs.length) {
-            val expectedArg = expectedArgs(i)
-            val actualArg = actualArgs(i)
-            val matches = (expectedArg, actualArg) match
-              // Expected: ? extends E
-              case (w: TypedAST.WildcardType, _) if w.lowerBound.isEmpty =>
-                actualArg match
-                  case aw: TypedAST.WildcardType if aw.lowerBound.isEmpty =>
-                    // ? extends E ← ? extends A: A must be subtype of E
-                    isSuperType(w.upperBound, aw.upperBound)
-                  case aw: TypedAST.WildcardType if aw.lowerBound.isDefined =>
-                    // ? extends E ← ? super A: incompatible (covariant vs contravariant)
-                    false
-                  case _ =>
-                    // ? extends E ← A: A must be subtype of E
-                    isSuperType(w.upperBound, actualArg)
-              // Expected: ? super E
-              case (w: TypedAST.WildcardType, _) if w.lowerBound.isDefined =>
-                actualArg match
-                  case aw: TypedAST.WildcardType if aw.lowerBound.isDefined =>
-                    // ? super E ← ? super A: E must be subtype of A (contravariant)
-                    isSuperType(aw.lowerBound.get, w.lowerBound.get)
-                  case aw: TypedAST.WildcardType if aw.lowerBound.isEmpty =>
-                    // ? super E ← ? extends A: incompatible
-                    false
-                  case _ =>
-                    // ? super E ← A: A must be supertype of E
-                    isSuperType(actualArg, w.lowerBound.get)
-              // Expected: type variable T
-              case (tv: TypedAST.TypeVariableType, _) =>
-                isSuperType(tv.upperBound, actualArg)
-              // Expected: concrete type, Actual: wildcard - not directly assignable
-              case (_, _: TypedAST.WildcardType) =>
-                false
-              // Both concrete types: must be identical
-              case _ =>
-                expectedArg eq actualArg
-            if (!matches) return false
+          while (i < candidates.length) {
+            val candidate = candidates(i)
+            if ((candidate eq lapp) || acceptsArguments(lapp, candidate)) return true
             i += 1
           }
-          return true
+          false
         case _ =>
-      isSuperTypeForClass(left, right.superClass) ||
-        right.interfaces.exists(iface => isSuperTypeForClass(left, iface))
+          right.supertypes.contains(left)
+    }
+
+    /** Memoized [[argumentsMatch]]; see [[AppliedClassType.acceptedArguments]]. */
+    private def acceptsArguments(lapp: TypedAST.AppliedClassType, rapp: TypedAST.AppliedClassType): Boolean = {
+      val cached = lapp.acceptedArguments.get(rapp)
+      if (cached != null && cached.stamp.isCurrent) return cached.result
+      val revision = if (lapp.sourceRevision != null) lapp.sourceRevision else rapp.sourceRevision
+      val stamp = Stamp(revision)
+      val result = argumentsMatch(lapp, rapp)
+      lapp.acceptedArguments.put(rapp, new Accepted(result, stamp))
+      result
+    }
+
+    private[compiler] final class Accepted(val result: Boolean, val stamp: Stamp)
+
+    private def argumentsMatch(lapp: TypedAST.AppliedClassType, rapp: TypedAST.AppliedClassType): Boolean = {
+      if (lapp.typeArguments.length != rapp.typeArguments.length) return false
+      val expectedArgs = lapp.typeArguments
+      val actualArgs = rapp.typeArguments
+      var i = 0
+      while (i < expectedArgs.length) {
+        val expectedArg = expectedArgs(i)
+        val actualArg = actualArgs(i)
+        val matches = (expectedArg, actualArg) match
+          // Expected: ? extends E
+          case (w: TypedAST.WildcardType, _) if w.lowerBound.isEmpty =>
+            actualArg match
+              case aw: TypedAST.WildcardType if aw.lowerBound.isEmpty =>
+                // ? extends E ← ? extends A: A must be subtype of E
+                isSuperType(w.upperBound, aw.upperBound)
+              case aw: TypedAST.WildcardType if aw.lowerBound.isDefined =>
+                // ? extends E ← ? super A: incompatible (covariant vs contravariant)
+                false
+              case _ =>
+                // ? extends E ← A: A must be subtype of E
+                isSuperType(w.upperBound, actualArg)
+          // Expected: ? super E
+          case (w: TypedAST.WildcardType, _) if w.lowerBound.isDefined =>
+            actualArg match
+              case aw: TypedAST.WildcardType if aw.lowerBound.isDefined =>
+                // ? super E ← ? super A: E must be subtype of A (contravariant)
+                isSuperType(aw.lowerBound.get, w.lowerBound.get)
+              case aw: TypedAST.WildcardType if aw.lowerBound.isEmpty =>
+                // ? super E ← ? extends A: incompatible
+                false
+              case _ =>
+                // ? super E ← A: A must be supertype of E
+                isSuperType(actualArg, w.lowerBound.get)
+          // Expected: type variable T
+          case (tv: TypedAST.TypeVariableType, _) =>
+            isSuperType(tv.upperBound, actualArg)
+          // Expected: concrete type, Actual: wildcard - not directly assignable
+          case (_, _: TypedAST.WildcardType) =>
+            false
+          // Both concrete types: must be identical
+          case _ =>
+            expectedArg eq actualArg
+        if (!matches) return false
+        i += 1
+      }
+      true
     }
 
     private def isSuperTypeForBasic(left: TypedAST.BasicType, right: TypedAST.BasicType): Boolean =
@@ -0,0 +1,191 @@
+package onion.compiler
+
+import TypedAST._
+
+/**
+ * Rewrites a TypedAST bottom-up.  [[transformTerm]] and [[transformStatement]]
+ * rebuild a node from its transformed children and are the hooks subclasses
+ * override; a node whose children are all unchanged is returned as is, so an
+ * identity transformation allocates nothing.
+ */
+abstract class TypedASTTransformer {
+  def transformTerm(term: Term): Term = transformChildren(term)
+
+  def transformStatement(statement: ActionStatement): ActionStatement = transformChildren(statement)
+
+  /** Applies the transformation to the body of `closure`, a function of its own. */
+  protected def transformClosureBody(closure: NewClosure): ActionStatement = transformStatement(closure.block)
+
+  final def transformBlock(block: StatementBlock): StatementBlock = transformStatement(block) match {
+    case result: StatementBlock => result
+    case result => new StatementBlock(block.location, result)
+  }
+
+  final def transformTerms(terms: Array[Term]): Array[Term] = {
+    val result = terms.map(t => if (t == null) null else transformTerm(t))
+    if (same(result, terms)) terms else result
+  }
+
+  private def transformNullable(statement: ActionStatement): ActionStatement =
+    if (statement == null) null else transformStatement(statement)
+
+  private def transformNullable(term: Term): Term =
+    if (term == null) null else transformTerm(term)
+
+  private def same[A <: AnyRef](a: Array[A], b: Array[A]): Boolean =
+    a.length == b.length && a.indices.forall(i => a(i) eq b(i))
+
+  protected final def transformChildren(term: Term): Term = term match {
+    case n: ArrayLength =>
+      val target = transformTerm(n.target)
+      if (target eq n.target) n else new ArrayLength(n.location, target)
+    case n: RefArray =>
+      val target = transformTerm(n.target)
+      val index = transformTerm(n.index)
+      if ((target eq n.target) && (index eq n.index)) n else new RefArray(n.location, target, index)
+    case n: SetArray =>
+      val target = transformTerm(n.target)
+      val index = transformTerm(n.index)
+      val value = transformTerm(n.value)
+      if ((target eq n.target) && (index eq n.index) && (value eq n.value)) n else new SetArray(n.location, target, index, value)
+    case n: Begin =>
+      val terms = transformTerms(n.terms)
+      if (terms eq n.terms) n else new Begin(n.location, terms)
+    case n: BinaryTerm =>
+      val lhs = transformTerm(n.lhs)
+      val rhs = transformTerm(n.rhs)
+      if ((lhs eq n.lhs) && (rhs eq n.rhs)) n else new BinaryTerm(n.location, n.kind, n.`type`, lhs, rhs)
+    case n: UnaryTerm =>
+      val operand = transformTerm(n.operand)
+      if (operand eq n.operand) n else new UnaryTerm(n.location, n.kind, n.`type`, operand)
+    case n: Call =>
+      val target = transformTerm(n.target)
+      val parameters = transformTerms(n.parameters)
+      if ((target eq n.target) && (parameters eq n.parameters)) n else new Call(n.location, target, n.method, parameters)
+    case n: SafeCall =>
+      val target = transformTerm(n.target)
+      val parameters = transformTerms(n.parameters)
+      if ((target eq n.target) && (parameters eq n.parameters)) n else new SafeCall(n.location, target, n.method, parameters)
+    case n: CallStatic =>
+      val parameters = transformTerms(n.parameters)
+      if (parameters eq n.parameters) n else new CallStatic(n.location, n.target, n.method, parameters)
+    case n: CallSuper =>
+      val target = transformTerm(n.target)
+      val params = transformTerms(n.params)
+      if ((target eq n.target) && (params eq n.params)) n else new CallSuper(n.location, target, n.method, params)
+    case n: SafeFieldAccess =>
+      val target = transformTerm(n.target)
+      if (target eq n.target) n else new SafeFieldAccess(n.location, target, n.field)
+    case n: AsInstanceOf =>
+      val target = transformTerm(n.target)
+      if (target eq n.target) n else new AsInstanceOf(n.location, target, n.destination)
+    case n: InstanceOf =>
+      val target = transformTerm(n.target)
+      if (target eq n.target) n else new InstanceOf(n.location, target, n.checked)
+    case n: ListLiteral =>
+      val elements = transformTerms(n.elements)
+      if (elements eq n.elements) n else new ListLiteral(n.location, elements, n.`type`)
+    case n: SetLocal =>
+      val value = transformTerm(n.value)
+      if (value eq n.value) n else new SetLocal(n.location, n.frame, n.index, n.`type`, value)
+    case n: NewClosure =>
+      val block = transformClosureBody(n)
+      if (block eq n.block) n
+      else {
+        val closure = new NewClosure(n.location, n.`type`, n.method, block)
+        closure.frame = n.frame
+        closure.specialized = n.specialized
+        closure
+      }
+    case n: RefField =>
+      val target = transformTerm(n.target)
+      if (target eq n.target) n else new RefField(n.location, target, n.field)
+    case n: SetField =>
+      val target = transformTerm(n.target)
+      val value = transformTerm(n.value)
+      if ((target eq n.target) && (value eq n.value)) n else new SetField(n.location, target, n.field, value)
+    case n: NewObject =>
+      val parameters = transformTerms(n.parameters)
+      if (parameters eq n.parameters) n else new NewObject(n.location, n.constructor, parameters)
+    case n: NewArray =>
+      val parameters = transformTerms(n.parameters)
+      if (parameters eq n.parameters) n else new NewArray(n.location, n.arrayType, parameters)
+    case n: NewArrayWithValues =>
+      val values = transformTerms(n.values)
+      if (values eq n.values) n else new NewArrayWithValues(n.location, n.arrayType, values)
+    case n: SetStaticField =>
+      val value = transformTerm(n.value)
+      if (value eq n.value) n else new SetStaticField(n.location, n.target, n.field, value)
+    case n: StringConcat =>
+      val parts = transformTerms(n.parts)
+      if (parts eq n.parts) n else new StringConcat(n.location, parts, n.`type`)
+    case n: TypeSwitch =>
+      val target = transformTerm(n.target)
+      val restart = transformTerm(n.restart)
+      if ((target eq n.target) && (restart eq n.restart)) n else new TypeSwitch(n.location, target, n.labels, restart)
+    case n: StatementTerm =>
+      val statement = transformStatement(n.statement)
+      if (statement eq n.statement) n else new StatementTerm(n.location, statement, n.termType)
+    case n: SynchronizedTerm =>
+      val lock = transformTerm(n.lock)
+      val body = transformTerm(n.body)
+      if ((lock eq n.lock) && (body eq n.body)) n else new SynchronizedTerm(n.location, lock, body)
+    case leaf =>
+      leaf
+  }
+
+  protected final def transformChildren(statement: ActionStatement): ActionStatement = statement match {
+    case n: StatementBlock =>
+      val statements = n.statements
+      val result = statements.map(transformStatement)
+      if (same(result, statements)) n else new StatementBlock(n.location, result.toIndexedSeq*)
+    case n: ExpressionActionStatement =>
+      val term = transformTerm(n.term)
+      if (term eq n.term) n else new ExpressionActionStatement(n.location, term)
+    case n: IfStatement =>
+      val condition = transformTerm(n.condition)
+      val thenStatement = transformStatement(n.thenStatement)
+      val elseStatement = transformNullable(n.elseStatement)
+      if ((condition eq n.condition) && (thenStatement eq n.thenStatement) && (elseStatement eq n.elseStatement)) n
+      else new IfStatement(n.location, condition, thenStatement, elseStatement)
+    case n: SwitchStatement =>
+      val scrutinee = transformTerm(n.scrutinee)
+      val cases = n.cases.map { c =>
+        val body = transformStatement(c.statement)
+        if (body eq c.statement) c else new SwitchStatement.Case(c.labels, body)
+      }
+      val default = transformNullable(n.defaultStatement)
+      if ((scrutinee eq n.scrutinee) && same(cases, n.cases) && (default eq n.defaultStatement)) n
+      else new SwitchStatement(n.location, scrutinee, cases, default)
+    case n: ConditionalLoop =>
+      val condition = transformTerm(n.condition)
+      val body = transformStatement(n.stmt)
+      if ((condition eq n.condition) && (body eq n.stmt)) n else new ConditionalLoop(n.location, condition, body)
+    case n: Return =>
+      val term = transformNullable(n.term)
+      if (term eq n.term) n else new Return(n.location, term)
+    case n: Throw =>
+      val term = transformTerm(n.term)
+      if (term eq n.term) n else new Throw(n.location, term)
+    case n: TailCall =>
+      val arguments = transformTerms(n.arguments)
+      if (arguments eq n.arguments) n else new TailCall(n.location, n.method, arguments)
+    case n: Synchronized =>
+      val term = transformTerm(n.term)
+      val body = transformStatement(n.statement)
+      if ((term eq n.term) && (body eq n.statement)) n else new Synchronized(n.location, term, body)
+    case n: Try =>
+      val resources = n.resources.map { case resource @ (binding, init) =>
+        val value = transformTerm(init)
+        if (value eq init) resource else (binding, value)
+      }
+      val tryStatement = transformStatement(n.tryStatement)
+      val catchStatements = n.catchStatements.map(transformStatement)
+      val finallyStatement = transformNullable(n.finallyStatement)
+      if (same(resources, n.resources) && (tryStatement eq n.tryStatement) && same(catchStatements, n.catchStatements) &&
+        (finallyStatement eq n.finallyStatement)) n
+      else new Try(n.location, resources, tryStatement, n.catchTypes, catchStatements, finallyStatement)
+    case leaf =>
+      leaf
+  }
+}
@@ -41,6 +41,8 @@ trait TypedASTVisitor[T]:
   def visitRefStaticField(node: RefStaticField): T
   def visitSetStaticField(node: SetStaticField): T
   def visitStringValue(node: StringValue): T
+  def visitStringConcat(node: StringConcat): T
+  def visitTypeSwitch(node: TypeSwitch): T
   def visitOuterThis(node: OuterThis): T
   def visitThis(node: This): T
   def visitUnaryTerm(node: UnaryTerm): T
@@ -53,10 +55,12 @@ trait TypedASTVisitor[T]:
   def visitContinue(node: Continue): T
   def visitExpressionActionStatement(node: ExpressionActionStatement): T
   def visitIfStatement(node: IfStatement): T
+  def visitSwitchStatement(node: SwitchStatement): T
   def visitConditionalLoop(node: ConditionalLoop): T
   def visitNOP(node: NOP): T
   def visitReturn(node: Return): T
   def visitSynchronized(node: Synchronized): T
+  def visitTailCall(node: TailCall): T
   def visitThrow(node: Throw): T
   def visitTry(node: Try): T
   
@@ -95,6 +99,8 @@ trait TypedASTVisitor[T]:
     case n: RefStaticField => visitRefStaticField(n)
     case n: SetStaticField => visitSetStaticField(n)
     case n: StringValue => visitStringValue(n)
+    case n: StringConcat => visitStringConcat(n)
+    case n: TypeSwitch => visitTypeSwitch(n)
     case n: OuterThis => visitOuterThis(n)
     case n: This => visitThis(n)
     case n: UnaryTerm => visitUnaryTerm(n)
@@ -108,10 +114,12 @@ trait TypedASTVisitor[T]:
     case n: Continue => visitContinue(n)
     case n: ExpressionActionStatement => visitExpressionActionStatement(n)
     case n: IfStatement => visitIfStatement(n)
+    case n: SwitchStatement => visitSwitchStatement(n)
     case n: ConditionalLoop => visitConditionalLoop(n)
     case n: NOP => visitNOP(n)
     case n: Return => visitReturn(n)
     case n: Synchronized => visitSynchronized(n)
+    case n: TailCall => visitTailCall(n)
     case n: Throw => visitThrow(n)
     case n: Try => visitTry(n)
 
@@ -155,6 +163,8 @@ abstract class DefaultTypedASTVisitor[T] extends TypedASTVisitor[T]:
   override def visitRefStaticField(node: RefStaticField): T = defaultValue
   override def visitSetStaticField(node: SetStaticField): T = defaultValue
   override def visitStringValue(node: StringValue): T = defaultValue
+  override def visitStringConcat(node: StringConcat): T = defaultValue
+  override def visitTypeSwitch(node: TypeSwitch): T = defaultValue
   override def visitOuterThis(node: OuterThis): T = defaultValue
   override def visitThis(node: This): T = defaultValue
   override def visitUnaryTerm(node: UnaryTerm): T = defaultValue
@@ -165,9 +175,11 @@ abstract class DefaultTypedASTVisitor[T] extends TypedASTVisitor[T]:
   override def visitContinue(node: Continue): T = defaultValue
   override def visitExpressionActionStatement(node: ExpressionActionStatement): T = defaultValue
   override def visitIfStatement(node: IfStatement): T = defaultValue
+  override def visitSwitchStatement(node: SwitchStatement): T = defaultValue
   override def visitConditionalLoop(node: ConditionalLoop): T = defaultValue
   override def visitNOP(node: NOP): T = defaultValue
   override def visitReturn(node: Return): T = defaultValue
   override def visitSynchronized(node: Synchronized): T = defaultValue
+  override def visitTailCall(node: TailCall): T = defaultValue
   override def visitThrow(node: Throw): T = defaultValue
   override def visitTry(node: Try): T = defaultValue
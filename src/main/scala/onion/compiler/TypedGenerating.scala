@@ -4,8 +4,10 @@ package onion.compiler
  * Bridge generator that accepts typed AST and delegates to the old
  * CodeGeneration using TypedAST nodes. This eases migration away from TypedAST
  * without rewriting the backend in one go.
+ *
+ * @param table the class table built by [[Typing]]; used by frame computation
  */
-class TypedGenerating(config: CompilerConfig)
+class TypedGenerating(config: CompilerConfig, table: ClassTable)
   extends AnyRef
     with Processor[Seq[TypedAST.ClassDefinition], Seq[CompiledClass]]:
   class TypedGeneratingEnvironment
@@ -13,7 +15,7 @@ class TypedGenerating(config: CompilerConfig)
   def newEnvironment(source: Seq[TypedAST.ClassDefinition]): TypedGeneratingEnvironment =
     new TypedGeneratingEnvironment
 
-  private val generator: BytecodeGenerator = new AsmCodeGeneration(config)
+  private val generator: BytecodeGenerator = new AsmCodeGeneration(config, table)
 
   def processBody(source: Seq[TypedAST.ClassDefinition], environment: TypedGeneratingEnvironment): Seq[CompiledClass] =
     generator.process(source)
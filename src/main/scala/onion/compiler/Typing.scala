@@ -8,7 +8,7 @@
 package onion.compiler
 
 import _root_.scala.jdk.CollectionConverters._
-import _root_.onion.compiler.toolbox.{Paths, Systems}
+import _root_.onion.compiler.toolbox.{Parallel, Paths, Systems}
 import _root_.onion.compiler.exceptions.CompilationException
 import _root_.onion.compiler.TypedAST._
 import _root_.onion.compiler.SemanticError._
@@ -42,6 +42,7 @@ import scala.compiletime.uninitialized
  *
  * '''3. Body Pass''' ([[onion.compiler.typing.TypingBodyPass]])
  *   - Type checks method and constructor bodies
+ *   - Runs one unit per worker when `config.parallelism` is greater than 1
  *   - Performs type inference
  *   - Resolves method calls and field accesses
  *   - Generates typed AST nodes
@@ -72,6 +73,8 @@ import scala.compiletime.uninitialized
  * }}}
  *
  * @param config Compiler configuration options
+ * @param sharedTables class-path tables reused across compilations, or null
+ * @param profile      receives the timings of the typing passes, or null
  *
  * @see [[onion.compiler.Rewriting]] for the previous phase
  * @see [[onion.compiler.AsmCodeGeneration]] for the next phase
@@ -79,7 +82,7 @@ import scala.compiletime.uninitialized
  *
  * @author Kota Mizushima
  */
-class Typing(config: CompilerConfig) extends AnyRef with Processor[Seq[AST.CompilationUnit], Seq[ClassDefinition]] {
+class Typing(config: CompilerConfig, sharedTables: SharedClassTables = null, profile: CompilerProfile = null) extends AnyRef with Processor[Seq[AST.CompilationUnit], Seq[ClassDefinition]] {
   class TypingEnvironment
   private[compiler] case class TypeParam(name: String, variableType: TypedAST.TypeVariableType, upperBound: ClassType)
   private[compiler] case class TypeParamScope(params: Map[String, TypeParam]) {
@@ -119,7 +122,10 @@ class Typing(config: CompilerConfig) extends AnyRef with Processor[Seq[AST.Compi
     def resolveNode(typeNode: AST.TypeNode): Type = map(typeNode.desc)
 
     /** Get candidate class names for suggestions (non-on-demand imports only) */
-    def getCandidateClassNames: Array[String] = {
+    def getCandidateClassNames: Array[String] = candidateClassNames
+
+    // Computed once, after the header pass has registered every source class
+    private lazy val candidateClassNames: Array[String] = {
       val localClasses = table_.classes.values.map(_.name).toSeq
       val importedClasses = imports.filterNot(_.isOnDemand).map(_.simpleName)
       (localClasses ++ importedClasses).distinct.toArray
@@ -186,30 +192,75 @@ class Typing(config: CompilerConfig) extends AnyRef with Processor[Seq[AST.Compi
       }
     }
   }
-  private[compiler] val table_  = new ClassTable(classpath(config.classPath))
+  private[compiler] val table_  = {
+    val path = classpath(config.classPath)
+    val parent = if (sharedTables == null) null else sharedTables.tableFor(path)
+    new ClassTable(path, parent, profile)
+  }
   private[compiler] val ast2ixt_ = Map[AST.Node, TypedAST.Node]()
   private[compiler] val ixt2ast_ = Map[TypedAST.Node, AST.Node]()
   private[compiler] val mappers_  = Map[String, NameMapper]()
-  private[compiler] var access_ : Int = uninitialized
-  private[compiler] var mapper_ : NameMapper = uninitialized
   private[compiler] var staticImportedList_ : StaticImportList = uninitialized
-  private[compiler] var definition_ : ClassDefinition = uninitialized
-  private[compiler] var unit_ : AST.CompilationUnit = uninitialized
-  private[compiler] var typeParams_ : TypeParamScope = emptyTypeParams
+  private val suggestionIndexes = new toolbox.Suggestions.Indexes
+  private val sharedReporter = new SemanticErrorReporter(config.maxErrorReports, suggestionIndexes)
+  private val sharedWarningReporter = new WarningReporter(config.warningLevel, config.suppressedWarnings)
+
+  /**
+   * State of the unit being typed by the current thread.  Everything else
+   * in this class is either written before the body pass starts or is safe
+   * to read concurrently, so a parallel body pass only needs to confine
+   * this record (and the reporters it points at) to its worker.
+   */
+  private final class UnitState {
+    var access: Int = 0
+    var mapper: NameMapper = uninitialized
+    var definition: ClassDefinition = uninitialized
+    var unit: AST.CompilationUnit = uninitialized
+    var typeParams: TypeParamScope = emptyTypeParams
+    var suppressReporting: Int = 0
+    var reporter: SemanticErrorReporter = sharedReporter
+    var warningReporter: WarningReporter = sharedWarningReporter
+  }
+  private val unitState: ThreadLocal[UnitState] = ThreadLocal.withInitial(() => new UnitState)
+
+  private[compiler] def access_ : Int = unitState.get.access
+  private[compiler] def access__=(access: Int): Unit = unitState.get.access = access
+  private[compiler] def mapper_ : NameMapper = unitState.get.mapper
+  private[compiler] def mapper__=(mapper: NameMapper): Unit = unitState.get.mapper = mapper
+  private[compiler] def definition_ : ClassDefinition = unitState.get.definition
+  private[compiler] def definition__=(definition: ClassDefinition): Unit = unitState.get.definition = definition
+  private[compiler] def unit_ : AST.CompilationUnit = unitState.get.unit
+  private[compiler] def unit__=(unit: AST.CompilationUnit): Unit = unitState.get.unit = unit
+  private[compiler] def typeParams_ : TypeParamScope = unitState.get.typeParams
+  private[compiler] def typeParams__=(scope: TypeParamScope): Unit = unitState.get.typeParams = scope
   private[compiler] val declaredTypeParams_ : HashMap[AST.Node, Seq[TypeParam]] = HashMap()
+  // Classes declared by each compilation unit (keyed by source file), filled by the header pass
+  private[compiler] val unitClasses_ : HashMap[String, Seq[ClassDefinition]] = HashMap()
   // Extension method support: maps extension declarations to their container classes
   private[compiler] val extensionDeclarations_ : Buffer[(AST.ExtensionDeclaration, ClassDefinition)] = Buffer()
   // Maps receiver type FQCN to extension methods - populated during OutlinePass
   private[compiler] val extensionMethods_ : HashMap[String, Buffer[ExtensionMethodDefinition]] = HashMap()
-  private[compiler] val reporter_ : SemanticErrorReporter = new SemanticErrorReporter(config.maxErrorReports)
-  private[compiler] val warningReporter_ : WarningReporter = new WarningReporter(config.warningLevel, config.suppressedWarnings)
-  private var suppressReporting: Int = 0
+  private[compiler] def reporter_ : SemanticErrorReporter = unitState.get.reporter
+  private[compiler] def warningReporter_ : WarningReporter = unitState.get.warningReporter
   def newEnvironment(source: Seq[AST.CompilationUnit]) = new TypingEnvironment
   def processBody(source: Seq[AST.CompilationUnit], environment: TypingEnvironment): Seq[ClassDefinition] = {
-    for(unit <- source) processHeader(unit)
-    for(unit <- source) processOutline(unit)
-    for(unit <- source) processTyping(unit)
-    for(unit <- source) processDuplication(unit)
+    CompilerProfile.phase(profile, "header") {
+      for(unit <- source) {
+        val known = table_.classes.size
+        processHeader(unit)
+        unitClasses_(unit.sourceFile) = table_.classes.values.drop(known)
+      }
+    }
+    CompilerProfile.phase(profile, "outline") {
+      for(unit <- source) processOutline(unit)
+    }
+    CompilerProfile.phase(profile, "body") {
+      if (config.parallelism > 1) processTypingInParallel(source)
+      else for(unit <- source) CompilerProfile.worker(profile, unit.sourceFile)(processTyping(unit))
+    }
+    CompilerProfile.phase(profile, "duplication") {
+      for(unit <- source) processDuplication(unit)
+    }
     val problems = reporter_.getProblems
     if (problems.length > 0) throw new CompilationException(problems.toSeq)
 
@@ -236,17 +287,43 @@ class Typing(config: CompilerConfig) extends AnyRef with Processor[Seq[AST.Compi
 
   // Typing body pass moved to onion.compiler.typing.TypingBodyPass
 
+  /**
+   * Runs the body pass of every unit on a worker pool.  Each worker reports
+   * into its own reporters; they are merged back in source order so the
+   * diagnostics (and the error threshold) match a sequential run.
+   */
+  private def processTypingInParallel(source: Seq[AST.CompilationUnit]): Unit = {
+    val reports = Parallel.map(source, config.parallelism) { unit =>
+      val state = unitState.get
+      val errors = new SemanticErrorReporter(Int.MaxValue, suggestionIndexes)
+      val warnings = new WarningReporter(config.warningLevel, config.suppressedWarnings)
+      state.reporter = errors
+      state.warningReporter = warnings
+      try CompilerProfile.worker(profile, unit.sourceFile)(processTyping(unit))
+      finally {
+        state.reporter = sharedReporter
+        state.warningReporter = sharedWarningReporter
+      }
+      (errors, warnings)
+    }
+    for ((errors, warnings) <- reports) {
+      sharedReporter.merge(errors)
+      sharedWarningReporter.merge(warnings)
+    }
+  }
+
 
   def processDuplication(node: AST.CompilationUnit): Unit =
     new onion.compiler.typing.TypingDuplicationPass(this, node).run()
 
   def withSuppressedReporting[A](block: => A): A = {
-    suppressReporting += 1
+    val state = unitState.get
+    state.suppressReporting += 1
     try block
-    finally suppressReporting -= 1
+    finally state.suppressReporting -= 1
   }
 
-  private def reportingEnabled: Boolean = suppressReporting == 0
+  private def reportingEnabled: Boolean = unitState.get.suppressReporting == 0
 
   def report(error: SemanticError, node: AST.Node, items: AnyRef*): Unit = {
     report(error, node.location, items*)
@@ -294,8 +371,11 @@ class Typing(config: CompilerConfig) extends AnyRef with Processor[Seq[AST.Compi
   def loadTopClass: ClassType = table_.load(topClass)
   def loadArray(base: Type, dimension: Int): ArrayType = table_.loadArray(base, dimension)
   def rootClass: ClassType = table_.rootClass
+  /** Java release the class files are generated for. */
+  def release: Int = config.release
   def problems: Array[CompileError] = reporter_.getProblems
   def sourceClasses: Array[ClassDefinition] = table_.classes.values.toArray
+  def classesOf(sourceFile: String): Seq[ClassDefinition] = unitClasses_.getOrElse(sourceFile, Seq())
   def topClass: String = {
     val module = unit_.module
     val moduleName = if (module != null) module.name else null
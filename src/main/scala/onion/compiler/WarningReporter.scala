@@ -86,6 +86,11 @@ class WarningReporter(
 
   def getWarnings: Seq[CompileWarning] = warnings.toSeq
 
+  /**
+   * Appends the warnings collected by another reporter.
+   */
+  def merge(other: WarningReporter): Unit = warnings ++= other.warnings
+
   def hasWarnings: Boolean = warnings.nonEmpty
 
   def warningCount: Int = warnings.size
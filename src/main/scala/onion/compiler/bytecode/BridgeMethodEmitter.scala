@@ -82,7 +82,7 @@ final class BridgeMethodEmitter(private val codegen: AsmCodeGeneration) {
       val newComponent = substituteTypeVars(at.component, subst)
       if newComponent eq at.component then at else at.table.loadArray(newComponent, at.dimension)
     case ap: AppliedClassType =>
-      val newArgs = ap.typeArguments.map(substituteTypeVars(_, subst)).toList
+      val newArgs = ap.typeArguments.map(substituteTypeVars(_, subst))
       TypedAST.AppliedClassType(ap.raw, newArgs)
     case other => other
 
@@ -95,7 +95,7 @@ final class BridgeMethodEmitter(private val codegen: AsmCodeGeneration) {
       if tp == null then return
       tp match
         case applied0: AppliedClassType =>
-          val specializedArgs = applied0.typeArguments.map(substituteTypeVars(_, subst)).toList
+          val specializedArgs = applied0.typeArguments.map(substituteTypeVars(_, subst))
           val applied = TypedAST.AppliedClassType(applied0.raw, specializedArgs)
           if !visitedApplied.contains(applied) then
             visitedApplied += applied
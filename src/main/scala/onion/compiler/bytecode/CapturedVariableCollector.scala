@@ -7,9 +7,22 @@ import onion.compiler.TypedAST.*
 import scala.collection.mutable
 
 private[compiler] object CapturedVariableCollector {
-  def collect(stmt: ActionStatement, frame: onion.compiler.LocalFrame = null): Seq[ClosureLocalBinding] = {
+  /**
+   * What a closure body needs from its definition site: the outer locals it
+   * refers to, which of those it assigns (as (frame, index) keys) and whether
+   * it refers to the enclosing instance.
+   */
+  final case class Captures(variables: Seq[ClosureLocalBinding], assigned: Set[(Int, Int)], usesThis: Boolean)
+
+  def collect(stmt: ActionStatement, frame: onion.compiler.LocalFrame = null): Seq[ClosureLocalBinding] =
+    captures(stmt, frame).variables
+
+  /** What `stmt` captures, directly or through nested closures. */
+  def captures(stmt: ActionStatement, frame: onion.compiler.LocalFrame = null): Captures = {
     // Use (frameIndex, index) as key to handle nested closures correctly
     val captured = mutable.LinkedHashMap[(Int, Int), ClosureLocalBinding]()
+    val assigned = mutable.Set[(Int, Int)]()
+    var usesThis = false
 
     // Build index -> ClosureLocalBinding map from frame
     val bindingsByIndex: Map[Int, ClosureLocalBinding] =
@@ -42,7 +55,10 @@ private[compiler] object CapturedVariableCollector {
 
       case set: SetLocal =>
         // Only capture variables from outer scopes (frame > 0)
-        if (set.frame > 0) record(set.frame, set.index, set.`type`)
+        if (set.frame > 0) {
+          record(set.frame, set.index, set.`type`)
+          assigned += ((set.frame, set.index))
+        }
         visitTerm(set.value)
 
       case begin: Begin =>
@@ -87,6 +103,13 @@ private[compiler] object CapturedVariableCollector {
       case list: ListLiteral =>
         list.elements.foreach(visitTerm)
 
+      case concat: StringConcat =>
+        concat.parts.foreach(visitTerm)
+
+      case typeSwitch: TypeSwitch =>
+        visitTerm(typeSwitch.target)
+        visitTerm(typeSwitch.restart)
+
       case refField: RefField =>
         visitTerm(refField.target)
 
@@ -111,16 +134,35 @@ private[compiler] object CapturedVariableCollector {
         // These are the variables that the nested closure itself captures (with adjusted frame indices)
         // Frame index adjustment: if nested closure captures at frame N, we need to capture at frame N-1
         // (because we're one level closer to the definition site)
-        val nestedCaptured = CapturedVariableCollector.collect(closure.block, closure.frame)
-        for capturedVar <- nestedCaptured do
+        val nested = captures(closure.block, closure.frame)
+        if nested.usesThis then usesThis = true
+        for capturedVar <- nested.variables do
           val adjustedFrame = capturedVar.frameIndex - 1
           if adjustedFrame > 0 then
             // This variable comes from an outer scope beyond the current closure
             record(adjustedFrame, capturedVar.index, capturedVar.tp)
+            if nested.assigned((capturedVar.frameIndex, capturedVar.index)) then
+              assigned += ((adjustedFrame, capturedVar.index))
+
+      case call: SafeCall =>
+        visitTerm(call.target)
+        call.parameters.foreach(visitTerm)
+
+      case access: SafeFieldAccess =>
+        visitTerm(access.target)
+
+      case term: StatementTerm =>
+        visitStatement(term.statement)
+
+      case sync: SynchronizedTerm =>
+        visitTerm(sync.lock)
+        visitTerm(sync.body)
+
+      case _: OuterThis | _: This =>
+        usesThis = true
 
       case _: BoolValue | _: ByteValue | _: CharacterValue | _: DoubleValue | _: FloatValue | _: IntValue |
-          _: LongValue | _: ShortValue | _: StringValue | _: NullValue |
-          _: RefStaticField | _: OuterThis | _: This =>
+          _: LongValue | _: ShortValue | _: StringValue | _: NullValue | _: RefStaticField =>
         ()
     }
 
@@ -139,6 +181,11 @@ private[compiler] object CapturedVariableCollector {
           case other => visitStatement(other)
         }
 
+      case switch: SwitchStatement =>
+        visitTerm(switch.scrutinee)
+        switch.cases.foreach(c => visitStatement(c.statement))
+        if switch.defaultStatement != null then visitStatement(switch.defaultStatement)
+
       case loop: ConditionalLoop =>
         visitTerm(loop.condition)
         visitStatement(loop.stmt)
@@ -153,6 +200,9 @@ private[compiler] object CapturedVariableCollector {
       case thr: Throw =>
         visitTerm(thr.term)
 
+      case call: TailCall =>
+        call.arguments.foreach(visitTerm)
+
       case tr: Try =>
         tr.resources.foreach { case (_, init) => visitTerm(init) }
         visitStatement(tr.tryStatement)
@@ -164,7 +214,7 @@ private[compiler] object CapturedVariableCollector {
     }
 
     visitStatement(stmt)
-    captured.values.toSeq
+    Captures(captured.values.toSeq, assigned.toSet, usesThis)
   }
 }
 
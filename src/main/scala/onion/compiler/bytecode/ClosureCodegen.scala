@@ -2,228 +2,227 @@ package onion.compiler.bytecode
 
 import onion.compiler.*
 import onion.compiler.TypedAST.*
-import org.objectweb.asm.{ClassWriter, Opcodes, Type as AsmType}
+import org.objectweb.asm.{ClassWriter, Handle, Opcodes, Type as AsmType}
 import org.objectweb.asm.commons.{GeneratorAdapter, Method as AsmMethod}
 
+/**
+ * Compiles closures the way javac compiles lambdas: the body becomes a private
+ * synthetic method `lambda$N` of the enclosing class and each evaluation of the
+ * closure is an `invokedynamic` linked by `LambdaMetafactory`.
+ *
+ * Captured variables are passed to the call site (and from there to the
+ * synthetic method) as leading arguments; variables assigned after capture
+ * are passed as their `onion.runtime.*Box`.  The synthetic method is an
+ * instance method only when the body refers to the enclosing instance.
+ *
+ * A closure that captures nothing (no locals and not the instance) gets a
+ * call site without arguments, which `LambdaMetafactory` links to a constant:
+ * every evaluation returns the same instance and allocates nothing.
+ *
+ * Closures of a function type with a primitive specialization implement the
+ * specialized interface's `apply`, so their arguments and result stay unboxed.
+ */
 final class ClosureCodegen(
   asmCodeGen: AsmCodeGeneration,
-  outputDirectory: String,
-  nextClosureId: () => Int,
-  registerCompiledClass: CompiledClass => Unit
+  nextClosureId: () => Int
 ) {
+  import ClosureCodegen.*
+
+  private var classWriter: ClassWriter = null
+  private var ownerIsInterface = false
+
   private def asmType(tp: TypedAST.Type): AsmType = asmCodeGen.asmType(tp)
   private def boxAsmType(tp: TypedAST.Type): AsmType = asmCodeGen.boxAsmType(tp)
 
-  private def capturedFieldType(capturedVar: ClosureLocalBinding): AsmType =
+  private def capturedType(capturedVar: ClosureLocalBinding): AsmType =
     if capturedVar.isBoxed then boxAsmType(capturedVar.tp) else asmType(capturedVar.tp)
 
-  def emitNewClosure(gen: GeneratorAdapter, closure: NewClosure, className: String, localVars: LocalVarContext): Unit = {
-    val closureClassName = s"${className}$$Closure${nextClosureId()}"
-    val interfaceType = closure.`type`
+  /** Starts a class: the synthetic methods of its closures are written to `cw`. */
+  def beginClass(cw: ClassWriter, isInterface: Boolean): Unit = {
+    classWriter = cw
+    ownerIsInterface = isInterface
+  }
 
+  def emitNewClosure(gen: GeneratorAdapter, closure: NewClosure, className: String, localVars: LocalVarContext): Unit = {
     // Capture outer-scope locals actually referenced by the closure body.
     // (Do not capture the closure's own parameters/locals.)
-    val rawCapturedVars = CapturedVariableCollector.collect(closure.block, closure.frame)
-
-    // Correct the isBoxed flags using localVars (which has the correct info from parent scope)
-    val capturedVars = rawCapturedVars.map { v =>
-      val isBoxed = localVars.isBoxed(v.index)
-      new ClosureLocalBinding(v.frameIndex, v.index, v.tp, v.isMutable, isBoxed)
+    val captures = CapturedVariableCollector.captures(closure.block, closure.frame)
+    val isStatic = !captures.usesThis
+
+    // Correct the isBoxed flags using localVars (which has the correct info from parent scope).
+    // A variable the closure assigns but its definition site keeps unboxed gets a box of
+    // its own, so later calls of the same closure see the assignment.
+    val sharedBoxes = captures.variables.map { v =>
+      localVars match
+        case closureCtx: ClosureLocalVarContext if v.frameIndex > 1 =>
+          closureCtx.capturedBinding(v.frameIndex - 1, v.index).exists(_.isBoxed)
+        case _ =>
+          localVars.isBoxed(v.index)
     }
+    val ownBoxes = captures.variables.zip(sharedBoxes).map { case (v, shared) =>
+      !shared && captures.assigned((v.frameIndex, v.index))
+    }
+    val capturedVars = captures.variables.indices.map { i =>
+      val v = captures.variables(i)
+      new ClosureLocalBinding(v.frameIndex, v.index, v.tp, v.isMutable, sharedBoxes(i) || ownBoxes(i))
+    }
+    val capturedTypes = capturedVars.map(capturedType).toArray
 
-    val closureBytes = generateClosureClass(closureClassName, interfaceType, closure.method, closure.block, capturedVars)
-    registerCompiledClass(CompiledClass(closureClassName.replace('/', '.'), outputDirectory, closureBytes))
-
-    val closureType = AsmUtil.objectType(closureClassName)
-    gen.newInstance(closureType)
-    gen.dup()
+    val implName = s"lambda$$${nextClosureId()}"
+    val implDesc = generateClosureMethod(implName, className, isStatic, closure.method, closure.block, capturedVars, capturedTypes)
 
+    if !isStatic then gen.loadThis()
     // When emitting code to capture a variable:
     // - capturedVar.frameIndex is relative to the NEW closure being created
     // - In the CURRENT context (where we're generating code), we need to adjust
     // - frame=1 in new closure means frame=0 in current closure (one level closer)
-    for capturedVar <- capturedVars do
+    for (capturedVar, ownBox) <- capturedVars.zip(ownBoxes) do
       val adjustedFrame = capturedVar.frameIndex - 1
-      if capturedVar.isBoxed then
-        // For boxed variables, load the box object itself (not the value inside)
+      if ownBox then
         val boxType = boxAsmType(capturedVar.tp)
+        val valueType = asmCodeGen.boxedValueType(capturedVar.tp)
+        gen.newInstance(boxType)
+        gen.dup()
+        asmCodeGen.emitRefLocal(gen, new RefLocal(adjustedFrame, capturedVar.index, capturedVar.tp), localVars)
+        asmCodeGen.adaptValueOnStack(gen, capturedVar.tp, valueType)
+        gen.invokeConstructor(boxType, AsmMethod("<init>", AsmType.getMethodDescriptor(AsmType.VOID_TYPE, valueType)))
+      else if capturedVar.isBoxed then
+        // For boxed variables, load the box object itself (not the value inside)
+        def loadBoxFromLocal(): Unit =
+          val slot = localVars.slotOf(capturedVar.index).getOrElse(
+            throw new IllegalStateException(s"Boxed variable ${capturedVar.index} not found")
+          )
+          gen.loadLocal(slot)
         localVars match
           case closureCtx: ClosureLocalVarContext =>
             closureCtx.capturedBinding(adjustedFrame, capturedVar.index) match
-              case Some(binding) =>
-                gen.loadThis()
-                gen.getField(
-                  AsmUtil.objectType(closureCtx.closureClassName),
-                  closureCtx.capturedFieldName(binding),
-                  boxType
-                )
-              case None =>
-                val slot = localVars.slotOf(capturedVar.index).getOrElse(
-                  throw new IllegalStateException(s"Boxed variable ${capturedVar.index} not found")
-                )
-                gen.loadLocal(slot)
+              case Some(binding) => gen.loadArg(closureCtx.capturedArgIndex(binding))
+              case None => loadBoxFromLocal()
           case _ =>
-            val slot = localVars.slotOf(capturedVar.index).getOrElse(
-              throw new IllegalStateException(s"Boxed variable ${capturedVar.index} not found")
-            )
-            gen.loadLocal(slot)
+            loadBoxFromLocal()
       else
         val ref = new RefLocal(adjustedFrame, capturedVar.index, capturedVar.tp)
         asmCodeGen.emitRefLocal(gen, ref, localVars)
 
-    val ctorDesc = AsmType.getMethodDescriptor(
-      AsmType.VOID_TYPE,
-      capturedVars.map(capturedFieldType).toArray*
-    )
-
-    gen.visitMethodInsn(
-      Opcodes.INVOKESPECIAL,
-      closureClassName,
-      "<init>",
-      ctorDesc,
-      false
-    )
-  }
-
-  private def generateClosureClass(
-    className: String,
-    interfaceType: ClassType,
-    method: TypedAST.Method,
-    block: ActionStatement,
-    capturedVars: Seq[ClosureLocalBinding]
-  ): Array[Byte] = {
-    val cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS)
-
-    cw.visit(
-      Opcodes.V17,
-      Opcodes.ACC_PUBLIC,
-      className,
-      null,
-      AsmUtil.internalName(AsmUtil.JavaLangObject),
-      Array(AsmUtil.internalName(interfaceType.name))
+    // A specialized function interface is implemented through its primitive method
+    val (implemented, samName) =
+      if closure.specialized != null then (closure.specialized, FunctionSpecialization.MethodName)
+      else (closure.`type`, closure.method.name)
+    val ownerType = AsmUtil.objectType(className)
+    val interfaceType = AsmUtil.objectType(implemented.name)
+    val siteArgs = if isStatic then capturedTypes else ownerType +: capturedTypes
+    val implArgs = closure.method.arguments.map(asmType)
+    val implReturn = asmType(closure.method.returnType)
+
+    val samTypes = interfaceDescriptors(implemented, samName, implArgs.length)
+    val sam = samTypes.headOption.getOrElse(AsmType.getMethodType(implReturn, implArgs*))
+    val implHandle = new Handle(
+      if isStatic then Opcodes.H_INVOKESTATIC else Opcodes.H_INVOKESPECIAL,
+      ownerType.getInternalName,
+      implName,
+      implDesc,
+      ownerIsInterface
     )
-
-    for capturedVar <- capturedVars do
-      val fieldType = capturedFieldType(capturedVar)
-      cw.visitField(
-        Opcodes.ACC_PRIVATE,
-        s"captured_${capturedVar.frameIndex}_${capturedVar.index}",
-        fieldType.getDescriptor,
-        null,
-        null
-      )
-
-    generateClosureConstructor(cw, className, capturedVars)
-    generateClosureMethod(cw, className, method, block, capturedVars)
-    generateBridgeMethod(cw, className, interfaceType, method)
-
-    cw.visitEnd()
-    cw.toByteArray
+    val instantiated = instantiatedType(sam, implArgs, implReturn)
+    val siteDesc = AsmType.getMethodDescriptor(interfaceType, siteArgs*)
+    if samTypes.length <= 1 then
+      gen.invokeDynamic(samName, siteDesc, Metafactory, sam, implHandle, instantiated)
+    else
+      // The interface inherits the method with other erasures, which need bridges
+      val bridges = samTypes.tail
+      val bsmArgs = Seq[Object](sam, implHandle, instantiated, Integer.valueOf(FlagBridges), Integer.valueOf(bridges.length)) ++ bridges
+      gen.invokeDynamic(samName, siteDesc, AltMetafactory, bsmArgs*)
   }
 
-  private def findInterfaceMethod(interfaceType: ClassType, name: String, argCount: Int): Option[TypedAST.Method] =
-    interfaceType.methods(name).find(_.arguments.length == argCount)
-
-  private def generateBridgeMethod(
-    cw: ClassWriter,
-    className: String,
-    interfaceType: ClassType,
-    implMethod: TypedAST.Method
-  ): Unit = {
-    val rawMethodOpt = findInterfaceMethod(interfaceType, implMethod.name, implMethod.arguments.length)
-    rawMethodOpt match
-      case Some(rawMethod) if (rawMethod.modifier & AST.M_STATIC) == 0 =>
-        val bridgeArgTypes = rawMethod.arguments.map(asmType)
-        val bridgeReturnType = asmType(rawMethod.returnType)
-        val implArgTypes = implMethod.arguments.map(asmType)
-        val implReturnType = asmType(implMethod.returnType)
-
-        val bridgeDesc = AsmType.getMethodDescriptor(bridgeReturnType, bridgeArgTypes*)
-        val implDesc = AsmType.getMethodDescriptor(implReturnType, implArgTypes*)
-        if bridgeDesc != implDesc then
-          val access = Opcodes.ACC_PUBLIC | Opcodes.ACC_BRIDGE | Opcodes.ACC_SYNTHETIC
-          val gen = MethodEmitter.newGenerator(cw, access, implMethod.name, bridgeReturnType, bridgeArgTypes)
-
-          val ownerType = AsmUtil.objectType(className)
-          gen.loadThis()
-          var i = 0
-          while i < bridgeArgTypes.length do
-            gen.loadArg(i)
-            val desired = implArgTypes(i)
-            val provided = bridgeArgTypes(i)
-            if desired != provided then
-              if asmCodeGen.isReferenceAsmType(provided) && !asmCodeGen.isReferenceAsmType(desired) then
-                gen.unbox(desired)
-              else if !asmCodeGen.isReferenceAsmType(provided) && asmCodeGen.isReferenceAsmType(desired) then
-                gen.valueOf(provided)
-              else if asmCodeGen.isReferenceAsmType(desired) then
-                gen.checkCast(desired)
-              else
-                gen.cast(provided, desired)
-            i += 1
-
-          gen.invokeVirtual(ownerType, AsmMethod(implMethod.name, implDesc))
-          if implReturnType != AsmType.VOID_TYPE &&
-            !asmCodeGen.isReferenceAsmType(implReturnType) &&
-            asmCodeGen.isReferenceAsmType(bridgeReturnType)
-          then
-            gen.valueOf(implReturnType)
-          gen.returnValue()
-          gen.endMethod()
-      case _ => ()
+  /**
+   * Erased descriptors of the abstract methods `name` with `arity` parameters
+   * of `interfaceType`, the one it declares itself first.
+   */
+  private def interfaceDescriptors(interfaceType: ClassType, name: String, arity: Int): Seq[AsmType] = {
+    val raw = interfaceType match
+      case applied: AppliedClassType => applied.raw
+      case other => other
+    val candidates = (raw.methods(name) ++ raw.allMethods(name)).filter { m =>
+      m.arguments.length == arity && (m.modifier & AST.M_STATIC) == 0
+    }
+    val abstracts = candidates.filter(m => (m.modifier & Modifier.ABSTRACT) != 0)
+    (if abstracts.nonEmpty then abstracts else candidates).toSeq
+      .map(m => AsmType.getMethodType(asmType(m.returnType), m.arguments.map(asmType)*))
+      .distinct
   }
 
-  private def generateClosureConstructor(cw: ClassWriter, className: String, capturedVars: Seq[ClosureLocalBinding]): Unit = {
-    val ctorDesc = AsmType.getMethodDescriptor(
-      AsmType.VOID_TYPE,
-      capturedVars.map(capturedFieldType).toArray*
-    )
-
-    val mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", ctorDesc, null, null)
-    val gen = new GeneratorAdapter(mv, Opcodes.ACC_PUBLIC, "<init>", ctorDesc)
-
-    gen.visitCode()
-    gen.loadThis()
-    gen.invokeConstructor(AsmUtil.objectType(AsmUtil.JavaLangObject), AsmMethod.getMethod("void <init>()"))
-
-    for (capturedVar, paramIndex) <- capturedVars.zipWithIndex do
-      gen.loadThis()
-      gen.loadArg(paramIndex)
-      gen.putField(
-        AsmUtil.objectType(className),
-        s"captured_${capturedVar.frameIndex}_${capturedVar.index}",
-        capturedFieldType(capturedVar)
-      )
-
-    gen.returnValue()
-    gen.endMethod()
+  /**
+   * The type the closure implements `sam` at: its own parameter and return
+   * types, boxed where the interface takes references.
+   */
+  private def instantiatedType(sam: AsmType, implArgs: Array[AsmType], implReturn: AsmType): AsmType = {
+    def specialize(samType: AsmType, implType: AsmType): AsmType =
+      if !asmCodeGen.isReferenceAsmType(samType) then samType
+      else if !asmCodeGen.isReferenceAsmType(implType) then boxed(implType)
+      else if implType == ObjectType then samType
+      else implType
+    val samArgs = sam.getArgumentTypes
+    val args = samArgs.indices.map(i => specialize(samArgs(i), implArgs(i)))
+    val ret = if implReturn == AsmType.VOID_TYPE then sam.getReturnType else specialize(sam.getReturnType, implReturn)
+    AsmType.getMethodType(ret, args*)
   }
 
   private def generateClosureMethod(
-    cw: ClassWriter,
+    name: String,
     className: String,
+    isStatic: Boolean,
     method: TypedAST.Method,
     block: ActionStatement,
-    capturedVars: Seq[ClosureLocalBinding]
-  ): Unit = {
+    capturedVars: Seq[ClosureLocalBinding],
+    capturedTypes: Array[AsmType]
+  ): String = {
     val argTypes = method.arguments.map(asmType)
     val returnType = asmType(method.returnType)
+    val access = Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC | (if isStatic then Opcodes.ACC_STATIC else 0)
 
-    val gen = MethodEmitter.newGenerator(
-      cw,
-      Opcodes.ACC_PUBLIC,
-      method.name,
-      returnType,
-      argTypes
-    )
+    val gen = MethodEmitter.newGenerator(classWriter, access, name, returnType, capturedTypes ++ argTypes)
 
-    val closureLocalVars = new ClosureLocalVarContext(gen, className, capturedVars)
-      .withParameters(isStatic = false, argTypes)
+    val closureLocalVars = new ClosureLocalVarContext(gen, capturedVars)
+      .withParameters(isStatic, argTypes, capturedTypes.map(_.getSize).sum)
 
     asmCodeGen.emitStatementWithContext(gen, block, className, closureLocalVars)
 
     val needsDefault = method.returnType != BasicType.VOID && !asmCodeGen.hasReturn(Array(block))
     MethodEmitter.ensureReturn(gen, returnType, !needsDefault)
     gen.endMethod()
+    AsmType.getMethodDescriptor(returnType, (capturedTypes ++ argTypes)*)
   }
 }
+
+object ClosureCodegen {
+  private val ObjectType = AsmType.getType(classOf[Object])
+
+  private val FlagBridges = 4
+
+  private val Metafactory = new Handle(
+    Opcodes.H_INVOKESTATIC,
+    "java/lang/invoke/LambdaMetafactory",
+    "metafactory",
+    "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+    false
+  )
+
+  private val AltMetafactory = new Handle(
+    Opcodes.H_INVOKESTATIC,
+    "java/lang/invoke/LambdaMetafactory",
+    "altMetafactory",
+    "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+    false
+  )
+
+  private def boxed(primitive: AsmType): AsmType = primitive.getSort match
+    case AsmType.BOOLEAN => AsmType.getType(classOf[java.lang.Boolean])
+    case AsmType.BYTE => AsmType.getType(classOf[java.lang.Byte])
+    case AsmType.SHORT => AsmType.getType(classOf[java.lang.Short])
+    case AsmType.CHAR => AsmType.getType(classOf[java.lang.Character])
+    case AsmType.INT => AsmType.getType(classOf[java.lang.Integer])
+    case AsmType.LONG => AsmType.getType(classOf[java.lang.Long])
+    case AsmType.FLOAT => AsmType.getType(classOf[java.lang.Float])
+    case AsmType.DOUBLE => AsmType.getType(classOf[java.lang.Double])
+    case _ => primitive
+}
@@ -1,8 +1,8 @@
 package onion.compiler.bytecode
 
 import onion.compiler.TypedAST.*
-import org.objectweb.asm.{Opcodes, Type => AsmType}
-import org.objectweb.asm.commons.GeneratorAdapter
+import org.objectweb.asm.{Handle, Label, Opcodes, Type => AsmType}
+import org.objectweb.asm.commons.{GeneratorAdapter, Method => AsmMethod}
 
 final class ControlFlowEmitter(
   gen: GeneratorAdapter,
@@ -12,6 +12,8 @@ final class ControlFlowEmitter(
   visitTerm: Term => Unit,
   visitStatement: ActionStatement => Unit
 ) {
+  import ControlFlowEmitter.*
+
   def emitStatementBlock(node: StatementBlock): Unit =
     for stmt <- node.statements do
       visitStatement(stmt)
@@ -64,6 +66,86 @@ final class ControlFlowEmitter(
     finally
       loops.pop()
 
+  /**
+   * Emits a `tableswitch` or `lookupswitch` on the scrutinee, whichever fits
+   * its labels.  Strings (and enum constants, by name) are switched on their
+   * hash code first and then compared with `equals` (or by identity), the way
+   * javac compiles a switch on strings.  A label already listed by an earlier
+   * case is ignored, as the earlier case would have matched it.
+   */
+  def emitSwitchStatement(node: SwitchStatement): Unit =
+    val caseLabels = node.cases.map(_ => gen.newLabel())
+    val defaultLabel = gen.newLabel()
+    val endLabel = gen.newLabel()
+    val targets = node.cases.indices.flatMap(i => node.cases(i).labels.map(_ -> caseLabels(i)))
+
+    visitTerm(node.scrutinee)
+    node.scrutinee.`type` match
+      case _: BasicType =>
+        val byKey = targets.collect { case (label: IntValue, target) => label.value -> target }.distinctBy(_._1)
+        emitIntSwitch(byKey.toMap, defaultLabel)
+      case scrutineeType =>
+        val value = gen.newLocal(asmType(scrutineeType))
+        gen.storeLocal(value)
+        val byName = targets.collect {
+          case (label: StringValue, target) => (label.value, label, target)
+          case (label: RefStaticField, target) => (label.field.name, label, target)
+        }.distinctBy(_._1)
+        gen.loadLocal(value)
+        if byName.exists(_._2.isInstanceOf[RefStaticField]) then gen.invokeVirtual(EnumType, EnumName)
+        gen.invokeVirtual(StringType, HashCode)
+        val byHash = byName.groupBy(_._1.hashCode)
+        val hashLabels = byHash.keys.map(_ -> gen.newLabel()).toMap
+        emitIntSwitch(hashLabels, defaultLabel)
+        for (hash, candidates) <- byHash.toSeq.sortBy(_._1) do
+          gen.mark(hashLabels(hash))
+          for (_, label, target) <- candidates do
+            gen.loadLocal(value)
+            label match
+              case string: StringValue =>
+                gen.push(string.value)
+                gen.invokeVirtual(StringType, StringEquals)
+                gen.ifZCmp(GeneratorAdapter.NE, target)
+              case constant: RefStaticField =>
+                gen.getStatic(AsmUtil.objectType(constant.target.name), constant.field.name, asmType(constant.`type`))
+                gen.ifCmp(asmType(constant.`type`), GeneratorAdapter.EQ, target)
+              case _ => ()
+          gen.goTo(defaultLabel)
+
+    for (switchCase, label) <- node.cases.zip(caseLabels) do
+      gen.mark(label)
+      visitStatement(switchCase.statement)
+      gen.goTo(endLabel)
+    gen.mark(defaultLabel)
+    if node.defaultStatement != null then visitStatement(node.defaultStatement)
+    gen.mark(endLabel)
+
+  /** Jumps to the label of the int on the stack, or to `default`. */
+  private def emitIntSwitch(targets: Map[Int, Label], default: Label): Unit =
+    val keys = targets.keys.toArray.sorted
+    if keys.isEmpty then
+      gen.pop()
+      gen.goTo(default)
+    else
+      val range = keys.last.toLong - keys.head + 1
+      // A table costs a slot per value in range; use it while at least half are labels
+      if range <= 2L * keys.length then
+        val table = (keys.head to keys.last).map(k => targets.getOrElse(k, default)).toArray
+        gen.visitTableSwitchInsn(keys.head, keys.last, default, table*)
+      else
+        gen.visitLookupSwitchInsn(default, keys, keys.map(targets))
+
+  /**
+   * Pushes the index of the first label the target is an instance of, the way
+   * javac compiles a pattern switch: the call site takes the target and the
+   * index to start from, and the labels are its static arguments.
+   */
+  def emitTypeSwitch(node: TypeSwitch): Unit =
+    visitTerm(node.target)
+    visitTerm(node.restart)
+    val labels = node.labels.map(label => asmType(label): Object)
+    gen.invokeDynamic("typeSwitch", TypeSwitchDescriptor, TypeSwitchBootstrap, labels*)
+
   def emitNOP(node: NOP): Unit = ()
 
   def emitReturn(node: Return): Unit =
@@ -236,3 +318,20 @@ final class ControlFlowEmitter(
       gen.visitLabel(endLabel)
     }
 }
+
+object ControlFlowEmitter {
+  private val StringType = AsmType.getType(classOf[String])
+  private val EnumType = AsmType.getType(classOf[java.lang.Enum[?]])
+  private val HashCode = AsmMethod.getMethod("int hashCode()")
+  private val StringEquals = AsmMethod.getMethod("boolean equals(Object)")
+  private val EnumName = AsmMethod.getMethod("String name()")
+
+  private val TypeSwitchDescriptor = "(Ljava/lang/Object;I)I"
+  private val TypeSwitchBootstrap = new Handle(
+    Opcodes.H_INVOKESTATIC,
+    "java/lang/runtime/SwitchBootstraps",
+    "typeSwitch",
+    "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+    false
+  )
+}
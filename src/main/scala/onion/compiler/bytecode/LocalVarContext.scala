@@ -1,7 +1,7 @@
 package onion.compiler.bytecode
 
 import onion.compiler.LocalBinding
-import org.objectweb.asm.{Type as AsmType}
+import org.objectweb.asm.{Label, Type as AsmType}
 import org.objectweb.asm.commons.GeneratorAdapter
 
 import scala.collection.mutable
@@ -10,6 +10,7 @@ class LocalVarContext(gen: GeneratorAdapter) {
   private val indexMap = mutable.Map[Int, Int]()
   private val parameterSet = mutable.Set[Int]()
   private val boxedSet = mutable.Set[Int]()
+  private var entry: Label = null
 
   def slotOf(typedIndex: Int): Option[Int] = indexMap.get(typedIndex)
 
@@ -28,11 +29,22 @@ class LocalVarContext(gen: GeneratorAdapter) {
 
   def markAsBoxed(typedIndex: Int): Unit = boxedSet += typedIndex
 
+  /** Marks the start of the method body, where self tail calls jump back to. */
+  def markEntry(): LocalVarContext = {
+    entry = gen.mark()
+    this
+  }
+
+  def entryLabel: Label =
+    if (entry == null) throw new IllegalStateException("Tail call outside of a method body")
+    else entry
+
   /**
-    * Register JVM parameter slots. Slot0 is `this` for instance methods.
+    * Register JVM parameter slots. Slot0 is `this` for instance methods, and
+    * `leadingSlots` more are taken by parameters that are not locals.
     */
-  def withParameters(isStatic: Boolean, argTypes: Array[AsmType]): LocalVarContext = {
-    val startSlot = if isStatic then 0 else 1
+  def withParameters(isStatic: Boolean, argTypes: Array[AsmType], leadingSlots: Int = 0): LocalVarContext = {
+    val startSlot = (if isStatic then 0 else 1) + leadingSlots
     argTypes.zipWithIndex.foldLeft(startSlot) { case (slot, (tp, i)) =>
       indexMap(i) = slot
       parameterSet += i
@@ -56,9 +68,12 @@ class LocalVarContext(gen: GeneratorAdapter) {
   }
 }
 
+/**
+  * Locals of a closure body, compiled as a synthetic method whose leading
+  * parameters are the captured variables, followed by the closure's own.
+  */
 class ClosureLocalVarContext(
   gen: GeneratorAdapter,
-  val closureClassName: String,
   val capturedVars: Seq[onion.compiler.ClosureLocalBinding]
 ) extends LocalVarContext(gen) {
   // Use (frameIndex, index) as key to handle nested closures correctly
@@ -69,10 +84,8 @@ class ClosureLocalVarContext(
   private val capturedByIndex: Map[Int, onion.compiler.ClosureLocalBinding] =
     capturedVars.filter(_.frameIndex == 0).map(b => b.index -> b).toMap
 
-  def capturedFieldName(frameIndex: Int, typedIndex: Int): String = s"captured_${frameIndex}_$typedIndex"
-
-  def capturedFieldName(binding: onion.compiler.ClosureLocalBinding): String =
-    capturedFieldName(binding.frameIndex, binding.index)
+  private val argIndexByKey: Map[(Int, Int), Int] =
+    capturedVars.zipWithIndex.map { case (b, i) => (b.frameIndex, b.index) -> i }.toMap
 
   def capturedBinding(frameIndex: Int, typedIndex: Int): Option[onion.compiler.ClosureLocalBinding] =
     capturedByKey.get((frameIndex, typedIndex))
@@ -83,10 +96,16 @@ class ClosureLocalVarContext(
 
   def isCapturedVariable(typedIndex: Int): Boolean = capturedByIndex.contains(typedIndex)
 
+  /** Argument index (as for `GeneratorAdapter.loadArg`) of captured variable `binding`. */
+  def capturedArgIndex(binding: onion.compiler.ClosureLocalBinding): Int =
+    argIndexByKey((binding.frameIndex, binding.index))
+
+  /** Argument index of the closure's own parameter `typedIndex`. */
+  def parameterArgIndex(typedIndex: Int): Int = capturedVars.length + typedIndex
+
   override def getOrAllocateSlot(typedIndex: Int, tp: AsmType): Int =
     capturedBinding(typedIndex) match {
       case Some(b) => throw new IllegalStateException(s"Attempted to allocate slot for captured variable ${b.index}")
       case None    => super.getOrAllocateSlot(typedIndex, tp)
     }
 }
-
@@ -0,0 +1,83 @@
+package onion.compiler.bytecode
+
+import org.objectweb.asm.{Handle, Opcodes, Type as AsmType}
+import org.objectweb.asm.commons.GeneratorAdapter
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Emits string concatenations as `invokedynamic` call sites bootstrapped by
+ * `StringConcatFactory.makeConcatWithConstants`, the way javac does since JDK 9.
+ *
+ * Constant parts go into the recipe; the others are pushed unboxed and passed
+ * as arguments.  A call site takes at most 200 argument slots, so longer
+ * concatenations are split and the result of one call site becomes the first
+ * argument of the next.
+ */
+object StringConcatEmitter {
+  sealed trait Part
+  /** Text known at compile time. */
+  final case class Constant(text: String) extends Part
+  /** A value of type `tpe` that `push` leaves on the operand stack. */
+  final case class Argument(tpe: AsmType, push: () => Unit) extends Part
+
+  private val MaxSlots = 200
+  private val ArgumentTag = '\u0001'
+  private val ConstantTag = '\u0002'
+
+  private val StringType = AsmType.getType(classOf[String])
+  private val ObjectType = AsmType.getType(classOf[Object])
+
+  private val Bootstrap = new Handle(
+    Opcodes.H_INVOKESTATIC,
+    "java/lang/invoke/StringConcatFactory",
+    "makeConcatWithConstants",
+    "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+    false
+  )
+
+  /**
+   * The type a value of `tpe` is passed to the call site as.  References other
+   * than String are passed as Object, so the call site never names a class
+   * the bootstrap could not access.
+   */
+  def argumentType(tpe: AsmType): AsmType =
+    if (tpe.getSort != AsmType.OBJECT && tpe.getSort != AsmType.ARRAY) tpe
+    else if (tpe == StringType) StringType
+    else ObjectType
+
+  def emit(gen: GeneratorAdapter, parts: Seq[Part]): Unit = {
+    val recipe = new java.lang.StringBuilder
+    val types = ArrayBuffer[AsmType]()
+    var slots = 0
+
+    def callSite(): Unit =
+      gen.invokeDynamic("makeConcatWithConstants", AsmType.getMethodDescriptor(StringType, types.toSeq*), Bootstrap, recipe.toString)
+
+    def argument(tpe: AsmType, push: () => Unit): Unit = {
+      if (slots + tpe.getSize > MaxSlots) {
+        callSite()
+        recipe.setLength(0)
+        types.clear()
+        recipe.append(ArgumentTag)
+        types += StringType
+        slots = 1
+      }
+      push()
+      recipe.append(ArgumentTag)
+      types += tpe
+      slots += tpe.getSize
+    }
+
+    parts.foreach {
+      case Constant(text) if text.indexOf(ArgumentTag) < 0 && text.indexOf(ConstantTag) < 0 =>
+        recipe.append(text)
+      case Constant(text) =>
+        // Tag characters cannot appear in the recipe itself
+        argument(StringType, () => gen.push(text))
+      case Argument(tpe, push) =>
+        argument(argumentType(tpe), push)
+    }
+    if (types.isEmpty) gen.push(recipe.toString)
+    else callSite()
+  }
+}
@@ -0,0 +1,47 @@
+package onion.compiler.bytecode
+
+import onion.compiler.{ClassTable, TypedAST}
+import org.objectweb.asm.ClassWriter
+
+/**
+ * ClassWriter that answers ASM's common-super-class queries (used by
+ * `COMPUTE_FRAMES`) from the compiler's [[ClassTable]] rather than from
+ * `Class.forName`.  Source classes of the current compilation and class-path
+ * classes are both known to the table, so frame computation neither fails on
+ * the former nor loads and initializes the latter.
+ */
+class TableClassWriter(flags: Int, table: ClassTable) extends ClassWriter(flags) {
+  private val ObjectInternalName = AsmUtil.internalName(AsmUtil.JavaLangObject)
+
+  override protected def getCommonSuperClass(type1: String, type2: String): String = {
+    val class1 = table.load(type1.replace('/', '.'))
+    val class2 = table.load(type2.replace('/', '.'))
+    // Types the table does not know (e.g. generated closure classes) are only
+    // ever used through their interfaces, for which Object is a valid merge.
+    if (class1 == null || class2 == null) return ObjectInternalName
+    if (isSubclass(class2, class1)) return type1
+    if (isSubclass(class1, class2)) return type2
+    if (class1.isInterface || class2.isInterface) return ObjectInternalName
+    var current = superClassOf(class1)
+    while (current != null && !isSubclass(class2, current)) {
+      current = superClassOf(current)
+    }
+    if (current == null) ObjectInternalName else AsmUtil.internalName(current.name)
+  }
+
+  private def superClassOf(clazz: TypedAST.ClassType): TypedAST.ClassType = {
+    if (clazz.name == AsmUtil.JavaLangObject) null else clazz.superClass
+  }
+
+  /** Whether `sub` is `sup` or inherits from it, comparing erased names. */
+  private def isSubclass(sub: TypedAST.ClassType, sup: TypedAST.ClassType): Boolean = {
+    val target = sup.name
+    val visited = scala.collection.mutable.Set[String]()
+    def loop(clazz: TypedAST.ClassType): Boolean = {
+      if (clazz == null || !visited.add(clazz.name)) false
+      else if (clazz.name == target) true
+      else loop(superClassOf(clazz)) || clazz.interfaces.exists(loop)
+    }
+    loop(sub)
+  }
+}
@@ -125,7 +125,7 @@ object AsmRefs {
           return
         }
         if (typeArgs.isEmpty) finish(raw)
-        else finish(TypedAST.AppliedClassType(raw, typeArgs.toList))
+        else finish(TypedAST.AppliedClassType(raw, typeArgs.toArray))
       }
     }
 
@@ -7,23 +7,35 @@
  * ************************************************************** */
 package onion.compiler.environment
 
-import java.io.{File, IOException}
-import java.net.URLClassLoader
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 
 /**
+ * Reads class files: platform classes from the JDK image (see
+ * [[JrtClassFiles]]), then the resources of the context class loader, which
+ * holds the Onion runtime library the compiler itself runs with, then the
+ * class path (see [[ClassPathIndex]]).  Like a class loader delegating to its
+ * parent first, the class path cannot shadow the classes the compiler runs
+ * with.
+ *
+ * The classes of each package are enumerated at most once per table, which
+ * lets callers rule out a class name with a hash lookup (see [[mayDefine]]).
+ * That works for platform packages, whose classes can only come from the JDK
+ * image and the class path, and for every package when the runtime library is
+ * on the system class path; otherwise the runtime loader cannot be listed and
+ * its packages are left to be probed.
+ *
  * @author Kota Mizushima
  *
  */
 class ClassFileTable(classPathString: String) {
-  private val classLoader: ClassLoader = createClassLoader(classPathString)
-
-  private def createClassLoader(classPath: String): ClassLoader = {
-    val urls = classPath.split(File.pathSeparator).map { path =>
-      val file = new File(path)
-      file.toURI.toURL
-    }
-    new URLClassLoader(urls, Thread.currentThread().getContextClassLoader)
-  }
+  private val index = ClassPathIndex.forClassPath(classPathString)
+  private val runtimeLoader = Thread.currentThread().getContextClassLoader
+  private val runtimeIndex =
+    if (runtimeLoader != null && (runtimeLoader eq ClassLoader.getSystemClassLoader))
+      ClassPathIndex.forClassPath(System.getProperty("java.class.path", ""))
+    else null
+  private val packages = new ConcurrentHashMap[String, Option[Set[String]]]
 
   /**
    * Load class bytes for the given class name
@@ -31,8 +43,17 @@ class ClassFileTable(classPathString: String) {
    * @return byte array of the class file, or null if not found
    */
   def loadBytes(className: String): Array[Byte] = {
+    val platform = JrtClassFiles.loadBytes(className)
+    if (platform != null) return platform
     val resourcePath = className.replace('.', '/') + ".class"
-    val inputStream = classLoader.getResourceAsStream(resourcePath)
+    val runtime = loadRuntimeBytes(resourcePath)
+    if (runtime != null) runtime else index.loadBytes(resourcePath)
+  }
+
+  private def loadRuntimeBytes(resourcePath: String): Array[Byte] = {
+    // The system class loader reads the JVM's own class path, indexed like any other
+    if (runtimeIndex != null) return runtimeIndex.loadBytes(resourcePath)
+    val inputStream = if (runtimeLoader == null) null else runtimeLoader.getResourceAsStream(resourcePath)
     if (inputStream == null) return null
 
     try {
@@ -43,4 +64,37 @@ class ClassFileTable(classPathString: String) {
       inputStream.close()
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Whether `className` may have a class file here: false only when its
+   * package could be enumerated and does not contain the class.
+   */
+  def mayDefine(className: String): Boolean = {
+    val dot = className.lastIndexOf('.')
+    val packageName = if (dot < 0) "" else className.substring(0, dot)
+    packageMembers(packageName).forall(_.contains(className.substring(dot + 1)))
+  }
+
+  /**
+   * Simple names of the classes of `packageName`, or None if some of them
+   * may come from a loader that cannot be enumerated.
+   */
+  def packageMembers(packageName: String): Option[Set[String]] =
+    packages.computeIfAbsent(packageName, name => {
+      val platform = JrtClassFiles.packageMembers(name)
+      if (runtimeIndex != null) {
+        val platformNames = if (platform == null) Set.empty[String] else platform
+        Some(platformNames ++ index.packageMembers(name) ++ runtimeIndex.packageMembers(name))
+      } else if (platform != null) {
+        Some(platform ++ index.packageMembers(name))
+      } else {
+        None
+      }
+    })
+
+  /**
+   * Does nothing: the jars are shared through [[ClassPathIndex]] by every
+   * table of the process and stay open for other compilations.
+   */
+  def close(): Unit = ()
+}
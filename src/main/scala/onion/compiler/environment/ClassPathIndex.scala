@@ -0,0 +1,153 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler.environment
+
+import java.io.{File, IOException}
+import java.nio.file.Files
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.{ZipEntry, ZipFile}
+import scala.jdk.CollectionConverters._
+import scala.util.Using
+
+/**
+ * Where the class files of one class path live.
+ *
+ * Every jar on the class path is opened once per process and its class
+ * entries are indexed up front; the jar indexes of a class path are merged
+ * into a single table, so looking a class up in the jars (hit or miss) is one
+ * hash probe.  Directories are not indexed, since compilations write to them,
+ * and are probed on the file system instead.  The classes of each package are
+ * indexed the same way, so wildcard imports can be resolved without probing
+ * every class name they could stand for.
+ *
+ * Jars and class path indexes are shared by every compiler in the process and
+ * rebuilt when a jar's size or modification time changes.  A replaced jar is
+ * not closed explicitly, as compilations still running may read from it.
+ *
+ * @author Kota Mizushima
+ */
+final class ClassPathIndex private (
+  directories: Array[ClassPathIndex.Directory],
+  private val jars: Seq[ClassPathIndex.Jar],
+  missing: Seq[String],
+  classes: java.util.HashMap[String, ClassPathIndex.Located],
+  packages: java.util.HashMap[String, Set[String]]
+) {
+  import ClassPathIndex._
+
+  /** Whether none of the jars changed and no missing entry appeared since this index was built. */
+  def isCurrent: Boolean =
+    jars.forall(jar => jarFor(jar.path) eq jar) && missing.forall(path => !new File(path).exists)
+
+  /**
+   * Class file `resource` (e.g. `java/util/List.class`) as found first on the
+   * class path, or null.
+   */
+  def loadBytes(resource: String): Array[Byte] = {
+    val located = classes.get(resource)
+    val limit = if (located == null) Int.MaxValue else located.position
+    var i = 0
+    while (i < directories.length && directories(i).position < limit) {
+      val file = new File(directories(i).file, resource)
+      if (file.isFile) {
+        try return Files.readAllBytes(file.toPath)
+        catch { case _: IOException => () }
+      }
+      i += 1
+    }
+    if (located == null) null else located.jar.read(located.entry)
+  }
+
+  /**
+   * Simple names of the classes of package `packageName` (`""` for the
+   * unnamed package) found anywhere on the class path.
+   */
+  def packageMembers(packageName: String): Set[String] = {
+    val inJars = packages.getOrDefault(packageName, Set.empty)
+    if (directories.isEmpty) return inJars
+    val path = packageName.replace('.', '/')
+    directories.foldLeft(inJars) { (names, directory) =>
+      val files = new File(directory.file, path).list()
+      if (files == null) names
+      else names ++ files.iterator.filter(_.endsWith(".class")).map(_.stripSuffix(".class"))
+    }
+  }
+}
+
+object ClassPathIndex {
+  private final class Directory(val position: Int, val file: File)
+
+  private final class Located(val position: Int, val jar: Jar, val entry: ZipEntry)
+
+  private final class Jar(val path: String, val length: Long, val lastModified: Long) {
+    private val zip = new ZipFile(path)
+
+    val entries: Seq[ZipEntry] = zip.entries().asScala.filter(e => !e.isDirectory && e.getName.endsWith(".class")).toSeq
+
+    def read(entry: ZipEntry): Array[Byte] =
+      try Using.resource(zip.getInputStream(entry))(_.readAllBytes())
+      catch { case _: IOException => null }
+  }
+
+  private val jarsByPath = new ConcurrentHashMap[String, Jar]
+  private val indexes = new ConcurrentHashMap[String, ClassPathIndex]
+
+  /** The index of `classPath`, shared with other compilers using the same class path. */
+  def forClassPath(classPath: String): ClassPathIndex = {
+    val cached = indexes.get(classPath)
+    if (cached != null && cached.isCurrent) return cached
+    val index = build(classPath)
+    // Class paths without jars are cheap to index and not worth keeping
+    if (index.jars.nonEmpty) indexes.put(classPath, index)
+    index
+  }
+
+  /** The opened jar at `path`, or null if it is not a readable zip file. */
+  private def jarFor(path: String): Jar = {
+    val file = new File(path)
+    if (!file.isFile) return null
+    val cached = jarsByPath.get(path)
+    if (cached != null && cached.length == file.length && cached.lastModified == file.lastModified) return cached
+    try {
+      val jar = new Jar(path, file.length, file.lastModified)
+      jarsByPath.put(path, jar)
+      jar
+    } catch {
+      case _: IOException => null
+    }
+  }
+
+  private def build(classPath: String): ClassPathIndex = {
+    val directories = Array.newBuilder[Directory]
+    val jars = Seq.newBuilder[Jar]
+    val missing = Seq.newBuilder[String]
+    val classes = new java.util.HashMap[String, Located]
+    val packages = new java.util.HashMap[String, Set[String]]
+    for ((path, position) <- classPath.split(File.pathSeparator).filter(_.nonEmpty).zipWithIndex) {
+      val file = new File(path)
+      if (file.isDirectory) {
+        directories += new Directory(position, file)
+      } else {
+        val jar = jarFor(path)
+        if (jar == null) {
+          missing += path
+        } else {
+          jars += jar
+          for (entry <- jar.entries) {
+            val name = entry.getName
+            classes.putIfAbsent(name, new Located(position, jar, entry))
+            val slash = name.lastIndexOf('/')
+            val packageName = if (slash < 0) "" else name.substring(0, slash).replace('/', '.')
+            packages.merge(packageName, Set(name.substring(slash + 1).stripSuffix(".class")), _ ++ _)
+          }
+        }
+      }
+    }
+    new ClassPathIndex(directories.result(), jars.result(), missing.result(), classes, packages)
+  }
+}
@@ -0,0 +1,89 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler.environment
+
+import java.io.IOException
+import java.net.URI
+import java.nio.file.{FileSystem, FileSystems, Files, NoSuchFileException}
+import java.util.concurrent.ConcurrentHashMap
+import scala.jdk.CollectionConverters._
+import scala.util.Using
+import scala.util.control.NonFatal
+
+/**
+ * Class files of the JDK the compiler runs on, read from the `jrt:/` image.
+ *
+ * Platform classes are looked up here before the class path: the bytes come
+ * straight from the image, without going through class loader delegation and
+ * without loading (let alone initializing) the class in the compiler's JVM.
+ * The package-to-module index is built once per process, and so is the list
+ * of classes of each platform package asked for.
+ *
+ * @author Kota Mizushima
+ */
+object JrtClassFiles {
+  private final class Image(fileSystem: FileSystem) {
+    /** Modules defining each package, e.g. `java.lang` -> `java.base`. */
+    val modules: Map[String, Seq[String]] =
+      Using.resource(Files.newDirectoryStream(fileSystem.getPath("/packages"))) { packages =>
+        packages.asScala.map { pkg =>
+          val names = Using.resource(Files.newDirectoryStream(pkg)) { entries =>
+            entries.asScala.map(_.getFileName.toString).toSeq
+          }
+          pkg.getFileName.toString -> names
+        }.toMap
+      }
+
+    private val members = new ConcurrentHashMap[String, Set[String]]
+
+    def classesOf(packageName: String): Set[String] =
+      members.computeIfAbsent(packageName, name => {
+        val directory = name.replace('.', '/')
+        modules.getOrElse(name, Nil).flatMap { module =>
+          try Using.resource(Files.newDirectoryStream(fileSystem.getPath("/modules", module, directory), "*.class")) { files =>
+            files.asScala.map(_.getFileName.toString.stripSuffix(".class")).toSeq
+          }
+          catch { case _: IOException => Nil }
+        }.toSet
+      })
+
+    def read(module: String, resource: String): Array[Byte] =
+      try Files.readAllBytes(fileSystem.getPath("/modules", module, resource))
+      catch {
+        case _: NoSuchFileException => null
+        case _: IOException => null
+      }
+  }
+
+  private lazy val image: Image =
+    try new Image(FileSystems.getFileSystem(URI.create("jrt:/")))
+    catch {
+      case NonFatal(_) => null
+    }
+
+  /**
+   * Bytes of the platform class `className` (a binary name such as
+   * `java.util.Map$Entry`), or null if no platform module defines it.
+   */
+  def loadBytes(className: String): Array[Byte] = {
+    val dot = className.lastIndexOf('.')
+    if (dot < 0 || image == null) return null
+    val modules = image.modules.getOrElse(className.substring(0, dot), Nil)
+    if (modules.isEmpty) return null
+    val resource = className.replace('.', '/') + ".class"
+    modules.iterator.map(image.read(_, resource)).find(_ != null).orNull
+  }
+
+  /**
+   * Simple names (`Map$Entry` for nested classes) of the classes in platform
+   * package `packageName`, or null if no platform module defines the package.
+   */
+  def packageMembers(packageName: String): Set[String] =
+    if (image == null || !image.modules.contains(packageName)) null
+    else image.classesOf(packageName)
+}
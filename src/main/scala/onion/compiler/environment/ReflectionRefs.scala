@@ -10,7 +10,6 @@ package onion.compiler.environment
 import onion.compiler.{TypedAST, Modifier, OnionTypeConversion, MultiTable, OrderedTable, ClassTable}
 import java.lang.reflect.{Constructor, Field, Method}
 import java.lang.reflect.{GenericArrayType, ParameterizedType, Type, TypeVariable, WildcardType}
-import java.util.{ArrayList, List}
 import scala.annotation.tailrec
 
 object ReflectionRefs {
@@ -77,7 +76,7 @@ object ReflectionRefs {
         val raw = table.load(rawClass.getName)
         val args = p.getActualTypeArguments.map(a => toOnionType(a, env))
         if (raw == null || args.contains(null)) null
-        else TypedAST.AppliedClassType(raw, args.toList)
+        else TypedAST.AppliedClassType(raw, args)
       case v: TypeVariable[_] =>
         env.getOrElse(
           v.getName,
@@ -147,9 +146,6 @@ object ReflectionRefs {
   class ReflectClassType(klass: Class[?], table: ClassTable) extends TypedAST.AbstractClassType {
     private val mapper = new GenericTypeMapper(table)
     private val modifier_ : Int                          = toOnionModifier(klass.getModifiers)
-    private var methods_ : MultiTable[TypedAST.Method]        = _
-    private var fields_ : OrderedTable[TypedAST.FieldRef]     = _
-    private var constructors_ : List[TypedAST.ConstructorRef] = _
 
     private lazy val (typeParameters0, classEnv0) = mapper.typeParamsFrom(klass.getTypeParameters, Map.empty)
     override def typeParameters: Array[TypedAST.TypeParameter] = typeParameters0.clone()
@@ -179,56 +175,39 @@ object ReflectionRefs {
       }
     }
 
-    def methods: Seq[TypedAST.Method] = {
-      requireMethodTable()
-      methods_.values
-    }
-
-    def methods(name: String): Array[TypedAST.Method] = {
-      requireMethodTable()
-      methods_.get(name).toArray
+    // Built on first use; lazy vals so a table is never seen half-filled
+    // when types are shared between typing workers.
+    private lazy val methods_ : MultiTable[TypedAST.Method] = {
+      val m = new MultiTable[TypedAST.Method]
+      for (method <- klass.getMethods if method.getName != CONSTRUCTOR_NAME) {
+        val owner = table.load(method.getDeclaringClass.getName)
+        val ownerEnv = mapper.typeParamEnv(owner.typeParameters)
+        m.add(new ReflectMethodRef(method, owner, mapper, ownerEnv))
+      }
+      m
     }
 
-    private def requireMethodTable(): Unit = {
-      if (methods_ == null) {
-        methods_ = new MultiTable[TypedAST.Method]
-        for (method <- klass.getMethods if method.getName != CONSTRUCTOR_NAME) {
-          val owner = table.load(method.getDeclaringClass.getName)
-          val ownerEnv = mapper.typeParamEnv(owner.typeParameters)
-          methods_.add(new ReflectMethodRef(method, owner, mapper, ownerEnv))
-        }
+    private lazy val fields_ : OrderedTable[TypedAST.FieldRef] = {
+      val f = new OrderedTable[TypedAST.FieldRef]
+      for (field <- klass.getFields) {
+        val owner = table.load(field.getDeclaringClass.getName)
+        val ownerEnv = mapper.typeParamEnv(owner.typeParameters)
+        f.add(new ReflectFieldRef(field, owner, mapper, ownerEnv))
       }
+      f
     }
 
-    def fields: Array[TypedAST.FieldRef] = {
-      requireFieldTable()
-      fields_.values.toArray
-    }
+    private lazy val constructors_ : Array[TypedAST.ConstructorRef] =
+      klass.getConstructors.map(ctor => new ReflectConstructorRef(ctor, this, mapper, classEnv0): TypedAST.ConstructorRef)
 
-    def field(name: String): TypedAST.FieldRef = {
-      requireFieldTable()
-      fields_.get(name).orNull
-    }
+    def methods: Seq[TypedAST.Method] = methods_.values
 
-    private def requireFieldTable(): Unit = {
-      if (fields_ == null) {
-        fields_ = new OrderedTable[TypedAST.FieldRef]
-        for (field <- klass.getFields) {
-          val owner = table.load(field.getDeclaringClass.getName)
-          val ownerEnv = mapper.typeParamEnv(owner.typeParameters)
-          fields_.add(new ReflectFieldRef(field, owner, mapper, ownerEnv))
-        }
-      }
-    }
+    def methods(name: String): Array[TypedAST.Method] = methods_.get(name).toArray
 
-    def constructors: Array[TypedAST.ConstructorRef] = {
-      if (constructors_ == null) {
-        constructors_ = new ArrayList[TypedAST.ConstructorRef]
-        for (ctor <- klass.getConstructors) {
-          constructors_.add(new ReflectConstructorRef(ctor, this, mapper, classEnv0))
-        }
-      }
-      constructors_.toArray(new Array[TypedAST.ConstructorRef](0))
-    }
+    def fields: Array[TypedAST.FieldRef] = fields_.values.toArray
+
+    def field(name: String): TypedAST.FieldRef = fields_.get(name).orNull
+
+    def constructors: Array[TypedAST.ConstructorRef] = constructors_.clone()
   }
 }
@@ -47,10 +47,13 @@ object Boxing {
 
   private def cachedBoxedType(table: ClassTable, `type`: TypedAST.BasicType): TypedAST.ClassType = {
     val index = boxedTypeIndex(`type`)
-    var cache = boxedTypeCache.get(table)
-    if (cache == null) {
-      cache = new Array[TypedAST.ClassType](TABLE.length)
-      boxedTypeCache.put(table, cache)
+    val cache = boxedTypeCache.synchronized {
+      var cache = boxedTypeCache.get(table)
+      if (cache == null) {
+        cache = new Array[TypedAST.ClassType](TABLE.length)
+        boxedTypeCache.put(table, cache)
+      }
+      cache
     }
     var boxed = cache(index)
     if (boxed == null) {
@@ -64,7 +67,7 @@ object Boxing {
   private def cachedMethod(
     cache: JWeakHashMap[ClassTable, Array[TypedAST.Method]],
     table: ClassTable
-  ): Array[TypedAST.Method] = {
+  ): Array[TypedAST.Method] = cache.synchronized {
     var methods = cache.get(table)
     if (methods == null) {
       methods = new Array[TypedAST.Method](TABLE.length)
@@ -125,6 +128,15 @@ object Boxing {
     new TypedAST.CallStatic(aBoxedType, valueOfMethod, args)
   }
 
+  /** The primitive `term` boxes, if it is a conversion made by [[boxing]]. */
+  def boxedValue(term: TypedAST.Term): Option[TypedAST.Term] = term match {
+    case call: TypedAST.CallStatic if call.method.name == "valueOf" && call.parameters.length == 1 =>
+      val value = call.parameters(0)
+      if (boxedNameToBasic.get(call.target.name).contains(value.`type`)) Some(value) else None
+    case _ =>
+      None
+  }
+
   /**
    * Returns the primitive type that the given reference type can be unboxed to.
    * Returns None if the type cannot be unboxed.
@@ -0,0 +1,44 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.compiler.toolbox
+
+import java.util.concurrent.{Callable, ExecutionException, ForkJoinPool, Future}
+
+/**
+ * Runs independent per-item work of a compiler phase on a fork-join pool.
+ *
+ * Results are returned in the order of the input, so anything merged from
+ * them (units, diagnostics) does not depend on how tasks were scheduled.
+ */
+object Parallel {
+  /**
+   * Applies `f` to every item using at most `parallelism` worker threads.
+   * With a parallelism of 1 (or a single item) this runs on the calling thread.
+   *
+   * The first failure in input order is rethrown unwrapped.
+   */
+  def map[A, B](items: Seq[A], parallelism: Int)(f: A => B): Seq[B] = {
+    if (parallelism <= 1 || items.size <= 1) return items.map(f)
+    val pool = new ForkJoinPool(math.min(parallelism, items.size))
+    try {
+      val futures: Seq[Future[B]] = items.map { item =>
+        pool.submit(new Callable[B] { def call(): B = f(item) })
+      }
+      futures.map(await)
+    } finally {
+      pool.shutdownNow()
+    }
+  }
+
+  private def await[B](future: Future[B]): B = {
+    try future.get()
+    catch {
+      case e: ExecutionException if e.getCause != null => throw e.getCause
+    }
+  }
+}
@@ -9,7 +9,12 @@ package onion.compiler.toolbox
 
 /**
  * Utility for suggesting similar names when an identifier is not found.
- * Uses Levenshtein distance to find similar candidates.
+ * Uses Levenshtein distance to find similar candidates, ignoring case.
+ *
+ * A one-off lookup scans the candidates with a distance computation that
+ * gives up as soon as `maxDistance` is exceeded.  Candidate sets that are
+ * searched repeatedly (members of a class, class names in scope) should be
+ * put into an [[Index]] once instead.
  */
 object Suggestions {
 
@@ -21,35 +26,162 @@ object Suggestions {
    * @param maxDistance Maximum edit distance to consider (default: 3)
    * @return Some(similarName) if a close match is found, None otherwise
    */
-  def findSimilar(name: String, candidates: Seq[String], maxDistance: Int = 3): Option[String] = {
-    if (name.isEmpty || candidates.isEmpty) return None
+  def findSimilar(name: String, candidates: Seq[String], maxDistance: Int = 3): Option[String] =
+    findSimilarMany(name, candidates, 1, maxDistance).headOption
 
-    val scored = candidates.map { candidate =>
-      (candidate, levenshteinDistance(name.toLowerCase, candidate.toLowerCase))
+  /**
+   * Find up to n similar names from a list of candidates.
+   */
+  def findSimilarMany(name: String, candidates: Seq[String], maxResults: Int = 3, maxDistance: Int = 3): Seq[String] = {
+    if (name.isEmpty || candidates.isEmpty) return Seq.empty
+    val best = new Best(maxResults)
+    var order = 0
+    candidates.foreach { candidate =>
+      val distance = boundedDistance(name, candidate, maxDistance)
+      if (distance <= maxDistance && distance > 0) best.offer(candidate, distance, order)
+      order += 1
+    }
+    best.result
+  }
+
+  /**
+   * Candidate names arranged in a BK-tree, so that a lookup only computes the
+   * distance to the candidates the triangle inequality cannot rule out.
+   * Results are the same as those of [[findSimilarMany]] on the same names.
+   */
+  final class Index(candidates: Iterable[String]) {
+    private final class Node(val word: String, val order: Int) {
+      // Candidates equal to `word` ignoring case, in candidate order
+      val names = scala.collection.mutable.ArrayBuffer[(String, Int)]((word, order))
+      val children = scala.collection.mutable.HashMap[Int, Node]()
+    }
+
+    private var root: Node = null
+
+    locally {
+      var order = 0
+      candidates.foreach { candidate =>
+        insert(candidate, order)
+        order += 1
+      }
     }
 
-    scored
-      .filter { case (_, distance) => distance <= maxDistance && distance > 0 }
-      .sortBy { case (candidate, distance) =>
-        // Prefer shorter edit distances, then shorter names
-        (distance, candidate.length)
+    private def insert(candidate: String, order: Int): Unit = {
+      if (root == null) { root = new Node(candidate, order); return }
+      var node = root
+      while (true) {
+        val distance = boundedDistance(candidate, node.word, Int.MaxValue)
+        if (distance == 0) { node.names += ((candidate, order)); return }
+        node.children.get(distance) match {
+          case Some(child) => node = child
+          case None => node.children(distance) = new Node(candidate, order); return
+        }
       }
-      .headOption
-      .map(_._1)
+    }
+
+    def findSimilar(name: String, maxDistance: Int = 3): Option[String] =
+      findSimilarMany(name, 1, maxDistance).headOption
+
+    def findSimilarMany(name: String, maxResults: Int = 3, maxDistance: Int = 3): Seq[String] = {
+      if (name.isEmpty || root == null) return Seq.empty
+      val best = new Best(maxResults)
+      val pending = scala.collection.mutable.Stack[Node](root)
+      while (pending.nonEmpty) {
+        val node = pending.pop()
+        val distance = boundedDistance(name, node.word, Int.MaxValue)
+        if (distance <= maxDistance && distance > 0) {
+          node.names.foreach { case (candidate, order) => best.offer(candidate, distance, order) }
+        }
+        node.children.foreach { case (d, child) =>
+          if (d >= distance - maxDistance && d <= distance + maxDistance) pending.push(child)
+        }
+      }
+      best.result
+    }
   }
 
   /**
-   * Find up to n similar names from a list of candidates.
+   * Indexes of the candidate sets of one compilation, such as the members of
+   * a class, keyed by the owner of the names (compared by identity) and the
+   * kind of name.  An index is rebuilt if the owner's names changed.
    */
-  def findSimilarMany(name: String, candidates: Seq[String], maxResults: Int = 3, maxDistance: Int = 3): Seq[String] = {
-    if (name.isEmpty || candidates.isEmpty) return Seq.empty
+  final class Indexes {
+    private final class Key(val owner: AnyRef, val kind: String) {
+      override def hashCode: Int = System.identityHashCode(owner) * 31 + kind.hashCode
+      override def equals(other: Any): Boolean = other match {
+        case that: Key => (owner eq that.owner) && kind == that.kind
+        case _ => false
+      }
+    }
+
+    private val entries = new java.util.concurrent.ConcurrentHashMap[Key, (Seq[String], Index)]
+
+    def apply(owner: AnyRef, kind: String, names: Seq[String]): Index = {
+      val key = new Key(owner, kind)
+      val cached = entries.get(key)
+      if (cached != null && cached._1 == names) return cached._2
+      val index = new Index(names)
+      entries.put(key, (names, index))
+      index
+    }
+  }
+
+  /** The best `limit` candidates by distance, then length, then candidate order. */
+  private final class Best(limit: Int) {
+    private val found = scala.collection.mutable.ArrayBuffer[(String, Int, Int)]()
 
-    candidates
-      .map(c => (c, levenshteinDistance(name.toLowerCase, c.toLowerCase)))
-      .filter { case (_, d) => d <= maxDistance && d > 0 }
-      .sortBy { case (c, d) => (d, c.length) }
-      .take(maxResults)
-      .map(_._1)
+    private def better(a: (String, Int, Int), b: (String, Int, Int)): Boolean =
+      if (a._2 != b._2) a._2 < b._2
+      else if (a._1.length != b._1.length) a._1.length < b._1.length
+      else a._3 < b._3
+
+    def offer(candidate: String, distance: Int, order: Int): Unit = {
+      if (limit <= 0) return
+      val entry = (candidate, distance, order)
+      var i = found.length
+      while (i > 0 && better(entry, found(i - 1))) i -= 1
+      if (i < limit) {
+        found.insert(i, entry)
+        if (found.length > limit) found.remove(limit)
+      }
+    }
+
+    def result: Seq[String] = found.map(_._1).toSeq
+  }
+
+  /**
+   * Case-insensitive edit distance of `s1` and `s2`, or some value above
+   * `limit` as soon as the distance is known to exceed it.
+   */
+  private def boundedDistance(s1: String, s2: String, limit: Int): Int = {
+    val m = s1.length
+    val n = s2.length
+    if (math.abs(m - n) > limit) return limit + 1
+    if (m == 0) return n
+    if (n == 0) return m
+
+    var prevRow = Array.tabulate(n + 1)(identity)
+    var currRow = new Array[Int](n + 1)
+    var i = 1
+    while (i <= m) {
+      currRow(0) = i
+      var rowMin = i
+      val c1 = Character.toLowerCase(s1.charAt(i - 1))
+      var j = 1
+      while (j <= n) {
+        val cost = if (c1 == Character.toLowerCase(s2.charAt(j - 1))) 0 else 1
+        val value = math.min(math.min(prevRow(j) + 1, currRow(j - 1) + 1), prevRow(j - 1) + cost)
+        currRow(j) = value
+        if (value < rowMin) rowMin = value
+        j += 1
+      }
+      if (rowMin > limit) return limit + 1
+      val temp = prevRow
+      prevRow = currRow
+      currRow = temp
+      i += 1
+    }
+    prevRow(n)
   }
 
   /**
@@ -98,4 +230,10 @@ object Suggestions {
       Message("suggestion.didYouMean", similar)
     }
   }
+
+  /** Format a suggestion message from an [[Index]] of candidates. */
+  def formatSuggestion(name: String, index: Index): Option[String] =
+    index.findSimilar(name).map { similar =>
+      Message("suggestion.didYouMean", similar)
+    }
 }
@@ -19,7 +19,7 @@ private[compiler] object AppliedTypeViews {
         case ap: TypedAST.AppliedClassType =>
           val specializedArgs =
             ap.typeArguments.map(arg => TypeSubstitution.substituteType(arg, subst, scala.collection.immutable.Map.empty, defaultToBound = false))
-          val specialized = TypedAST.AppliedClassType(ap.raw, specializedArgs.toList)
+          val specialized = TypedAST.AppliedClassType(ap.raw, specializedArgs)
           val k = keyOf(specialized)
           if visited.contains(k) then return
           visited += k
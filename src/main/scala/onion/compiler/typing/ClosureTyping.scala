@@ -132,6 +132,9 @@ final class ClosureTyping(private val typing: Typing, private val body: TypingBo
                     else body.addReturnNode(block, expectedRet)
                   val result = new NewClosure(typeRef, typedMethod, finalBlock)
                   result.frame_=(context.getContextFrame)
+                  if (name == "call") {
+                    result.specialized = FunctionSpecialization.interfaceName(typeRef).map(load).orNull
+                  }
                   Some(result)
                 }
               }
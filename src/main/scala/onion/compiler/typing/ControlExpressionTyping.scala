@@ -192,11 +192,18 @@ final class ControlExpressionTyping(private val typing: Typing, private val body
     val caseBindingData = Buffer[(PatternBindingInfo, List[ClosureLocalBinding], Option[GuardInfo])]()
     val matchedTypes = Buffer[Type]() // Track matched types for exhaustiveness check
     var hasWildcardPattern = false // Track if any pattern has a wildcard
+    // Switch labels of each case, while every case so far only lists constants
+    var switchLabels = Option.when(isSwitchable(condition.`type`))(Buffer[Array[Term]]())
 
     for ((patterns, thenBlock) <- node.cases) {
-      val (cond, bindingInfo, hasWildcard, guardInfo) = processPatterns(patterns.toArray, condition.`type`, bind, context)
+      val constants = Buffer[Term]()
+      val (cond, bindingInfo, hasWildcard, guardInfo) = processPatterns(patterns.toArray, condition.`type`, bind, context, constants)
       if (hasWildcard) hasWildcardPattern = true
       if (cond == null) break(None)
+      val labels = constants.flatMap(switchLabel(_, condition.`type`))
+      switchLabels =
+        if (guardInfo.isEmpty && labels.length == patterns.length) switchLabels.map(_ += labels.toArray)
+        else None
 
       // Combine base condition with nested conditions if any
       val combinedCond = bindingInfo match {
@@ -334,70 +341,147 @@ final class ControlExpressionTyping(private val typing: Typing, private val body
         assignBranch(node.elseBlock, elseTerm, resultVar, resultType)
       }
 
+    def caseStatement(caseIndex: Int): ActionStatement = {
+      val term = caseTerms(caseIndex)
+      if (resultVar == null) termToStatement(caseNodes(caseIndex), term)
+      else assignBranch(caseNodes(caseIndex), term, resultVar, resultType)
+    }
+
+    // The statements binding the variables of a case whose pattern matched
+    def caseBindings(caseIndex: Int): Seq[ActionStatement] = {
+      val (bindingInfo, varBinds, _) = caseBindingData(caseIndex)
+      bindingInfo match {
+        case SingleBinding(_, varType) =>
+          val varBind = varBinds.head
+          val cast = new AsInstanceOf(new RefLocal(bind), varType)
+          Seq(new ExpressionActionStatement(new SetLocal(varBind, cast)))
+
+        case MultiBindings(recordType, bindings, nestedConditions) =>
+          val castValue = new AsInstanceOf(new RefLocal(bind), recordType)
+          val castVar = new ClosureLocalBinding(0, context.add(context.newName, recordType, isMutable = false), recordType, isMutable = false)
+          val setCast = new ExpressionActionStatement(new SetLocal(castVar, castValue))
+
+          // Build accessor for each binding following the access path
+          def buildAccessor(base: Term, path: List[AccessStep]): Term = path match {
+            case Nil => base
+            case AccessStep(castType, getter) :: rest =>
+              val cast = new AsInstanceOf(base, castType)
+              if (getter == null) buildAccessor(cast, rest)
+              else {
+                val call = new Call(cast, getter, Array.empty)
+                buildAccessor(call, rest)
+              }
+          }
+
+          val bindingStmts = varBinds.zip(bindings).map { case (varBind, BindingEntry(_, _, accessPath)) =>
+            val accessor = buildAccessor(new RefLocal(bind), accessPath)
+            new ExpressionActionStatement(new SetLocal(varBind, accessor))
+          }
+          setCast +: bindingStmts.toSeq
+
+        case NoBindings => Seq()
+      }
+    }
+
+    def guardTerm(caseIndex: Int): Option[Term] = caseBindingData(caseIndex)._3.collect {
+      case GuardInfo(_, guardTerm) if guardTerm != null => guardTerm
+    }
+
+    def nestedCondition(caseIndex: Int): Option[Term] = caseBindingData(caseIndex)._1 match {
+      case MultiBindings(_, _, nestedConds) if nestedConds.nonEmpty =>
+        Some(nestedConds.reduceLeft[Term]((acc, cond) => new BinaryTerm(LOGICAL_AND, BasicType.BOOLEAN, acc, cond)))
+      case _ => None
+    }
+
+    // The body of a case whose pattern matched: set up its bindings, then check
+    // its guard, running `restOfCases` if the guard fails
+    def caseBody(caseIndex: Int, restOfCases: => ActionStatement): ActionStatement = {
+      val baseStmt = caseStatement(caseIndex)
+
+      // Build the inner body (after bindings are set up)
+      val innerBody: ActionStatement = guardTerm(caseIndex) match {
+        case Some(guard) =>
+          // Guard check: if guard passes, execute body; else fall through to remaining cases
+          new IfStatement(guard, baseStmt, restOfCases)
+        case None =>
+          baseStmt
+      }
+
+      caseBindings(caseIndex) match {
+        case Seq() => innerBody
+        case bindings => new StatementBlock(caseNodes(caseIndex).location, (bindings :+ innerBody)*)
+      }
+    }
+
     // Build case statements using nested if-else structure
     // Guards are checked AFTER bindings are set up, with fall-through to remaining cases on guard failure
     def buildCaseBranches(caseIndex: Int, fallback: ActionStatement): ActionStatement = {
       if (caseIndex >= caseTerms.length) {
         fallback
       } else {
-        val term = caseTerms(caseIndex)
-        val baseStmt = if (resultVar == null) termToStatement(caseNodes(caseIndex), term)
-                       else assignBranch(caseNodes(caseIndex), term, resultVar, resultType)
-
-        val (bindingInfo, varBinds, guardInfo) = caseBindingData(caseIndex)
-
-        // Build the inner body (after bindings are set up)
-        val innerBody: ActionStatement = guardInfo match {
-          case Some(GuardInfo(_, guardTerm)) if guardTerm != null =>
-            // Guard check: if guard passes, execute body; else fall through to remaining cases
-            val restOfCases = buildCaseBranches(caseIndex + 1, fallback)
-            new IfStatement(guardTerm, baseStmt, restOfCases)
-          case _ =>
-            baseStmt
-        }
-
-        val caseBody: ActionStatement = bindingInfo match {
-          case SingleBinding(_, varType) =>
-            val varBind = varBinds.head
-            val cast = new AsInstanceOf(new RefLocal(bind), varType)
-            val setVar = new ExpressionActionStatement(new SetLocal(varBind, cast))
-            new StatementBlock(caseNodes(caseIndex).location, setVar, innerBody)
-
-          case MultiBindings(recordType, bindings, nestedConditions) =>
-            val castValue = new AsInstanceOf(new RefLocal(bind), recordType)
-            val castVar = new ClosureLocalBinding(0, context.add(context.newName, recordType, isMutable = false), recordType, isMutable = false)
-            val setCast = new ExpressionActionStatement(new SetLocal(castVar, castValue))
-
-            // Build accessor for each binding following the access path
-            def buildAccessor(base: Term, path: List[AccessStep]): Term = path match {
-              case Nil => base
-              case AccessStep(castType, getter) :: rest =>
-                val cast = new AsInstanceOf(base, castType)
-                if (getter == null) buildAccessor(cast, rest)
-                else {
-                  val call = new Call(cast, getter, Array.empty)
-                  buildAccessor(call, rest)
-                }
-            }
+        // Build: if (patternCond) { caseBody } else { restOfCases }
+        val body = caseBody(caseIndex, buildCaseBranches(caseIndex + 1, fallback))
+        new IfStatement(caseConditions(caseIndex), body, buildCaseBranches(caseIndex + 1, fallback))
+      }
+    }
 
-            val bindingStmts = varBinds.zip(bindings).map { case (varBind, BindingEntry(_, _, accessPath)) =>
-              val accessor = buildAccessor(new RefLocal(bind), accessPath)
-              new ExpressionActionStatement(new SetLocal(varBind, accessor))
-            }
-            new StatementBlock(caseNodes(caseIndex).location, (setCast +: bindingStmts :+ innerBody)*)
+    def caseOf(i: Int, statement: ActionStatement) = new SwitchStatement.Case(Array[Term](new IntValue(i)), statement)
 
-          case NoBindings => innerBody
-        }
+    // Select the first case matching the type of the condition through one type switch
+    def buildTypeSwitch(labels: Array[ClassType], fallback: ActionStatement): ActionStatement = {
+      val location = node.location
+      if (caseTerms.indices.forall(i => guardTerm(i).isEmpty && nestedCondition(i).isEmpty)) {
+        val cases = caseTerms.indices.map(i => caseOf(i, caseBody(i, fallback))).toArray
+        new SwitchStatement(location, new TypeSwitch(location, new RefLocal(bind), labels, new IntValue(0)), cases, fallback)
+      } else {
+        restartingTypeSwitch(labels, fallback)
+      }
+    }
 
-        // Build: if (patternCond) { caseBody } else { restOfCases }
-        val restOfCases = buildCaseBranches(caseIndex + 1, fallback)
-        new IfStatement(caseConditions(caseIndex), caseBody, restOfCases)
+    // When a guard or nested pattern can reject a case, the switch runs in a loop that
+    // restarts it after the rejected case, like javac does, and records the accepted one;
+    // each case body is then emitted once, in a second switch on the accepted case
+    def restartingTypeSwitch(labels: Array[ClassType], fallback: ActionStatement): ActionStatement = {
+      val location = node.location
+      def intLocal(): ClosureLocalBinding =
+        new ClosureLocalBinding(0, context.add(context.newName, BasicType.INT, isMutable = true), BasicType.INT, isMutable = true)
+      def assign(local: ClosureLocalBinding, value: Int): ActionStatement =
+        new ExpressionActionStatement(new SetLocal(local, new IntValue(value)))
+      val restart = intLocal()
+      val selected = intLocal()
+
+      val selection = caseTerms.indices.map { i =>
+        val retry = assign(restart, i + 1)
+        val accept = assign(selected, i)
+        val checked = guardTerm(i).fold(accept)(guard => new IfStatement(guard, accept, retry))
+        val bound = new StatementBlock(caseNodes(i).location, (caseBindings(i) :+ checked)*)
+        val statement = nestedCondition(i).fold[ActionStatement](bound)(nested => new IfStatement(nested, bound, retry))
+        caseOf(i, statement)
+      }.toArray
+      val matched = new TypeSwitch(location, new RefLocal(bind), labels, new RefLocal(restart))
+      val notSelected = new BinaryTerm(LESS_THAN, BasicType.BOOLEAN, new RefLocal(selected), new IntValue(0))
+      val loop = new ConditionalLoop(location, notSelected, new SwitchStatement(location, matched, selection, assign(selected, caseTerms.length)))
+
+      // Bindings are assigned in the loop and read after it, so give them a value on every path
+      val defaults = caseBindingData.toSeq.flatMap(_._2).map { varBind =>
+        new ExpressionActionStatement(new SetLocal(varBind, body.defaultValue(varBind.tp)))
       }
+      val cases = caseTerms.indices.map(i => caseOf(i, caseStatement(i))).toArray
+      val dispatch = new SwitchStatement(location, new RefLocal(selected), cases, fallback)
+      new StatementBlock(location, (defaults ++ Seq(assign(restart, 0), assign(selected, -1), loop, dispatch))*)
     }
 
-    val branches: ActionStatement = {
-      val fallback = if (elseStatement == null && caseTerms.isEmpty) new NOP(node.location) else elseStatement
-      buildCaseBranches(0, fallback)
+    val branches: ActionStatement = switchLabels match {
+      case Some(labels) if labels.nonEmpty =>
+        // Cases listing only constants dispatch in one step instead of testing each case in turn
+        val cases = labels.indices.map(i => new SwitchStatement.Case(labels(i), caseStatement(i))).toArray
+        new SwitchStatement(node.location, new RefLocal(bind), cases, elseStatement)
+      case _ =>
+        val fallback = if (elseStatement == null && caseTerms.isEmpty) new NOP(node.location) else elseStatement
+        typeSwitchLabels(condition.`type`, node.cases.map(_._1), caseBindingData.map(_._1).toSeq) match {
+          case Some(labels) => buildTypeSwitch(labels, fallback)
+          case None => buildCaseBranches(0, fallback)
+        }
     }
 
     val init = new ExpressionActionStatement(new SetLocal(0, index, condition.`type`, condition))
@@ -531,8 +615,77 @@ final class ControlExpressionTyping(private val typing: Typing, private val body
     Some((instanceOfCheck, bindingInfo))
   }
 
+  /**
+   * The class each case tests for, when the select can find its case with a
+   * type switch: the class files target Java 21, the condition is a reference
+   * and every case is a single (possibly guarded) type or destructuring pattern.
+   */
+  private def typeSwitchLabels(conditionType: Type, patterns: Seq[Seq[AST.Pattern]], bindings: Seq[PatternBindingInfo]): Option[Array[ClassType]] = {
+    if (release < 21 || patterns.isEmpty || !conditionType.isObjectType) return None
+    val labels = patterns.zip(bindings).map {
+      case (Seq(pattern), binding) =>
+        val unguarded = pattern match {
+          case AST.GuardedPattern(_, inner, _) => inner
+          case other => other
+        }
+        (unguarded, binding) match {
+          case (_: AST.TypePattern, SingleBinding(_, classType: ClassType)) => Some(classType)
+          case (_: AST.DestructuringPattern, MultiBindings(recordType, _, _)) => Some(recordType)
+          case _ => None
+        }
+      case _ => None
+    }
+    if (labels.forall(_.isDefined)) Some(labels.flatten.toArray) else None
+  }
+
+  /**
+   * Whether a select on `conditionType` can be compiled to a switch: int-like
+   * primitives, strings and enums defined in Onion, whose constants are known
+   * to be named like their fields.
+   */
+  private def isSwitchable(conditionType: Type): Boolean = conditionType match {
+    case BasicType.INT | BasicType.CHAR | BasicType.SHORT | BasicType.BYTE => true
+    case classType: ClassType if classType.name == "java.lang.String" => true
+    case definition: ClassDefinition => Modifier.isEnum(definition.modifier)
+    case _ => false
+  }
+
+  /** The switch label for a pattern constant, or None if `constant` is not a constant of `conditionType`. */
+  private def switchLabel(constant: Term, conditionType: Type): Option[Term] = (conditionType, constant) match {
+    case (basic: BasicType, _) =>
+      intConstant(constant).map { value =>
+        val converted = basic match {
+          case BasicType.CHAR => value.toChar.toInt
+          case BasicType.SHORT => value.toShort.toInt
+          case BasicType.BYTE => value.toByte.toInt
+          case _ => value
+        }
+        new IntValue(constant.location, converted)
+      }
+    case (classType: ClassType, string: StringValue) if classType.name == "java.lang.String" =>
+      Some(string)
+    case (definition: ClassDefinition, field: RefStaticField) =>
+      val isConstant = (field.target eq definition) && (field.`type` eq definition) &&
+        Modifier.isStatic(field.field.modifier) && Modifier.isFinal(field.field.modifier)
+      Option.when(isConstant)(field)
+    case _ =>
+      None
+  }
+
+  private def intConstant(term: Term): Option[Int] = term match {
+    case value: IntValue => Some(value.value)
+    case value: CharacterValue => Some(value.value.toInt)
+    case value: ShortValue => Some(value.value.toInt)
+    case value: ByteValue => Some(value.value.toInt)
+    case unary: UnaryTerm if unary.kind == UnaryTerm.Kind.MINUS => intConstant(unary.operand).map(-_)
+    case cast: AsInstanceOf => intConstant(cast.target)
+    case _ => None
+  }
+
   /** Returns (condition, pattern binding info, hasWildcard, optional guard info) */
-  private def processPatterns(patterns: Array[AST.Pattern], conditionType: Type, bind: ClosureLocalBinding, context: LocalContext): (Term, PatternBindingInfo, Boolean, Option[GuardInfo]) = boundary {
+  private def processPatterns(
+    patterns: Array[AST.Pattern], conditionType: Type, bind: ClosureLocalBinding, context: LocalContext, constants: Buffer[Term] = null
+  ): (Term, PatternBindingInfo, Boolean, Option[GuardInfo]) = boundary {
     var bindingInfo: PatternBindingInfo = NoBindings
     var hasWildcard = false
     var guardInfo: Option[GuardInfo] = None
@@ -553,6 +706,7 @@ final class ControlExpressionTyping(private val typing: Typing, private val body
           report(INCOMPATIBLE_TYPE, expr, conditionType, e.`type`)
           break((null, NoBindings, false, None))
         }
+        if (constants != null) constants += e
 
         val normalizedExpr =
           if (e.isBasicType && e.`type` != conditionType) new AsInstanceOf(e, conditionType)
@@ -5,10 +5,6 @@ import onion.compiler.SemanticError.*
 import onion.compiler.TypedAST.*
 import onion.compiler.toolbox.Boxing
 
-import java.util.{TreeSet => JTreeSet}
-
-import scala.jdk.CollectionConverters.*
-
 /** Well-known method names used in method resolution */
 private object MethodNames {
   val LENGTH = "length"
@@ -112,23 +108,9 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
     else
       Some(GenericMethodTypeArguments.infer(typing, node, method, params, classSubst, expected))
 
-  /** Collects methods matching the filter from a type hierarchy into candidates set */
-  private def collectMethodsMatching(
-    tp: ObjectType,
-    name: String,
-    candidates: JTreeSet[Method],
-    filter: Method => Boolean
-  ): Unit = {
-    def collect(t: ObjectType): Unit = {
-      if (t == null) return
-      t.methods(name).foreach { m =>
-        if (filter(m)) candidates.add(m)
-      }
-      collect(t.superClass)
-      t.interfaces.foreach(collect)
-    }
-    collect(tp)
-  }
+  /** Methods of a type hierarchy (see [[ObjectType.allMethods]]) matching the filter */
+  private def collectMethodsMatching(tp: ObjectType, name: String, filter: Method => Boolean): Array[Method] =
+    tp.allMethods(name).filter(filter)
 
   /** Filter for instance (non-static) methods */
   private def isInstanceMethod(m: Method): Boolean = (m.modifier & AST.M_STATIC) == 0
@@ -147,8 +129,8 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
   }
 
   /** Filter methods by named argument compatibility */
-  private def filterByNamedArgs(candidates: JTreeSet[Method], info: NamedArgInfo): List[Method] =
-    candidates.asScala.filter { method =>
+  private def filterByNamedArgs(candidates: Array[Method], info: NamedArgInfo): List[Method] =
+    candidates.filter { method =>
       val paramNames = method.argumentsWithDefaults.map(_.name).toSet
       info.namedArgNames.subsetOf(paramNames) && info.positionalCount <= method.arguments.length
     }.toList
@@ -339,7 +321,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
       val methodName = methodNames(methodIndex)
       tryFindMethod(node, targetType, methodName, Array.empty) match {
         case Right(method) =>
-          val call = new Call(target, method, Array.empty)
+          val call = new Call(node.location, target, method, Array.empty)
           return TypeSubst.withCastOpt(call, TypeSubst.withClassOnly(method.returnType, target.`type`))
         case Left(false) => return None
         case Left(true) =>
@@ -435,7 +417,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
           expectedArgs = TypeSubst.args(method, classSubst, methodSubst)
           finalParams <- prepareCallParams(node, node.args, method, params, expectedArgs)
         } yield {
-          val call = new Call(target, method, finalParams)
+          val call = new Call(node.location, target, method, finalParams)
           val castType = TypeSubst(method.returnType, classSubst, methodSubst)
           TypeSubst.withCast(call, castType)
         }
@@ -509,7 +491,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
       expectedArgs = TypeSubst.args(staticMethod, classSubst, methodSubst)
       processedParams <- processParamsWithExpected(node, staticArgs, expectedArgs)
     } yield {
-      val call = new CallStatic(containerClass, staticMethod, processedParams)
+      val call = new CallStatic(node.location, containerClass, staticMethod, processedParams)
       val castType = TypeSubst(staticMethod.returnType, classSubst, methodSubst)
       TypeSubst.withCast(call, castType)
     }
@@ -591,8 +573,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
 
     // Phase 2: Find candidate methods using non-closure arguments
     // We need to find methods that could potentially match
-    val candidates = new JTreeSet[Method](new MethodComparator)
-    collectMethodsMatching(targetType, name, candidates, isInstanceMethod)
+    val candidates = collectMethodsMatching(targetType, name, isInstanceMethod)
 
     if (candidates.isEmpty) {
       report(METHOD_NOT_FOUND, node, targetType, name, Array[Type]())
@@ -604,7 +585,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
       case (term, i) if term != null => (i, term.`type`)
     }.toMap
 
-    val applicableMethods = candidates.asScala.filter { method =>
+    val applicableMethods = candidates.filter { method =>
       val methodArgCount = method.arguments.length
       val argsCount = args.length
 
@@ -689,7 +670,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
     for {
       finalProcessedParams <- prepareCallParams(node, node.args, method, finalParams, finalExpectedArgs)
     } yield {
-      val call = new Call(target, method, finalProcessedParams)
+      val call = new Call(node.location, target, method, finalProcessedParams)
       val castType = TypeSubst(method.returnType, classSubst, finalMethodSubst)
       TypeSubst.withCast(call, castType)
     }
@@ -699,8 +680,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
     val name = node.name
 
     // 名前付き引数がある場合は、全てのメソッドから名前でフィルタリング
-    val candidates = new JTreeSet[Method](new MethodComparator)
-    collectMethodsMatching(targetType, name, candidates, isInstanceMethod)
+    val candidates = collectMethodsMatching(targetType, name, isInstanceMethod)
     if (candidates.isEmpty) {
       report(METHOD_NOT_FOUND, node, targetType, name, Array[Type]())
       return None
@@ -731,7 +711,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
         expectedArgs = TypeSubst.args(method, classSubst, methodSubst)
         processedParams <- processParamsWithExpected(node, params, expectedArgs)
       } yield {
-        val call = new Call(target, method, processedParams)
+        val call = new Call(node.location, target, method, processedParams)
         val castType = TypeSubst(method.returnType, classSubst, methodSubst)
         TypeSubst.withCast(call, castType)
       }
@@ -739,6 +719,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
   }
 
   private def buildUnqualifiedCall(
+    location: Location,
     targetType: ClassType,
     method: Method,
     params: Array[Term],
@@ -748,11 +729,11 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
   ): Term = {
     val call =
       if ((method.modifier & AST.M_STATIC) != 0) {
-        new CallStatic(targetType, method, params)
+        new CallStatic(location, targetType, method, params)
       } else if (context.isClosure) {
-        new Call(new OuterThis(targetType), method, params)
+        new Call(location, new OuterThis(targetType), method, params)
       } else {
-        new Call(new This(targetType), method, params)
+        new Call(location, new This(targetType), method, params)
       }
     val castType = TypeSubst(method.returnType, classSubst, methodSubst)
     TypeSubst.withCast(call, castType)
@@ -793,7 +774,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
         methodSubst <- resolveMethodTypeArgs(node, method, params, node.typeArgs, classSubst, expected)
         expectedArgs = TypeSubst.args(method, classSubst, methodSubst)
         finalParams <- prepareCallParams(node, node.args, method, params, expectedArgs)
-      } yield buildUnqualifiedCall(targetType, method, finalParams, classSubst, methodSubst, context)
+      } yield buildUnqualifiedCall(node.location, targetType, method, finalParams, classSubst, methodSubst, context)
     }
   }
 
@@ -836,8 +817,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
     val targetType = definition_
 
     // 名前付き引数がある場合は、全てのメソッドから名前でフィルタリング
-    val candidates = new JTreeSet[Method](new MethodComparator)
-    collectMethodsMatching(targetType, node.name, candidates, _ => true)
+    val candidates = collectMethodsMatching(targetType, node.name, _ => true)
     if (candidates.isEmpty) {
       report(METHOD_NOT_FOUND, node, targetType, node.name, Array[Type]())
       return None
@@ -867,7 +847,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
         methodSubst <- resolveMethodTypeArgs(node, method, params, node.typeArgs, classSubst, expected)
         expectedArgs = TypeSubst.args(method, classSubst, methodSubst)
         processedParams <- processParamsWithExpected(node, params, expectedArgs)
-      } yield buildUnqualifiedCall(targetType, method, processedParams, classSubst, methodSubst, context)
+      } yield buildUnqualifiedCall(node.location, targetType, method, processedParams, classSubst, methodSubst, context)
     }
   }
 
@@ -888,16 +868,13 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
 
     val resolved = scala.collection.mutable.Buffer[StaticImportResolved]()
     var ambiguous: Option[StaticImportAmbiguous] = None
-    staticImportedList_.getItems.foreach { item =>
-      val typeRef = load(item.getName)
-      if (typeRef != null) {
-        resolveStaticImportOnType(node, typeRef, params, expected, mappedTypeArgs) match {
-          case found: StaticImportResolved =>
-            resolved += found
-          case amb: StaticImportAmbiguous =>
-            if (ambiguous.isEmpty) ambiguous = Some(amb)
-          case StaticImportNoMatch =>
-        }
+    staticImportedList_.methodsNamed(node.name, table_).foreach { candidates =>
+      resolveStaticImportOnType(node, candidates.owner, candidates.methods, params, expected, mappedTypeArgs) match {
+        case found: StaticImportResolved =>
+          resolved += found
+        case amb: StaticImportAmbiguous =>
+          if (ambiguous.isEmpty) ambiguous = Some(amb)
+        case StaticImportNoMatch =>
       }
     }
 
@@ -920,16 +897,14 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
   private def resolveStaticImportOnType(
     node: AST.UnqualifiedMethodCall,
     typeRef: ClassType,
+    candidates: Array[Method],
     params: Array[Term],
     expected: Type,
     mappedTypeArgs: Option[Array[Type]]
   ): StaticImportResolution = {
-    val name = node.name
-    val candidates = new JTreeSet[Method](new MethodComparator)
-    collectMethodsMatching(typeRef, name, candidates, isStaticMethod)
     if (candidates.isEmpty) return StaticImportNoMatch
 
-    val applicable = candidates.asScala.flatMap { method =>
+    val applicable = candidates.flatMap { method =>
       val classSubst = TypeSubstitution.classSubstitution(typeRef)
       val methodSubstOpt = mappedTypeArgs match {
         case Some(mapped) =>
@@ -965,7 +940,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
         val adjusted = params.indices.map(i => processAssignable(node.args(i), chosen.expectedArgs(i), params(i))).toArray
         if (adjusted.contains(null)) StaticImportNoMatch
         else {
-          buildStaticCall(typeRef, chosen.method, adjusted, classSubst, chosen.methodSubst) match {
+          buildStaticCall(node.location, typeRef, chosen.method, adjusted, classSubst, chosen.methodSubst) match {
             case Some(term) => StaticImportResolved(chosen.method, term)
             case None => StaticImportNoMatch
           }
@@ -1000,6 +975,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
     }.map(_.toArray)
 
   private def buildStaticCall(
+    location: Location,
     typeRef: ClassType,
     method: Method,
     params: Array[Term],
@@ -1008,7 +984,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
   ): Option[Term] = {
     // デフォルト引数で足りない分を補完
     fillDefaultArguments(params, method).map { finalParams =>
-      val call = new CallStatic(typeRef, method, finalParams)
+      val call = new CallStatic(location, typeRef, method, finalParams)
       val castType = TypeSubst(method.returnType, classSubst, methodSubst)
       TypeSubst.withCast(call, castType)
     }
@@ -1037,6 +1013,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
 
   /** Create a CallStatic with type substitution and optional cast */
   private def makeStaticCall(
+    location: Location,
     typeRef: ClassType,
     method: Method,
     parameters: Array[Term],
@@ -1053,7 +1030,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
       if (method.isVararg) Some(wrappedParams)
       else fillDefaultArguments(wrappedParams, method)
     finalParamsOpt.map { finalParams =>
-      val call = new CallStatic(typeRef, method, finalParams)
+      val call = new CallStatic(location, typeRef, method, finalParams)
       val castType = TypeSubst(method.returnType, classSubst, methodSubst)
       TypeSubst.withCast(call, castType)
     }
@@ -1086,12 +1063,11 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
             methodSubst <- GenericMethodTypeArguments.explicit(typing, node, method, node.typeArgs, classSubst)
             expectedArgs = TypeSubst.args(method, classSubst, methodSubst)
             _ <- if (method.isVararg) Some(()) else processParamsWithArgs(node.args, parameters, expectedArgs).map(_ => ())
-            term <- makeStaticCall(typeRef, method, parameters, classSubst, methodSubst)
+            term <- makeStaticCall(node.location, typeRef, method, parameters, classSubst, methodSubst)
           } yield term
         }
       } else {
-        val candidates = new JTreeSet[Method](new MethodComparator)
-        collectMethodsMatching(typeRef, node.name, candidates, isStaticMethod)
+        val candidates = collectMethodsMatching(typeRef, node.name, isStaticMethod)
         if (candidates.isEmpty) {
           report(METHOD_NOT_FOUND, node, typeRef, node.name, types(parameters))
           return None
@@ -1099,7 +1075,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
 
         final case class Applicable(method: Method, expectedArgs: Array[Type], methodSubst: scala.collection.immutable.Map[String, Type])
 
-        val applicable = candidates.asScala.flatMap { method =>
+        val applicable = candidates.flatMap { method =>
           val classSubst = TypeSubstitution.classSubstitution(typeRef)
           val methodSubst = GenericMethodTypeArguments.infer(typing, node, method, parameters, classSubst, expected)
           val expectedArgs = TypeSubst.args(method, classSubst, methodSubst)
@@ -1148,7 +1124,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
             if (selected.method.isVararg) Some(()) else processParamsWithArgs(node.args, parameters, selected.expectedArgs).map(_ => ())
           for {
             _ <- paramCheck
-            term <- makeStaticCall(typeRef, selected.method, parameters, classSubst, selected.methodSubst)
+            term <- makeStaticCall(node.location, typeRef, selected.method, parameters, classSubst, selected.methodSubst)
           } yield term
         }
 
@@ -1177,9 +1153,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
   }
 
   private def typeStaticMethodCallWithNamedArgs(node: AST.StaticMethodCall, typeRef: ClassType, context: LocalContext, expected: Type): Option[Term] = {
-    val candidates = new JTreeSet[Method](new MethodComparator)
-
-    collectMethodsMatching(typeRef, node.name, candidates, isStaticMethod)
+    val candidates = collectMethodsMatching(typeRef, node.name, isStaticMethod)
     if (candidates.isEmpty) {
       report(METHOD_NOT_FOUND, node, typeRef, node.name, Array[Type]())
       return None
@@ -1205,7 +1179,7 @@ final class MethodCallTyping(private val typing: Typing, private val body: Typin
         expectedArgs = TypeSubst.args(method, classSubst, methodSubst)
         processedParams <- processParamsWithExpected(node, params, expectedArgs)
       } yield {
-        val call = new CallStatic(typeRef, method, processedParams)
+        val call = new CallStatic(node.location, typeRef, method, processedParams)
         val castType = TypeSubst(method.returnType, classSubst, methodSubst)
         TypeSubst.withCast(call, castType)
       }
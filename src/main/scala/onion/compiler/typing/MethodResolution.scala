@@ -10,8 +10,6 @@ package onion.compiler.typing
 import onion.compiler.TypedAST.*
 import onion.compiler.{ClassTable, toolbox}
 
-import java.util.{TreeSet => JTreeSet}
-
 import scala.jdk.CollectionConverters.*
 import scala.collection.mutable.HashMap
 
@@ -83,13 +81,49 @@ private[compiler] object MethodResolution {
    * @return Array of applicable methods (0 if none found, 1 if unique, 2+ if ambiguous)
    */
   def findMethods(target: ObjectType, name: String, params: Array[Term], table: ClassTable): Array[Method] =
-    target match
+    if table.profile != null then table.profile.methodResolved()
+    val argumentTypes = params.map(_.`type`)
+    val key = new Resolutions.Key(target, name, argumentTypes)
+    val cached = table.resolutions.get(key)
+    if cached != null && cached.isCurrent then return cached.methods.clone()
+    val stamp = Stamp(table.revision)
+    val methods = target match
       case ct: ClassType =>
         val views = AppliedTypeViews.collectAppliedViewsFrom(ct)
         if views.isEmpty then target.findMethod(name, params)
         else findMethodsWithViews(ct, name, params, views, table)
       case _ =>
         target.findMethod(name, params)
+    table.resolutions.put(key, new Resolutions.Entry(methods.clone(), stamp))
+    methods
+
+  /**
+   * Memoized results of [[findMethods]], kept per class table.  Resolution
+   * only looks at the types of the arguments, so receiver type, name and
+   * argument types make the key; types are compared by identity, which is
+   * what interning (see [[AppliedClassType]]) and the class table make
+   * reliable.  A result is dropped once a source class of the table changes.
+   */
+  final class Resolutions:
+    private val entries = new java.util.concurrent.ConcurrentHashMap[Resolutions.Key, Resolutions.Entry]
+
+    def get(key: Resolutions.Key): Resolutions.Entry = entries.get(key)
+
+    def put(key: Resolutions.Key, entry: Resolutions.Entry): Unit = entries.put(key, entry)
+
+  object Resolutions:
+    final class Key(val target: ObjectType, val name: String, val argumentTypes: Array[Type]):
+      override val hashCode: Int =
+        (System.identityHashCode(target) * 31 + name.hashCode) * 31 +
+          java.util.Arrays.hashCode(argumentTypes.asInstanceOf[Array[AnyRef]])
+
+      override def equals(other: Any): Boolean = other match
+        case that: Key =>
+          (target eq that.target) && name == that.name && argumentTypes.sameElements(that.argumentTypes)
+        case _ => false
+
+    final class Entry(val methods: Array[Method], stamp: Stamp):
+      def isCurrent: Boolean = stamp.isCurrent
 
   private def findMethodsWithViews(
     target: ObjectType,
@@ -98,15 +132,7 @@ private[compiler] object MethodResolution {
     views: scala.collection.immutable.Map[ClassType, AppliedClassType],
     table: ClassTable
   ): Array[Method] =
-    val candidates = new JTreeSet[Method](new MethodComparator)
-
-    def collectMethods(tp: ObjectType): Unit =
-      if tp == null then return
-      tp.methods(name).foreach(candidates.add)
-      collectMethods(tp.superClass)
-      tp.interfaces.foreach(collectMethods)
-
-    collectMethods(target)
+    val candidates = target.allMethods(name)
     val specializedArgsCache = HashMap[Method, Array[Type]]()
     val methodArgsWithTypeParamsCache = HashMap[Method, Array[Type]]()
     val viewSubstCache = HashMap[ClassType, scala.collection.immutable.Map[String, Type]]()
@@ -313,7 +339,7 @@ private[compiler] object MethodResolution {
         true
       }
 
-    val applicableMethods = candidates.asScala.filter(applicable).toList
+    val applicableMethods = candidates.filter(applicable).toList
     if applicableMethods.isEmpty then return new Array[Method](0)
     if applicableMethods.length == 1 then return Array(applicableMethods.head)
 
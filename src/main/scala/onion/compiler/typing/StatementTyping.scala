@@ -97,43 +97,48 @@ final class StatementTyping(private val typing: Typing, private val body: Typing
           new NOP(node.location)
         } else {
           val elementVar = context.lookupOnlyCurrentScope(arg.name)
-          val collectionVar = new ClosureLocalBinding(0, context.add(context.newName, collection.`type`), collection.`type`, isMutable = true)
-
-          if (collection.isArrayType) {
-            val counterVariable = new ClosureLocalBinding(0, context.add(context.newName, BasicType.INT), BasicType.INT, isMutable = true)
-            val init =
-              new StatementBlock(
-                new ExpressionActionStatement(new SetLocal(collectionVar, collection)),
-                new ExpressionActionStatement(new SetLocal(counterVariable, new IntValue(0)))
-              )
+          rangeArguments(collection) match {
+            case Some((start, end, step)) =>
+              rangeLoop(node, elementVar, start, end, step, block, context)
+            case None if collection.isArrayType =>
+              val collectionVar = new ClosureLocalBinding(0, context.add(context.newName, collection.`type`), collection.`type`, isMutable = true)
+              val counterVariable = new ClosureLocalBinding(0, context.add(context.newName, BasicType.INT), BasicType.INT, isMutable = true)
+              val init =
+                new StatementBlock(
+                  new ExpressionActionStatement(new SetLocal(collectionVar, collection)),
+                  new ExpressionActionStatement(new SetLocal(counterVariable, new IntValue(0)))
+                )
 
-            block =
-              new ConditionalLoop(
-                new BinaryTerm(LESS_THAN, BasicType.BOOLEAN, ref(counterVariable), new ArrayLength(ref(collectionVar))),
+              block =
+                new ConditionalLoop(
+                  new BinaryTerm(LESS_THAN, BasicType.BOOLEAN, ref(counterVariable), new ArrayLength(ref(collectionVar))),
+                  new StatementBlock(
+                    assign(elementVar, indexref(collectionVar, ref(counterVariable))),
+                    block,
+                    assign(counterVariable, new BinaryTerm(ADD, BasicType.INT, ref(counterVariable), new IntValue(1)))
+                  )
+                )
+              new StatementBlock(init, block)
+            case None if isRandomAccessList(collection.`type`) =>
+              indexedListLoop(node, elementVar, collection, block, context)
+            case None =>
+              val collectionVar = new ClosureLocalBinding(0, context.add(context.newName, collection.`type`), collection.`type`, isMutable = true)
+              val iteratorType = load("java.util.Iterator")
+              val iteratorVar = new ClosureLocalBinding(0, context.add(context.newName, iteratorType), iteratorType, isMutable = true)
+              val mIterator = findMethod(node.collection, collection.`type`.asInstanceOf[ObjectType], "iterator")
+              val mNext = findMethod(node.collection, iteratorType, "next")
+              val mHasNext = findMethod(node.collection, iteratorType, "hasNext")
+              val init =
                 new StatementBlock(
-                  assign(elementVar, indexref(collectionVar, ref(counterVariable))),
-                  block,
-                  assign(counterVariable, new BinaryTerm(ADD, BasicType.INT, ref(counterVariable), new IntValue(1)))
+                  new ExpressionActionStatement(new SetLocal(collectionVar, collection)),
+                  assign(iteratorVar, new Call(ref(collectionVar), mIterator, new Array[Term](0)))
                 )
-              )
-            new StatementBlock(init, block)
-          } else {
-            val iteratorType = load("java.util.Iterator")
-            val iteratorVar = new ClosureLocalBinding(0, context.add(context.newName, iteratorType), iteratorType, isMutable = true)
-            val mIterator = findMethod(node.collection, collection.`type`.asInstanceOf[ObjectType], "iterator")
-            val mNext = findMethod(node.collection, iteratorType, "next")
-            val mHasNext = findMethod(node.collection, iteratorType, "hasNext")
-            val init =
-              new StatementBlock(
-                new ExpressionActionStatement(new SetLocal(collectionVar, collection)),
-                assign(iteratorVar, new Call(ref(collectionVar), mIterator, new Array[Term](0)))
-              )
-            var next: Term = new Call(ref(iteratorVar), mNext, new Array[Term](0))
-            if (elementVar.tp != rootClass) {
-              next = new AsInstanceOf(next, elementVar.tp)
-            }
-            block = new ConditionalLoop(new Call(ref(iteratorVar), mHasNext, new Array[Term](0)), new StatementBlock(assign(elementVar, next), block))
-            new StatementBlock(init, block)
+              var next: Term = new Call(ref(iteratorVar), mNext, new Array[Term](0))
+              if (elementVar.tp != rootClass) {
+                next = new AsInstanceOf(next, elementVar.tp)
+              }
+              block = new ConditionalLoop(new Call(ref(iteratorVar), mHasNext, new Array[Term](0)), new StatementBlock(assign(elementVar, next), block))
+              new StatementBlock(init, block)
           }
         }
       }
@@ -335,6 +340,107 @@ final class StatementTyping(private val typing: Typing, private val body: Typing
       }
   }
 
+  /**
+   * Start, end and step (null for `range`) of a `Colls.range` or
+   * `Colls.rangeWithStep` call iterated directly, as int terms.  A step that
+   * is the constant zero is left to the library to reject.
+   */
+  private def rangeArguments(collection: Term): Option[(Term, Term, Term)] = collection match {
+    case call: CallStatic if call.target.name == "onion.Colls" && call.parameters.forall(_.isBasicType) =>
+      val params = call.parameters.map(TypeSubst.withCast(_, BasicType.INT))
+      (call.method.name, params.length) match {
+        case ("range", 2) => Some((params(0), params(1), null))
+        case ("rangeWithStep", 3) if !intConstant(params(2)).contains(0) => Some((params(0), params(1), params(2)))
+        case _ => None
+      }
+    case _ =>
+      None
+  }
+
+  private def intConstant(term: Term): Option[Int] = term match {
+    case value: IntValue => Some(value.value)
+    case unary: UnaryTerm if unary.kind == UnaryTerm.Kind.MINUS => intConstant(unary.operand).map(-_)
+    case _ => None
+  }
+
+  /**
+   * Counts through a range without building its list: the element is the
+   * counter itself, converted (or boxed) to the loop variable's type.  The
+   * counter advances before the body runs, so `continue` cannot skip it.
+   */
+  private def rangeLoop(
+    node: AST.ForeachExpression, elementVar: ClosureLocalBinding, start: Term, end: Term, step: Term, body: ActionStatement, context: LocalContext
+  ): ActionStatement = {
+    def local(): ClosureLocalBinding =
+      new ClosureLocalBinding(0, context.add(context.newName, BasicType.INT), BasicType.INT, isMutable = true)
+    val counter = local()
+    val limit = local()
+    val init = Buffer[ActionStatement](assign(counter, start), assign(limit, end))
+    val stepConstant = if (step == null) Some(1) else intConstant(step)
+    val (increment, condition) = stepConstant match {
+      case Some(constant) =>
+        val comparison = if (constant > 0) LESS_THAN else GREATER_THAN
+        (new IntValue(constant), new BinaryTerm(comparison, BasicType.BOOLEAN, ref(counter), ref(limit)))
+      case None =>
+        val stepVar = local()
+        val requireStep = findMethod(node.collection, load("onion.Colls"), "requireStep", Array(step))
+        init += assign(stepVar, new CallStatic(load("onion.Colls"), requireStep, Array(step)))
+        def positive = new BinaryTerm(GREATER_THAN, BasicType.BOOLEAN, ref(stepVar), new IntValue(0))
+        def negative = new BinaryTerm(LESS_THAN, BasicType.BOOLEAN, ref(stepVar), new IntValue(0))
+        val ascending = new BinaryTerm(LOGICAL_AND, BasicType.BOOLEAN, positive, new BinaryTerm(LESS_THAN, BasicType.BOOLEAN, ref(counter), ref(limit)))
+        val descending = new BinaryTerm(LOGICAL_AND, BasicType.BOOLEAN, negative, new BinaryTerm(GREATER_THAN, BasicType.BOOLEAN, ref(counter), ref(limit)))
+        (ref(stepVar), new BinaryTerm(LOGICAL_OR, BasicType.BOOLEAN, ascending, descending))
+    }
+    val element = elementVar.tp match {
+      case BasicType.INT => ref(counter)
+      case _: BasicType => new AsInstanceOf(ref(counter), elementVar.tp)
+      case tp => TypeSubst.withCast(Boxing.boxing(table_, ref(counter)), tp)
+    }
+    val loop = new ConditionalLoop(
+      condition,
+      new StatementBlock(
+        assign(elementVar, element),
+        assign(counter, new BinaryTerm(ADD, BasicType.INT, ref(counter), increment)),
+        body
+      )
+    )
+    new StatementBlock((init :+ loop).toSeq*)
+  }
+
+  private def isRandomAccessList(tp: Type): Boolean =
+    tp.isObjectType &&
+      TypeRules.isSuperType(load("java.util.List"), tp) &&
+      TypeRules.isSuperType(load("java.util.RandomAccess"), tp)
+
+  /**
+   * Iterates a random-access list by index, without allocating an iterator.
+   * Unlike an iterator, the loop does not fail fast with a
+   * ConcurrentModificationException when the list changes under it: it reads
+   * `size()` before each element, so it sees elements added meanwhile.
+   */
+  private def indexedListLoop(
+    node: AST.ForeachExpression, elementVar: ClosureLocalBinding, collection: Term, body: ActionStatement, context: LocalContext
+  ): ActionStatement = {
+    val listType = collection.`type`.asInstanceOf[ObjectType]
+    val listVar = new ClosureLocalBinding(0, context.add(context.newName, listType), listType, isMutable = true)
+    val counter = new ClosureLocalBinding(0, context.add(context.newName, BasicType.INT), BasicType.INT, isMutable = true)
+    val mSize = findMethod(node.collection, listType, "size")
+    val mGet = findMethod(node.collection, listType, "get", Array(ref(counter)))
+    var element: Term = new Call(ref(listVar), mGet, Array(ref(counter)))
+    if (elementVar.tp != rootClass) {
+      element = new AsInstanceOf(element, elementVar.tp)
+    }
+    val loop = new ConditionalLoop(
+      new BinaryTerm(LESS_THAN, BasicType.BOOLEAN, ref(counter), new Call(ref(listVar), mSize, new Array[Term](0))),
+      new StatementBlock(
+        assign(elementVar, element),
+        assign(counter, new BinaryTerm(ADD, BasicType.INT, ref(counter), new IntValue(1))),
+        body
+      )
+    )
+    new StatementBlock(assign(listVar, collection), assign(counter, new IntValue(0)), loop)
+  }
+
   private def typed(node: AST.Expression, context: LocalContext, expected: Type = null): Option[Term] =
     body.typed(node, context, expected)
 
@@ -353,6 +459,9 @@ final class StatementTyping(private val typing: Typing, private val body: Typing
   private def findMethod(node: AST.Node, target: ObjectType, name: String): Method =
     body.findMethod(node, target, name)
 
+  private def findMethod(node: AST.Node, target: ObjectType, name: String, params: Array[Term]): Method =
+    body.findMethod(node, target, name, params)
+
   private def indexref(bind: ClosureLocalBinding, value: Term): Term =
     new RefArray(new RefLocal(bind), value)
 
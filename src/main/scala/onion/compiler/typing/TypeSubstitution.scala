@@ -97,7 +97,7 @@ private[compiler] object TypeSubstitution {
       case applied: TypedAST.AppliedClassType =>
         val newArgs = applied.typeArguments.map(arg => substituteType(arg, classSubst, methodSubst, defaultToBound))
         if (newArgs.sameElements(applied.typeArguments)) applied
-        else TypedAST.AppliedClassType(applied.raw, newArgs.toList)
+        else TypedAST.AppliedClassType(applied.raw, newArgs)
       case at: ArrayType =>
         val newComponent = substituteType(at.component, classSubst, methodSubst, defaultToBound)
         if (newComponent eq at.component) at
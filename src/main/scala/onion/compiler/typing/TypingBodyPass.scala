@@ -219,7 +219,8 @@ final class TypingBodyPass(private val typing: Typing, private val unit: AST.Com
   private def processMethodLikeBody(
     method: MethodDefinition,
     args: List[AST.Argument],
-    block: AST.BlockExpression
+    block: AST.BlockExpression,
+    isFunction: Boolean = false
   ): Unit = {
     val context = new LocalContext
     if ((method.modifier & AST.M_STATIC) != 0) {
@@ -237,13 +238,31 @@ final class TypingBodyPass(private val typing: Typing, private val unit: AST.Com
     method.setArgumentsWithDefaults(argsWithDefaults)
 
     val translatedBlock = addReturnNode(translate(block, context).asInstanceOf[StatementBlock], method.returnType)
-    method.setBlock(translatedBlock)
+    method.setBlock(eliminateTailCalls(method, translatedBlock, isFunction))
     method.setFrame(context.getContextFrame)
 
     // Report unused variable warnings
     reportUnused(context)
   }
 
+  /**
+   * Eliminates the self tail calls of a method no call on its own receiver
+   * can dispatch away from (top-level functions are never overridden), and
+   * reports a `tailrec` method that calls itself other than in tail position.
+   */
+  private def eliminateTailCalls(method: MethodDefinition, block: StatementBlock, isFunction: Boolean): StatementBlock = {
+    val tailrec = Modifier.isTailrec(method.modifier)
+    if (!isFunction && !TailCalls.isEffectivelyFinal(method)) {
+      if (tailrec) report(TAILREC_METHOD_OVERRIDABLE, method.location, method.name)
+      return block
+    }
+    val (result, remaining) = TailCalls.eliminate(method, block)
+    if (tailrec) remaining.foreach { call =>
+      report(TAILREC_CALL_NOT_IN_TAIL_POSITION, Option(call.location).getOrElse(method.location), method.name)
+    }
+    result
+  }
+
   def processMethodDeclaration(node: AST.MethodDeclaration): Unit = {
     val method = lookupKernelNode(node).asInstanceOf[MethodDefinition]
     if (method == null) return
@@ -382,7 +401,7 @@ final class TypingBodyPass(private val typing: Typing, private val unit: AST.Com
   def processFunctionDeclaration(node: AST.FunctionDeclaration, context: LocalContext): Unit = {
     val function = lookupKernelNode(node).asInstanceOf[MethodDefinition]
     if (function == null) return
-    processMethodLikeBody(function, node.args, node.block)
+    processMethodLikeBody(function, node.args, node.block, isFunction = true)
   }
   private def collectFieldInitializer(
     node: AST.FieldDeclaration,
@@ -587,38 +606,21 @@ final class TypingBodyPass(private val typing: Typing, private val unit: AST.Com
     }
 
   private def typeStringConcatenation(node: AST.Addition, left: Term, right: Term): Option[Term] = {
-    val leftBoxed = boxForConcat(node.lhs, left)
-    val rightBoxed = boxForConcat(node.rhs, right)
-    if (leftBoxed.isEmpty || rightBoxed.isEmpty) return None
-
-    val leftString = toStringCall(node.lhs, leftBoxed.get)
-    val rightString = toStringCall(node.rhs, rightBoxed.get)
-    // Unwrap NullableType to get the inner type for method lookup
-    val leftStringType = leftString.`type` match {
-      case nt: TypedAST.NullableType => nt.innerType.asInstanceOf[ObjectType]
-      case other => other.asInstanceOf[ObjectType]
-    }
-    val concat = findMethod(node, leftStringType, "concat", Array[Term](rightString))
-    Some(new Call(leftString, concat, Array[Term](rightString)))
+    if (!concatenable(node.lhs, left) || !concatenable(node.rhs, right)) return None
+    // Nested concatenations are flattened into one, so a + b + c builds a single string
+    Some(new StringConcat(node.location, concatParts(left) ++ concatParts(right), load("java.lang.String")))
   }
 
-  private def boxForConcat(node: AST.Expression, term: Term): Option[Term] =
-    if (!term.isBasicType) Some(term)
-    else if (term.`type` == BasicType.VOID) {
+  private def concatenable(node: AST.Expression, term: Term): Boolean =
+    if (term.`type` != BasicType.VOID) true
+    else {
       report(IS_NOT_BOXABLE_TYPE, node, term.`type`)
-      None
-    } else {
-      Some(Boxing.boxing(table_, term))
+      false
     }
 
-  private def toStringCall(node: AST.Expression, term: Term): Term = {
-    // Unwrap NullableType to get the inner type for method lookup
-    val targetType = term.`type` match {
-      case nt: TypedAST.NullableType => nt.innerType.asInstanceOf[ObjectType]
-      case other => other.asInstanceOf[ObjectType]
-    }
-    val toStringMethod = findMethod(node, targetType, "toString")
-    new Call(term, toStringMethod, Array.empty)
+  private def concatParts(term: Term): Array[Term] = term match {
+    case concat: StringConcat => concat.parts
+    case _ => Array(term)
   }
 
   private def numericBasicType(term: Term): Option[BasicType] = {
@@ -13,7 +13,8 @@ final class TypingHeaderPass(private val typing: Typing, private val unit: AST.C
     unit_ = unit
     val moduleName = if (unit.module != null) unit.module.name else null
     val imports = buildImports(moduleName)
-    staticImportedList_ = defaultStaticImports()
+    // Only the default static imports exist, so every unit shares one list
+    if (staticImportedList_ == null) staticImportedList_ = defaultStaticImports()
 
     var nonTypeCount = 0
     unit.toplevels.foreach {
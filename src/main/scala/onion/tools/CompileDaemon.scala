@@ -0,0 +1,138 @@
+/* ************************************************************** *
+ *                                                                *
+ * Copyright (c) 2016-, Kota Mizushima, All rights reserved.  *
+ *                                                                *
+ *                                                                *
+ * This software is distributed under the modified BSD License.   *
+ * ************************************************************** */
+package onion.tools
+
+import java.io.{BufferedInputStream, BufferedOutputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream, File, PrintStream}
+import java.net.{StandardProtocolFamily, UnixDomainSocketAddress}
+import java.nio.channels.{Channels, ClosedChannelException, ServerSocketChannel, SocketChannel}
+import java.nio.file.{Files, Path}
+import onion.compiler.SharedClassTables
+import scala.util.control.NonFatal
+
+/**
+ * Resident compiler behind `onionc --daemon <socket>`.
+ *
+ * The daemon keeps one JVM (and its JIT state) alive and shares the parsed
+ * class-path types between requests through [[SharedClassTables]]; a request
+ * only re-reads the class-path jars when one of them changed, and reads the
+ * classes of class-path directories itself.
+ * `onionc --connect <socket> args...` sends the remaining arguments together
+ * with the caller's working directory and prints what the compiler printed.
+ *
+ * Requests are served one at a time, since the compiler reports through the
+ * process-wide standard streams.
+ *
+ * @author Kota Mizushima
+ */
+class CompileDaemon(socketPath: Path) {
+  private[onion] val sharedTables = new SharedClassTables
+  @volatile private var server: ServerSocketChannel = null
+
+  /** Accepts and serves requests until [[close]] is called. */
+  def serve(): Unit = {
+    Files.deleteIfExists(socketPath)
+    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+    try {
+      server.bind(UnixDomainSocketAddress.of(socketPath))
+      while (true) {
+        val channel = server.accept()
+        try handle(channel)
+        catch {
+          case NonFatal(e) => System.err.println(s"onionc daemon: ${e.getMessage}")
+        } finally channel.close()
+      }
+    } catch {
+      case _: ClosedChannelException => ()
+    } finally {
+      server.close()
+      Files.deleteIfExists(socketPath)
+      sharedTables.clear()
+    }
+  }
+
+  /** Stops a running [[serve]] loop. */
+  def close(): Unit = {
+    val current = server
+    if (current != null) current.close()
+  }
+
+  private def handle(channel: SocketChannel): Unit = {
+    val in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))
+    val out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))
+    val workingDirectory = new File(in.readUTF())
+    val args = Array.fill(in.readInt())(in.readUTF())
+    val (status, stdout, stderr) = compile(workingDirectory, args)
+    out.writeInt(status)
+    CompileDaemon.writeBytes(out, stdout)
+    CompileDaemon.writeBytes(out, stderr)
+    out.flush()
+  }
+
+  private[tools] def compile(workingDirectory: File, args: Array[String]): (Int, Array[Byte], Array[Byte]) = {
+    val stdout = new ByteArrayOutputStream
+    val stderr = new ByteArrayOutputStream
+    val out = new PrintStream(stdout, true)
+    val err = new PrintStream(stderr, true)
+    val savedOut = System.out
+    val savedErr = System.err
+    System.setOut(out)
+    System.setErr(err)
+    val status =
+      try {
+        Console.withOut(out) {
+          Console.withErr(err) {
+            val verbose = args.contains("--verbose")
+            new CompilerFrontend(sharedTables, workingDirectory).run(args.filterNot(_ == "--verbose"), verbose)
+          }
+        }
+      } catch {
+        case NonFatal(e) =>
+          e.printStackTrace(err)
+          -1
+      } finally {
+        System.setOut(savedOut)
+        System.setErr(savedErr)
+      }
+    (status, stdout.toByteArray, stderr.toByteArray)
+  }
+}
+
+object CompileDaemon {
+  /**
+   * Sends one compile request to the daemon at `socketPath`, copies its
+   * output to this process's standard streams and returns its exit status.
+   */
+  def request(socketPath: Path, workingDirectory: String, args: Array[String]): Int = {
+    val channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))
+    try {
+      val out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))
+      out.writeUTF(workingDirectory)
+      out.writeInt(args.length)
+      args.foreach(out.writeUTF)
+      out.flush()
+      val in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))
+      val status = in.readInt()
+      System.out.write(readBytes(in))
+      System.out.flush()
+      System.err.write(readBytes(in))
+      System.err.flush()
+      status
+    } finally channel.close()
+  }
+
+  private def writeBytes(out: DataOutputStream, bytes: Array[Byte]): Unit = {
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private def readBytes(in: DataInputStream): Array[Byte] = {
+    val bytes = new Array[Byte](in.readInt())
+    in.readFully(bytes)
+    bytes
+  }
+}
@@ -12,7 +12,8 @@ import java.io.File
 import java.io.FileOutputStream
 import java.io.IOException
 import java.io.UnsupportedEncodingException
-import onion.compiler.{CompiledClass, CompilerConfig, OnionCompiler, WarningCategory, WarningLevel}
+import java.nio.file.Paths
+import onion.compiler.{CompiledClass, CompilerConfig, FileInputSource, IncrementalCompiler, OnionCompiler, SharedClassTables, WarningCategory, WarningLevel}
 import onion.compiler.CompilationOutcome
 import onion.compiler.CompilationOutcome.{Failure, Success}
 import onion.compiler.CompilationReporter
@@ -47,6 +48,21 @@ object CompilerFrontend {
       println(s"Onion Compiler version $VERSION")
       return
     }
+    val daemonIndex = args.indexWhere(a => a == DAEMON || a == CONNECT)
+    if (daemonIndex >= 0) {
+      if (daemonIndex + 1 >= args.length) {
+        printError(Message.apply("error.command.noArgument", args(daemonIndex)))
+        return
+      }
+      val socket = Paths.get(args(daemonIndex + 1))
+      if (args(daemonIndex) == DAEMON) {
+        new CompileDaemon(socket).serve()
+      } else {
+        val rest = args.take(daemonIndex) ++ args.drop(daemonIndex + 2)
+        CompileDaemon.request(socket, new File(".").getAbsolutePath, rest)
+      }
+      return
+    }
     val verbose = args.exists(_ == "--verbose")
     val filteredArgs = args.filterNot(_ == "--verbose")
     try {
@@ -66,13 +82,26 @@ object CompilerFrontend {
   private final val DUMP_TYPED_AST: String = "--dump-typed-ast"
   private final val WARN_LEVEL: String = "--warn"
   private final val SUPPRESS_WARNINGS: String = "--Wno"
+  private final val PARALLELISM: String = "--parallelism"
+  private final val RELEASE: String = "--release"
+  private final val INCREMENTAL: String = "--incremental"
+  private final val PROFILE: String = "--profile-compiler"
+  private final val DAEMON: String = "--daemon"
+  private final val CONNECT: String = "--connect"
   private final val DEFAULT_CLASSPATH: Array[String] = Array[String](".")
   private final val DEFAULT_ENCODING: String = System.getProperty("file.encoding")
   private final val DEFAULT_OUTPUT: String = "."
   private final val DEFAULT_MAX_ERROR: Int = 10
+  private final val DEFAULT_PARALLELISM: Int = 1
 }
 
-class CompilerFrontend {
+/**
+ * @param sharedTables     class-path tables reused across runs (set by the
+ *                         compile daemon), or null
+ * @param workingDirectory directory relative paths on the command line are
+ *                         resolved against, or null for the current directory
+ */
+class CompilerFrontend(sharedTables: SharedClassTables = null, workingDirectory: File = null) {
 
   import CompilerFrontend._
 
@@ -85,7 +114,11 @@ class CompilerFrontend {
     config(DUMP_AST, false),
     config(DUMP_TYPED_AST, false),
     config(WARN_LEVEL, true),
-    config(SUPPRESS_WARNINGS, true)
+    config(SUPPRESS_WARNINGS, true),
+    config(PARALLELISM, true),
+    config(RELEASE, true),
+    config(INCREMENTAL, false),
+    config(PROFILE, true)
   )
 
   def run(commandLine: Array[String], verbose: Boolean = false): Int = {
@@ -102,8 +135,11 @@ class CompilerFrontend {
           printUsage()
           return -1
         }
+        val incremental = success.options.toMap.get(INCREMENTAL).contains(NoValuedParam)
         createConfig(success, verbose) match {
           case None => -1
+          case Some(config) if incremental =>
+            compileIncrementally(config, params)
           case Some(config) =>
             compile(config, params) match {
               case Success(classes) =>
@@ -163,6 +199,12 @@ class CompilerFrontend {
          |  --dump-typed-ast            Print typed AST summary to stderr
          |  --warn <off|on|error>       Set warning level
          |  --Wno <codes>               Suppress warnings (e.g., W0001,unused-parameter)
+         |  --parallelism <number>      Number of worker threads used by the compiler (default: 1)
+         |  --release <17|21>           Java release to generate class files for (default: 17)
+         |  --incremental               Recompile only changed sources and the sources depending on them
+         |  --profile-compiler <file>   Write per-phase timings, allocations and counters as JSON
+         |  --daemon <socket>           Run as a resident compiler listening on a Unix-domain socket
+         |  --connect <socket>          Compile through the daemon listening on <socket>
          |  -h, --help                  Show this help message
          |  -v, --version               Show version information
          |
@@ -202,11 +244,20 @@ class CompilerFrontend {
     val dumpTypedAst = option.get(DUMP_TYPED_AST).contains(NoValuedParam)
     val warningLevel = parseWarningLevel(option.get(WARN_LEVEL))
     val suppressedWarnings = parseSuppressedWarnings(option.get(SUPPRESS_WARNINGS))
+    val parallelism: Option[Int] = checkParallelism(
+      option.get(PARALLELISM).collect{ case ValuedParam(value) => value}
+    )
+    val release: Option[Int] = checkRelease(
+      option.get(RELEASE).collect{ case ValuedParam(value) => value}
+    )
+    val profileOutput: Option[String] = option.get(PROFILE).collect{ case ValuedParam(value) => resolve(value) }
     for {
       e <- encoding
       m <- maxErrorReport
       level <- warningLevel
       suppressed <- suppressedWarnings
+      p <- parallelism
+      r <- release
     } yield {
       new CompilerConfig(
         classpath.toIndexedSeq,
@@ -218,20 +269,46 @@ class CompilerFrontend {
         warningLevel = level,
         suppressedWarnings = suppressed,
         dumpAst = dumpAst,
-        dumpTypedAst = dumpTypedAst
+        dumpTypedAst = dumpTypedAst,
+        parallelism = p,
+        profileOutput = profileOutput,
+        release = r
       )
     }
   }
 
   private def compile(config: CompilerConfig, fileNames: Array[String]): CompilationOutcome = {
-    new OnionCompiler(config).compile(fileNames)
+    val sources = fileNames.toSeq.map(new FileInputSource(_, workingDirectory))
+    new OnionCompiler(config, sharedTables).compile(sources)
+  }
+
+  private def compileIncrementally(config: CompilerConfig, fileNames: Array[String]): Int = {
+    val compiler = new IncrementalCompiler(config, sharedTables)
+    val result = compiler.compile(fileNames.toSeq, workingDirectory)
+    if (config.verbose) {
+      System.err.println(s"[verbose] Incremental: recompiled ${result.compiledSources.size} of ${fileNames.length} source files")
+    }
+    result.outcome match {
+      case Success(classes) =>
+        if (!generateFiles(classes)) return -1
+        result.staleClasses.foreach(name => new File(outputPathOf(config.outputDirectory, name)).delete())
+        compiler.saveState(result)
+        0
+      case Failure(errors) =>
+        CompilationReporter.printErrors(errors)
+        -1
+    }
   }
 
   private def checkClasspath(classpath: Option[String]): Array[String] = {
-    (for (c <- classpath) yield pathArray(c)).getOrElse(DEFAULT_CLASSPATH)
+    (for (c <- classpath) yield pathArray(c)).getOrElse(DEFAULT_CLASSPATH).map(resolve)
   }
 
-  private def checkOutputDirectory(outputDirectory: Option[String]): String = outputDirectory.getOrElse(DEFAULT_OUTPUT)
+  private def checkOutputDirectory(outputDirectory: Option[String]): String = resolve(outputDirectory.getOrElse(DEFAULT_OUTPUT))
+
+  private def resolve(path: String): String =
+    if (workingDirectory == null || new File(path).isAbsolute) path
+    else new File(workingDirectory, path).getPath
 
   private def checkEncoding(encoding: Option[String]): Option[String] = {
     try {
@@ -262,6 +339,28 @@ class CompilerFrontend {
     }
   }
 
+  private def checkParallelism(parallelism: Option[String]): Option[Int] = {
+    parallelism match {
+      case Some(p) =>
+        p.toIntOption.filter(_ > 0).orElse {
+          printError(Message.apply("error.command.requireNaturalNumber", PARALLELISM))
+          None
+        }
+      case None => Some(DEFAULT_PARALLELISM)
+    }
+  }
+
+  private def checkRelease(release: Option[String]): Option[Int] = {
+    release match {
+      case Some(r) =>
+        r.toIntOption.filter(CompilerConfig.SupportedReleases.contains).orElse {
+          printError(Message.apply("error.command.invalidArgument", RELEASE))
+          None
+        }
+      case None => Some(CompilerConfig.DefaultRelease)
+    }
+  }
+
   private def parseWarningLevel(param: Option[CommandLineParam]): Option[WarningLevel] = {
     param match {
       case Some(ValuedParam(value)) =>
@@ -48,7 +48,7 @@ object Repl {
     "def", "var", "val", "if", "else", "while", "for", "return", "break", "continue",
     "new", "this", "super", "null", "true", "false", "import", "package",
     "try", "catch", "finally", "throw", "throws", "enum", "record", "sealed",
-    "select", "case", "otherwise", "extends", "implements"
+    "select", "case", "otherwise", "extends", "implements", "tailrec"
   )
 
   // Built-in types
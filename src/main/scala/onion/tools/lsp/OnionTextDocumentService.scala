@@ -86,7 +86,7 @@ class OnionTextDocumentService(server: OnionLanguageServer) extends TextDocument
     "def", "var", "val", "if", "else", "while", "for", "return", "break", "continue",
     "new", "this", "super", "null", "true", "false", "import", "package",
     "try", "catch", "finally", "throw", "throws", "enum", "record", "sealed",
-    "select", "case", "otherwise", "extends", "implements"
+    "select", "case", "otherwise", "extends", "implements", "tailrec"
   )
 
   // Built-in types
@@ -474,6 +474,7 @@ class OnionTextDocumentService(server: OnionLanguageServer) extends TextDocument
     case "enum" => "Declares an enumeration type."
     case "record" => "Declares a record type."
     case "sealed" => "Restricts subclassing."
+    case "tailrec" => "Requires every recursive call of a method to be a tail call."
     case "select" => "Pattern matching expression."
     case _ => s"Onion language keyword."
   }
@@ -0,0 +1,128 @@
+package onion.compiler
+
+import onion.compiler.environment.AsmRefs.AsmClassType
+import onion.compiler.environment.{ClassFileTable, ClassPathIndex, JrtClassFiles}
+import java.io.{File, FileOutputStream}
+import java.nio.file.{Files, Path}
+import java.util.zip.{ZipEntry, ZipOutputStream}
+import org.objectweb.asm.{ClassWriter, Opcodes}
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.diagrams.Diagrams
+
+class ClassTableSpec extends AnyFunSpec with Diagrams {
+  describe("JDK classes") {
+    it("are read from the jrt image") {
+      assert(JrtClassFiles.loadBytes("java.lang.String") != null)
+      assert(JrtClassFiles.loadBytes("java.util.Map$Entry") != null)
+      assert(JrtClassFiles.loadBytes("java.sql.Connection") != null)
+      assert(JrtClassFiles.loadBytes("java.lang.NoSuchClass") == null)
+      assert(JrtClassFiles.loadBytes("onion.IO") == null)
+    }
+
+    it("are loaded as class files rather than reflectively") {
+      val table = new ClassTable(".")
+      try {
+        for (name <- Seq("java.lang.String", "java.util.ArrayList", "java.sql.Connection", "javax.swing.JFrame")) {
+          val loaded = table.load(name)
+          assert(loaded.isInstanceOf[AsmClassType])
+        }
+      } finally table.close()
+    }
+  }
+
+  private def classFile(name: String): Array[Byte] = {
+    val writer = new ClassWriter(0)
+    writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null)
+    writer.visitEnd()
+    writer.toByteArray
+  }
+
+  private def writeJar(jar: Path, names: String*): Unit = {
+    val out = new ZipOutputStream(new FileOutputStream(jar.toFile))
+    try for (name <- names) {
+      out.putNextEntry(new ZipEntry(name + ".class"))
+      out.write(classFile(name))
+      out.closeEntry()
+    } finally out.close()
+  }
+
+  describe("ClassPathIndex") {
+    it("is shared by class tables of the same class path") {
+      val dir = Files.createTempDirectory("onion-index")
+      val jar = dir.resolve("lib.jar")
+      writeJar(jar, "demo/Lib")
+      val classPath = jar.toString
+      assert(ClassPathIndex.forClassPath(classPath) eq ClassPathIndex.forClassPath(classPath))
+      val table = new ClassTable(classPath)
+      val loaded = table.load("demo.Lib")
+      assert(loaded != null)
+      assert(table.load("demo.Missing") == null)
+    }
+
+    it("is rebuilt when a jar changes") {
+      val dir = Files.createTempDirectory("onion-index")
+      val jar = dir.resolve("lib.jar")
+      writeJar(jar, "demo/Old")
+      val before = ClassPathIndex.forClassPath(jar.toString)
+      writeJar(jar, "demo/Old", "demo/New")
+      jar.toFile.setLastModified(jar.toFile.lastModified + 2000)
+      val after = ClassPathIndex.forClassPath(jar.toString)
+      assert(!(after eq before))
+      assert(after.loadBytes("demo/New.class") != null)
+    }
+
+    it("lets an earlier directory shadow a jar") {
+      val dir = Files.createTempDirectory("onion-index")
+      val jar = dir.resolve("lib.jar")
+      writeJar(jar, "demo/Lib")
+      val classes = Files.createDirectories(dir.resolve("classes").resolve("demo"))
+      val shadow = classFile("demo/Lib").clone()
+      Files.write(classes.resolve("Lib.class"), shadow)
+      val classPath = dir.resolve("classes").toString + File.pathSeparator + jar
+      assert(ClassPathIndex.forClassPath(classPath).loadBytes("demo/Lib.class") sameElements shadow)
+    }
+
+    it("cannot shadow the runtime classes the compiler runs with") {
+      val dir = Files.createTempDirectory("onion-index")
+      val jar = dir.resolve("lib.jar")
+      writeJar(jar, "onion/IO")
+      val bytes = new ClassFileTable(jar.toString).loadBytes("onion.IO")
+      assert(bytes != null)
+      assert(!(bytes sameElements classFile("onion/IO")))
+    }
+  }
+
+  describe("package index") {
+    it("lists platform packages from the jrt image") {
+      val members = JrtClassFiles.packageMembers("java.util")
+      assert(members.contains("ArrayList"))
+      assert(members.contains("Map$Entry"))
+      assert(JrtClassFiles.packageMembers("no.such.pkg") == null)
+    }
+
+    it("lists the classes of jars and directories") {
+      val dir = Files.createTempDirectory("onion-index")
+      val jar = dir.resolve("lib.jar")
+      writeJar(jar, "demo/Lib")
+      val classes = Files.createDirectories(dir.resolve("classes").resolve("demo"))
+      Files.write(classes.resolve("Local.class"), classFile("demo/Local"))
+      val classPath = dir.resolve("classes").toString + File.pathSeparator + jar
+      val members = ClassPathIndex.forClassPath(classPath).packageMembers("demo")
+      assert(members == Set("Lib", "Local"))
+    }
+
+    it("rules out classes missing from an enumerable package") {
+      val table = new ClassFileTable(Files.createTempDirectory("onion-index").toString)
+      assert(table.mayDefine("java.util.List"))
+      assert(!table.mayDefine("java.util.NoSuchClass"))
+    }
+
+    it("still finds a source class added after a miss") {
+      val table = new ClassTable(Files.createTempDirectory("onion-index").toString)
+      assert(table.load("java.util.NoSuchClass") == null)
+      val definition = TypedAST.ClassDefinition.newClass(0, "java.util.NoSuchClass")
+      table.classes.add(definition)
+      assert(table.load("java.util.NoSuchClass") eq definition)
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package onion.compiler
+
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.diagrams.Diagrams
+import java.io.{Reader, StringReader}
+
+class StaticImportListSpec extends AnyFunSpec with Diagrams {
+  private def defaults(): StaticImportList = {
+    val list = new StaticImportList
+    DefaultStaticImports.classes.foreach(name => list.add(new StaticImportItem(name, true)))
+    list
+  }
+
+  private def stringSource(code: String, fileName: String): InputSource = new InputSource {
+    override def openReader: Reader = new StringReader(code)
+    override def name: String = fileName
+  }
+
+  describe("StaticImportList") {
+    it("indexes the static methods of the imported classes by name") {
+      val table = new ClassTable(".")
+      val list = defaults()
+      val max = list.methodsNamed("max", table)
+      val owners = max.map(_.owner.name).toSeq
+      assert(owners.contains("java.lang.Math"))
+      assert(max.forall(_.methods.forall(m => Modifier.isStatic(m.modifier))))
+      assert(list.methodsNamed("noSuchMethod", table).isEmpty)
+      assert(list.methodsNamed("max", table) eq max)
+    }
+
+    it("rebuilds the index when an import is added") {
+      val table = new ClassTable(".")
+      val list = new StaticImportList
+      assert(list.methodsNamed("max", table).isEmpty)
+      list.add(new StaticImportItem("java.lang.Math", true))
+      val owners = list.methodsNamed("max", table).map(_.owner.name).toSeq
+      assert(owners == Seq("java.lang.Math"))
+    }
+  }
+
+  describe("Parallel body typing") {
+    def config(parallelism: Int): CompilerConfig = CompilerConfig(
+      classPath = Seq("."),
+      superClass = "java.lang.Object",
+      encoding = "UTF-8",
+      outputDirectory = ".",
+      maxErrorReports = 100,
+      parallelism = parallelism
+    )
+
+    // Each unit calls into the next one, so bodies depend on other units' outlines,
+    // and resolves an unqualified call through the shared static-import index
+    def sources(broken: Int => Boolean): Seq[InputSource] = (1 to 8).map { i =>
+      val next = i % 8 + 1
+      val body = if (broken(i)) "val s: String = 1\n    return C" + next + "::f()" else s"return max(C$next::g(), 0) + $i"
+      stringSource(
+        s"class C$i {\npublic:\n  static def f(): Int {\n    $body\n  }\n  static def g(): Int = $i\n}\n",
+        s"C$i.on"
+      )
+    }
+
+    it("generates the same classes as a sequential run") {
+      val sequential = new OnionCompiler(config(1)).compile(sources(_ => false))
+      val parallel = new OnionCompiler(config(4)).compile(sources(_ => false))
+      (sequential, parallel) match {
+        case (CompilationOutcome.Success(expected), CompilationOutcome.Success(actual)) =>
+          assert(actual.map(_.className) == expected.map(_.className))
+        case other =>
+          fail(s"expected both compilations to succeed: $other")
+      }
+    }
+
+    it("reports body errors in source order") {
+      val sequential = new OnionCompiler(config(1)).compile(sources(_ % 3 == 0))
+      val parallel = new OnionCompiler(config(4)).compile(sources(_ % 3 == 0))
+      (sequential, parallel) match {
+        case (CompilationOutcome.Failure(expected), CompilationOutcome.Failure(actual)) =>
+          assert(actual.map(_.sourceFile) == Seq("C3.on", "C6.on"))
+          assert(actual == expected)
+        case other =>
+          fail(s"expected both compilations to fail: $other")
+      }
+    }
+  }
+}
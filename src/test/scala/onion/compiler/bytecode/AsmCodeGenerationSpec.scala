@@ -3,6 +3,7 @@ package onion.compiler.bytecode
 import org.scalatest.funspec.AnyFunSpec
 import org.scalatest.diagrams.Diagrams
 import org.objectweb.asm.{Type => AsmType, Opcodes}
+import onion.compiler.{ClassTable, Modifier, TypedAST}
 
 /**
  * Unit tests for ASM bytecode generation utilities.
@@ -251,4 +252,42 @@ class AsmCodeGenerationSpec extends AnyFunSpec with Diagrams {
       assert(arrayType.getSort == AsmType.ARRAY)
     }
   }
+
+  // ============================================
+  // TableClassWriter Tests
+  // ============================================
+
+  describe("TableClassWriter.getCommonSuperClass") {
+    class Probe(table: ClassTable) extends TableClassWriter(0, table) {
+      def common(type1: String, type2: String): String = getCommonSuperClass(type1, type2)
+    }
+
+    it("finds the nearest common superclass of library classes") {
+      val probe = new Probe(new ClassTable("."))
+      assert(probe.common("java/util/ArrayList", "java/util/LinkedList") == "java/util/AbstractList")
+      assert(probe.common("java/lang/Integer", "java/lang/Long") == "java/lang/Number")
+      assert(probe.common("java/lang/Object", "java/lang/String") == "java/lang/Object")
+    }
+
+    it("answers with the supertype when one type extends the other") {
+      val probe = new Probe(new ClassTable("."))
+      assert(probe.common("java/util/AbstractList", "java/util/ArrayList") == "java/util/AbstractList")
+      assert(probe.common("java/util/ArrayList", "java/util/List") == "java/util/List")
+    }
+
+    it("resolves classes defined in the current compilation") {
+      val table = new ClassTable(".")
+      val base = TypedAST.ClassDefinition.newClass(null, Modifier.PUBLIC, "Shape", table.rootClass, Array())
+      table.classes.add(base)
+      table.classes.add(TypedAST.ClassDefinition.newClass(null, Modifier.PUBLIC, "Square", base, Array()))
+      table.classes.add(TypedAST.ClassDefinition.newClass(null, Modifier.PUBLIC, "Circle", base, Array()))
+      val probe = new Probe(table)
+      assert(probe.common("Square", "Circle") == "Shape")
+    }
+
+    it("falls back to Object for unknown types") {
+      val probe = new Probe(new ClassTable("."))
+      assert(probe.common("Foo$Closure1", "java/lang/String") == "java/lang/Object")
+    }
+  }
 }
@@ -0,0 +1,35 @@
+package onion.compiler.toolbox
+
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.diagrams.Diagrams
+
+class SuggestionsSpec extends AnyFunSpec with Diagrams {
+  private val names = Seq("println", "print", "printf", "PrintStream", "parseInt", "split", "size", "sizeOf", "length")
+
+  describe("Suggestions") {
+    it("prefers the closest, then the shortest candidate, ignoring case") {
+      assert(Suggestions.findSimilar("prnt", names, 3) == Some("print"))
+      assert(!Suggestions.findSimilarMany("SPLIT", names, 9, 3).contains("split"))
+      assert(Suggestions.findSimilar("xyzzyq", names, 3).isEmpty)
+      val many = Suggestions.findSimilarMany("sise", names, 3, 3)
+      assert(many.head == "size")
+    }
+
+    it("answers from an index like a scan of the candidates") {
+      val index = new Suggestions.Index(names)
+      for (query <- Seq("prnt", "printn", "prinstream", "lenght", "szie", "parse", "q", "")) {
+        val scanned = Suggestions.findSimilarMany(query, names, 3, 3)
+        val indexed = index.findSimilarMany(query, 3, 3)
+        assert(indexed == scanned)
+      }
+    }
+
+    it("keeps an index while the names of its owner are unchanged") {
+      val indexes = new Suggestions.Indexes
+      val owner = new Object
+      val first = indexes(owner, "methods", names)
+      assert(indexes(owner, "methods", names) eq first)
+      assert(!(indexes(owner, "methods", names :+ "extra") eq first))
+    }
+  }
+}
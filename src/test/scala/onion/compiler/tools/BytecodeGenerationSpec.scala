@@ -1,6 +1,9 @@
 package onion.compiler.tools
 
 import onion.tools.Shell
+import onion.compiler.{CompilationOutcome, CompilerConfig, InputSource, OnionCompiler}
+import java.io.{Reader, StringReader}
+import org.objectweb.asm.{ClassReader, ClassVisitor, Handle, MethodVisitor, Opcodes}
 
 class BytecodeGenerationSpec extends AbstractShellSpec {
   describe("Bytecode generation helpers") {
@@ -30,4 +33,411 @@ class BytecodeGenerationSpec extends AbstractShellSpec {
       assert(Shell.Success(6) == result)
     }
   }
+
+  describe("Parallel class generation") {
+    val source =
+      (1 to 6).map { i =>
+        s"""class Gen$i {
+           |public:
+           |  static def f(): Int {
+           |    val g: Int -> Int = (x: Int) -> { return x + $i; }
+           |    val h: Int -> Int = (x: Int) -> { return x * $i; }
+           |    return h(g(1))
+           |  }
+           |}
+           |""".stripMargin
+      }.mkString
+
+    def compile(parallelism: Int): Seq[(String, Seq[Byte])] = {
+      val config = CompilerConfig(Seq("."), "java.lang.Object", "UTF-8", ".", 10, parallelism = parallelism)
+      val input = new InputSource {
+        override def openReader: Reader = new StringReader(source)
+        override def name: String = "Gen.on"
+      }
+      new OnionCompiler(config).compile(Seq(input)) match {
+        case CompilationOutcome.Success(classes) => classes.map(c => (c.className, c.content.toSeq))
+        case failure => fail(s"compilation failed: $failure")
+      }
+    }
+
+    it("numbers closures per class and emits identical output in any order") {
+      val sequential = compile(1)
+      val parallel = compile(4)
+      assert(parallel == sequential)
+      val names = parallel.map(_._1)
+      assert(names == (1 to 6).map(i => s"Gen$i"))
+      val methods = Seq.newBuilder[String]
+      new ClassReader(parallel.head._2.toArray).accept(new ClassVisitor(Opcodes.ASM9) {
+        override def visitMethod(access: Int, name: String, desc: String, sig: String, exceptions: Array[String]): MethodVisitor = {
+          methods += name
+          null
+        }
+      }, 0)
+      assert(methods.result().filter(_.startsWith("lambda$")) == Seq("lambda$1", "lambda$2"))
+    }
+  }
+
+  describe("String concatenation") {
+    def compile(source: String): Seq[(String, Array[Byte])] = {
+      val config = CompilerConfig(Seq("."), "java.lang.Object", "UTF-8", ".", 10)
+      val input = new InputSource {
+        override def openReader: Reader = new StringReader(source)
+        override def name: String = "Concat.on"
+      }
+      new OnionCompiler(config).compile(Seq(input)) match {
+        case CompilationOutcome.Success(classes) => classes.map(c => (c.className, c.content))
+        case failure => fail(s"compilation failed: $failure")
+      }
+    }
+
+    /** Owner and name of every method called, plus the bootstrap of every invokedynamic. */
+    def calls(bytes: Array[Byte]): Seq[String] = {
+      val found = Seq.newBuilder[String]
+      new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+        override def visitMethod(access: Int, name: String, desc: String, sig: String, exceptions: Array[String]): MethodVisitor =
+          new MethodVisitor(Opcodes.ASM9) {
+            override def visitMethodInsn(opcode: Int, owner: String, name: String, desc: String, itf: Boolean): Unit =
+              found += s"$owner.$name"
+            override def visitInvokeDynamicInsn(name: String, desc: String, bsm: Handle, args: Object*): Unit =
+              found += s"${bsm.getOwner}.${bsm.getName}"
+          }
+      }, 0)
+      found.result()
+    }
+
+    it("concatenates primitives and nulls like Java") {
+      val result = shell.run(
+        """
+          |class ConcatValues {
+          |public:
+          |  static def main(args: String[]): String {
+          |    val n: String = null
+          |    val c: Char = 'x'
+          |    val l: Long = 9000000000L
+          |    val d: Double = 1.5
+          |    return "a" + 1 + c + l + d + true + n + "#{l}-#{n}"
+          |  }
+          |}
+          |""".stripMargin,
+        "ConcatValues.on",
+        Array()
+      )
+      assert(Shell.Success("a1x90000000001.5truenull9000000000-null") == result)
+    }
+
+    it("emits one invokedynamic call site per concatenation") {
+      val classes = compile(
+        """class ConcatSite {
+          |public:
+          |  static def f(a: String, b: Int, c: Object): String = a + ":" + b + ":" + c + "#{b}!"
+          |}
+          |record ConcatRecord(name: String, size: Int);
+          |""".stripMargin)
+      for ((name, bytes) <- classes) {
+        val invoked = calls(bytes)
+        assert(!invoked.exists(_.startsWith("java/lang/StringBuilder")), name)
+        assert(!invoked.contains("java/lang/String.concat"), name)
+      }
+      val site = calls(classes.find(_._1 == "ConcatSite").get._2).filterNot(_.endsWith(".<init>"))
+      assert(site == Seq("java/lang/invoke/StringConcatFactory.makeConcatWithConstants"))
+      val record = calls(classes.find(_._1 == "ConcatRecord").get._2)
+      assert(record.contains("java/lang/invoke/StringConcatFactory.makeConcatWithConstants"))
+    }
+
+    it("splits concatenations wider than one call site allows") {
+      val terms = (1 to 150).map(_ => "x").mkString(" + ")
+      val result = shell.run(
+        s"""
+           |class ConcatWide {
+           |public:
+           |  static def main(args: String[]): String {
+           |    val x: Long = 1L
+           |    return "" + $terms
+           |  }
+           |}
+           |""".stripMargin,
+        "ConcatWide.on",
+        Array()
+      )
+      assert(Shell.Success("1" * 150) == result)
+    }
+  }
+
+  private def compileSource(source: String, release: Int = CompilerConfig.DefaultRelease): Seq[(String, Array[Byte])] = {
+    val config = CompilerConfig(Seq("."), "java.lang.Object", "UTF-8", ".", 10, release = release)
+    val input = new InputSource {
+      override def openReader: Reader = new StringReader(source)
+      override def name: String = "Sample.on"
+    }
+    new OnionCompiler(config).compile(Seq(input)) match {
+      case CompilationOutcome.Success(classes) => classes.map(c => (c.className, c.content))
+      case failure => fail(s"compilation failed: $failure")
+    }
+  }
+
+  /** Owner and name of every method called, plus the bootstrap of every invokedynamic. */
+  private def invocations(bytes: Array[Byte]): Seq[String] = {
+    val found = Seq.newBuilder[String]
+    new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+      override def visitMethod(access: Int, name: String, desc: String, sig: String, exceptions: Array[String]): MethodVisitor =
+        new MethodVisitor(Opcodes.ASM9) {
+          override def visitMethodInsn(opcode: Int, owner: String, name: String, desc: String, itf: Boolean): Unit =
+            found += s"$owner.$name"
+          override def visitInvokeDynamicInsn(name: String, desc: String, bsm: Handle, args: Object*): Unit =
+            found += s"${bsm.getOwner}.${bsm.getName}"
+        }
+    }, 0)
+    found.result()
+  }
+
+  describe("Primitive function specializations") {
+    it("compiles closures and calls of specialized function types without boxing") {
+      val classes = compileSource(
+        """class Specialized {
+          |public:
+          |  static def f(): Int {
+          |    val g: Int -> Int = (x: Int) -> { return x + 1; }
+          |    return applied(g$IntToIntFunction1, 1)
+          |  }
+          |  static def applied(g: IntToIntFunction1, x: Int): Int = g.call(x + 1)
+          |  static def parameter(g: Int -> Int, x: Int): Int = g(g(x))
+          |  static def local(x: Int): Int {
+          |    val g = (y: Int) -> { return y * 2; }
+          |    return g(x)
+          |  }
+          |}
+          |""".stripMargin)
+      val invoked = Map.newBuilder[String, Seq[String]]
+      val lambdas = Seq.newBuilder[String]
+      val typeTests = Seq.newBuilder[String]
+      new ClassReader(classes.head._2).accept(new ClassVisitor(Opcodes.ASM9) {
+        override def visitMethod(access: Int, name: String, desc: String, sig: String, exceptions: Array[String]): MethodVisitor = {
+          if (name.startsWith("lambda$")) lambdas += desc
+          val calls = Seq.newBuilder[String]
+          new MethodVisitor(Opcodes.ASM9) {
+            override def visitMethodInsn(opcode: Int, owner: String, name: String, desc: String, itf: Boolean): Unit =
+              calls += s"$owner.$name"
+            override def visitTypeInsn(opcode: Int, tpe: String): Unit =
+              if (opcode == Opcodes.INSTANCEOF) typeTests += tpe
+            override def visitEnd(): Unit = invoked += name -> calls.result()
+          }
+        }
+      }, 0)
+      val byMethod = invoked.result()
+      assert(byMethod("applied").head == "onion/IntToIntFunction1.apply")
+      assert(!byMethod("applied").contains("onion/IntToIntFunction1.call"))
+      assert(byMethod("parameter") == Seq("onion/IntToIntFunction1.invoke", "onion/IntToIntFunction1.invoke"))
+      assert(byMethod("local") == Seq("onion/IntToIntFunction1.invoke"))
+      assert(typeTests.result().isEmpty)
+      assert(lambdas.result() == Seq("(I)I", "(I)I"))
+    }
+  }
+
+  describe("Foreach lowering") {
+    it("iterates ranges and random-access lists without iterators") {
+      val classes = compileSource(
+        """import {
+          |  java.util.ArrayList;
+          |}
+          |class Lowered {
+          |public:
+          |  static def f(list: ArrayList[String], step: Int): Int {
+          |    var n = 0
+          |    foreach i: Int in Colls::range(0, 1000000) { n = n + i }
+          |    foreach j: Int in Colls::rangeWithStep(0, 10, step) { n = n + j }
+          |    foreach s: String in list { n = n + s.length() }
+          |    return n
+          |  }
+          |}
+          |""".stripMargin)
+      val invoked = invocations(classes.head._2)
+      assert(!invoked.contains("onion/Colls.range"))
+      assert(!invoked.contains("onion/Colls.rangeWithStep"))
+      assert(!invoked.exists(_.endsWith(".iterator")))
+      assert(invoked.contains("java/util/ArrayList.get"))
+    }
+  }
+
+  describe("Select on constants") {
+    it("compiles to tableswitch and lookupswitch") {
+      val classes = compileSource(
+        """class Switches {
+          |public:
+          |  static def dense(n: Int): Int = select n {
+          |    case 0: 10
+          |    case 1: 11
+          |    case 2: 12
+          |    else: 0
+          |  }
+          |  static def sparse(n: Int): Int = select n {
+          |    case 1: 10
+          |    case 1000: 11
+          |    case 100000: 12
+          |    else: 0
+          |  }
+          |  static def text(s: String): Int = select s {
+          |    case "foo": 1
+          |    case "bar": 2
+          |    else: 0
+          |  }
+          |  static def guarded(n: Int): Int = select n {
+          |    case 1: 10
+          |    case m when m > 5: 11
+          |    else: 0
+          |  }
+          |}
+          |""".stripMargin)
+      val switches = Seq.newBuilder[(String, Int)]
+      new ClassReader(classes.head._2).accept(new ClassVisitor(Opcodes.ASM9) {
+        override def visitMethod(access: Int, name: String, desc: String, sig: String, exceptions: Array[String]): MethodVisitor =
+          new MethodVisitor(Opcodes.ASM9) {
+            override def visitTableSwitchInsn(min: Int, max: Int, dflt: org.objectweb.asm.Label, labels: org.objectweb.asm.Label*): Unit =
+              switches += name -> Opcodes.TABLESWITCH
+            override def visitLookupSwitchInsn(dflt: org.objectweb.asm.Label, keys: Array[Int], labels: Array[org.objectweb.asm.Label]): Unit =
+              switches += name -> Opcodes.LOOKUPSWITCH
+          }
+      }, 0)
+      val found = switches.result()
+      assert(found == Seq("dense" -> Opcodes.TABLESWITCH, "sparse" -> Opcodes.LOOKUPSWITCH, "text" -> Opcodes.LOOKUPSWITCH))
+    }
+  }
+
+  describe("Select on types") {
+    val source =
+      """sealed interface Shape {}
+        |record Circle(r: Int) <: Shape
+        |record Rect(w: Int, h: Int) <: Shape
+        |
+        |class Shapes {
+        |public:
+        |  static def area(s: Shape): Int = select s {
+        |    case c is Circle when c.r() > 100: -1
+        |    case Circle(r): 3 * r * r
+        |    case Rect(w, h): w * h
+        |  }
+        |}
+        |""".stripMargin
+
+    def shapes(release: Int): Array[Byte] =
+      compileSource(source, release).find(_._1 == "Shapes").get._2
+
+    it("dispatches through SwitchBootstraps.typeSwitch for Java 21") {
+      val bytes = shapes(21)
+      assert(new ClassReader(bytes).readShort(6) == Opcodes.V21)
+      val invoked = invocations(bytes)
+      // The switch restarts after the guarded case from the same call site when its guard fails
+      assert(invoked.count(_ == "java/lang/runtime/SwitchBootstraps.typeSwitch") == 1)
+    }
+
+    it("tests each case in turn for Java 17") {
+      val bytes = shapes(17)
+      assert(new ClassReader(bytes).readShort(6) == Opcodes.V17)
+      assert(!invocations(bytes).exists(_.startsWith("java/lang/runtime/SwitchBootstraps")))
+    }
+
+    val arms =
+      """record Leaf(n: Int)
+        |record Node(left: Object, right: Object)
+        |
+        |class Arms {
+        |public:
+        |  static def classify(o: Object): String = select o {
+        |    case Node(Leaf(a), Leaf(b)) when a == b: "twins " + a
+        |    case Node(Leaf(a), Leaf(b)) when a > b: "down " + (a - b)
+        |    case Node(Leaf(a), Leaf(b)): "up " + (b - a)
+        |    case Node(Leaf(a), Node(Leaf(b), Leaf(c))) when a == b + c: "sum " + a
+        |    case Node(Leaf(a), Node(Leaf(b), Leaf(c))): "right " + (a + b + c)
+        |    case Node(Node(Leaf(a), Leaf(b)), Leaf(c)) when a == 0: "zero " + (b + c)
+        |    case Node(Node(Leaf(a), Leaf(b)), Leaf(c)): "left " + (a + b + c)
+        |    case Node(Node(Leaf(a), Leaf(b)), Node(Leaf(c), Leaf(d))): "full " + (a + b + c + d)
+        |    case Node(Leaf(a), r) when a < 0: "negative"
+        |    case Node(l, Leaf(a)) when a < 0: "negative right"
+        |    case Node(l, r): "node"
+        |    case Leaf(n) when n > 100: "large"
+        |    case Leaf(n): "leaf " + n
+        |    else: "other"
+        |  }
+        |  static def run(): String {
+        |    val values: List[Object] = [
+        |      new Node(new Leaf(2), new Leaf(2)), new Node(new Leaf(5), new Leaf(2)), new Node(new Leaf(1), new Leaf(4)),
+        |      new Node(new Leaf(5), new Node(new Leaf(2), new Leaf(3))), new Node(new Leaf(1), new Node(new Leaf(2), new Leaf(3))),
+        |      new Node(new Node(new Leaf(0), new Leaf(2)), new Leaf(3)), new Node(new Node(new Leaf(1), new Leaf(2)), new Leaf(3)),
+        |      new Node(new Node(new Leaf(1), new Leaf(2)), new Node(new Leaf(3), new Leaf(4))),
+        |      new Node(new Leaf(0 - 1), "x"), new Node("x", new Leaf(0 - 1)), new Node("x", "y"),
+        |      new Leaf(101), new Leaf(7), "text", null
+        |    ]
+        |    val out = new StringBuilder
+        |    foreach v :Object in values {
+        |      out.append(classify(v)).append(";")
+        |    }
+        |    return out.toString()
+        |  }
+        |}
+        |""".stripMargin
+
+    it("emits each case of a guarded destructuring select once") {
+      val classes = compileSource(arms, 21)
+      val bytes = classes.find(_._1 == "Arms").get._2
+      assert(invocations(bytes).count(_ == "java/lang/runtime/SwitchBootstraps.typeSwitch") == 1)
+      assert(bytes.length < 16 * 1024)
+
+      assume(Runtime.version().feature() >= 21, "running the classes needs a Java 21 runtime")
+      val loader = new ClassLoader(getClass.getClassLoader) {
+        override def findClass(name: String): Class[?] = classes.find(_._1 == name) match {
+          case Some((_, content)) => defineClass(name, content, 0, content.length)
+          case None => throw new ClassNotFoundException(name)
+        }
+      }
+      val result = loader.loadClass("Arms").getMethod("run").invoke(null)
+      assert(result == "twins 2;down 3;up 3;sum 5;right 6;zero 5;left 6;full 10;negative;negative right;node;large;leaf 7;other;other;")
+    }
+  }
+
+  describe("Constant folding") {
+    it("leaves no arithmetic, concatenation or branches on literals") {
+      val classes = compileSource(
+        """class Folded {
+          |public:
+          |  static def area(): Int = 6 * 7 + (1 << 4)
+          |  static def label(): String = "n=" + 42 + '!'
+          |  static def chosen(): Int {
+          |    if (10 > 3) { return 1; } else { return 2; }
+          |  }
+          |}
+          |""".stripMargin)
+      val opcodes = Seq.newBuilder[Int]
+      new ClassReader(classes.head._2).accept(new ClassVisitor(Opcodes.ASM9) {
+        override def visitMethod(access: Int, name: String, desc: String, sig: String, exceptions: Array[String]): MethodVisitor =
+          new MethodVisitor(Opcodes.ASM9) {
+            override def visitInsn(opcode: Int): Unit = opcodes += opcode
+            override def visitJumpInsn(opcode: Int, label: org.objectweb.asm.Label): Unit = opcodes += opcode
+          }
+      }, 0)
+      val found = opcodes.result()
+      assert(!found.exists(op => op == Opcodes.IMUL || op == Opcodes.IADD || op == Opcodes.ISHL))
+      assert(!found.exists(op => op >= Opcodes.IFEQ && op <= Opcodes.IF_ACMPNE))
+      assert(!invocations(classes.head._2).exists(_.endsWith("makeConcatWithConstants")))
+    }
+  }
+
+  describe("Tail calls") {
+    it("jumps back to the start of methods that cannot be overridden") {
+      val classes = compileSource(
+        """class Loops {
+          |public:
+          |  def open(n: Int): Int {
+          |    if (n == 0) { return 0; }
+          |    return open(n - 1);
+          |  }
+          |  static def down(n: Int): Int {
+          |    if (n == 0) { return 0; }
+          |    return down(n - 1);
+          |  }
+          |}
+          |""".stripMargin)
+      val invoked = invocations(classes.head._2)
+      assert(!invoked.contains("Loops.down"))
+      assert(invoked.contains("Loops.open"))
+    }
+  }
 }
@@ -0,0 +1,129 @@
+package onion.compiler.tools
+
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path}
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+import onion.compiler.{ClassTable, SharedClassTables}
+import onion.tools.CompileDaemon
+import org.objectweb.asm.{ClassWriter, Opcodes}
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.diagrams.Diagrams
+
+class CompileDaemonSpec extends AnyFunSpec with Diagrams {
+
+  private def write(dir: Path, name: String, content: String): Path =
+    Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8))
+
+  private def classFile(name: String): Array[Byte] = {
+    val writer = new ClassWriter(0)
+    writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null)
+    writer.visitEnd()
+    writer.toByteArray
+  }
+
+  private def writeJar(jar: Path, classNames: String*): Path = {
+    val out = new JarOutputStream(Files.newOutputStream(jar))
+    try classNames.foreach { name =>
+      out.putNextEntry(new ZipEntry(name + ".class"))
+      out.write(classFile(name))
+      out.closeEntry()
+    } finally out.close()
+    jar
+  }
+
+  describe("SharedClassTables") {
+    it("reuses the table of an unchanged class path") {
+      val dir = Files.createTempDirectory("onion-shared")
+      val tables = new SharedClassTables
+      val first = tables.tableFor(dir.toString)
+      assert(first.load("java.lang.String") != null)
+      val second = tables.tableFor(dir.toString)
+      assert(second eq first)
+      tables.clear()
+    }
+
+    it("rebuilds the table when a jar on the class path changes") {
+      val jar = writeJar(Files.createTempDirectory("onion-shared").resolve("lib.jar"), "Lib")
+      val tables = new SharedClassTables
+      val first = tables.tableFor(jar.toString)
+      assert(first.load("Lib") != null)
+      writeJar(jar, "Lib", "Extra")
+      val second = tables.tableFor(jar.toString)
+      assert(!(second eq first))
+      assert(second.load("Extra") != null)
+      tables.clear()
+    }
+
+    it("leaves class-path directories to the table of each compilation") {
+      val dir = Files.createTempDirectory("onion-shared")
+      val tables = new SharedClassTables
+      val first = tables.tableFor(dir.toString)
+      Files.write(dir.resolve("Compiled.class"), classFile("Compiled"))
+      assert(tables.tableFor(dir.toString) eq first)
+      assert(first.load("Compiled") == null)
+      assert(new ClassTable(dir.toString, first).load("Compiled") != null)
+      tables.clear()
+    }
+  }
+
+  describe("CompileDaemon") {
+    it("compiles requests relative to the caller's working directory") {
+      val dir = Files.createTempDirectory("onion-daemon")
+      val socket = dir.resolve("onionc.sock")
+      write(dir, "DaemonHello.on",
+        """class DaemonHello {
+          |public:
+          |  static def main(args: String[]): Int = 0
+          |}
+          |""".stripMargin)
+      val daemon = new CompileDaemon(socket)
+      val thread = new Thread(() => daemon.serve())
+      thread.setDaemon(true)
+      thread.start()
+      try {
+        while (!Files.exists(socket)) Thread.sleep(10)
+        val status = CompileDaemon.request(socket, dir.toString, Array("-d", "out", "DaemonHello.on"))
+        assert(status == 0)
+        assert(Files.exists(dir.resolve("out").resolve("DaemonHello.class")))
+
+        val broken = write(dir, "Broken.on", "class Broken {\npublic:\n  static def f(): Int = \"x\"\n}\n")
+        val err = new ByteArrayOutputStream
+        val savedErr = System.err
+        System.setErr(new java.io.PrintStream(err, true))
+        val failed =
+          try CompileDaemon.request(socket, dir.toString, Array("-d", "out", broken.getFileName.toString))
+          finally System.setErr(savedErr)
+        assert(failed != 0)
+        assert(err.toString(StandardCharsets.UTF_8).contains("Broken.on"))
+      } finally {
+        daemon.close()
+        thread.join(5000)
+      }
+      assert(!Files.exists(socket))
+    }
+
+    it("keeps its shared types across builds writing under the class path") {
+      val dir = Files.createTempDirectory("onion-daemon")
+      val socket = dir.resolve("onionc.sock")
+      write(dir, "First.on", "class First {\npublic:\n  static def main(args: String[]): Int = 0\n}\n")
+      write(dir, "Second.on", "class Second {\npublic:\n  static def main(args: String[]): Int = 0\n}\n")
+      val daemon = new CompileDaemon(socket)
+      val thread = new Thread(() => daemon.serve())
+      thread.setDaemon(true)
+      thread.start()
+      try {
+        while (!Files.exists(socket)) Thread.sleep(10)
+        assert(CompileDaemon.request(socket, dir.toString, Array("-d", "out", "First.on")) == 0)
+        val shared = daemon.sharedTables.tableFor(dir.toString)
+        assert(CompileDaemon.request(socket, dir.toString, Array("-d", "out", "Second.on")) == 0)
+        assert(Files.exists(dir.resolve("out").resolve("Second.class")))
+        assert(daemon.sharedTables.tableFor(dir.toString) eq shared)
+      } finally {
+        daemon.close()
+        thread.join(5000)
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package onion.compiler.tools
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import onion.compiler.{CompilerConfig, OnionCompiler, StringInputSource}
+import onion.compiler.CompilationOutcome.{Failure, Success}
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.diagrams.Diagrams
+
+class CompilerProfileSpec extends AnyFunSpec with Diagrams {
+  describe("--profile-compiler") {
+    it("writes phase timings, typing passes and counters as JSON") {
+      val output = Files.createTempFile("onion-profile", ".json")
+      val config = CompilerConfig(Seq("."), "", "UTF-8", "", 10, profileOutput = Some(output.toString))
+      val source =
+        """class Profiled {
+          |public:
+          |  static def main(args: String[]): Int {
+          |    val f: Int -> Int = (x: Int) -> { return x + 1; }
+          |    return f(Integer::parseInt("1"));
+          |  }
+          |}
+          |""".stripMargin
+      new OnionCompiler(config).compile(Seq(StringInputSource(source))) match {
+        case Success(_) => ()
+        case Failure(errors) => fail(errors.mkString("\n"))
+      }
+      val json = new String(Files.readAllBytes(output), StandardCharsets.UTF_8)
+      for (phase <- Seq("parsing", "rewriting", "typing", "codegen", "header", "outline", "body", "duplication")) {
+        assert(json.contains(s"\"name\": \"$phase\""))
+      }
+      assert(json.contains("\"<none>\": "))
+      assert(json.contains("\"closuresGenerated\": 1"))
+      def counter(name: String): Int = s"\"$name\": ([0-9]+)".r.findFirstMatchIn(json).map(_.group(1).toInt).getOrElse(0)
+      val resolutions = counter("methodResolutions")
+      val asmLoads = counter("asm")
+      assert(resolutions > 0)
+      assert(asmLoads > 0)
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package onion.compiler.tools
+
+import onion.tools.Shell
+
+class ConstantFoldingSpec extends AbstractShellSpec {
+  describe("Constant folding") {
+    it("evaluates literal operators with Java semantics") {
+      val result = shell.run(
+        """
+          |class FoldedArithmetic {
+          |public:
+          |  static def main(args: String[]): String {
+          |    val overflow = 2147483647 + 1
+          |    val shifted = 1L << 65
+          |    val division = 7 / (0 - 2) * 10 + 7 % (0 - 2)
+          |    val infinity = 1.0 / 0.0
+          |    val nan = 0.0 / 0.0
+          |    val saturated = 3.9e20 $ Int
+          |    val narrowed = 300 $ Byte
+          |    return overflow + " " + shifted + " " + division + " " + infinity + " " + (nan != nan) + " " + (nan < 1.0) + " " + saturated + " " + narrowed + " " + ("a" + 1 + 'c' + 2.5 + true + null)
+          |  }
+          |}
+          |""".stripMargin,
+        "FoldedArithmetic.on",
+        Array()
+      )
+      assert(Shell.Success("-2147483648 2 -29 Infinity true false 2147483647 44 a1c2.5truenull") == result)
+    }
+
+    it("keeps integer division by zero, which throws at run time") {
+      val result = shell.run(
+        """
+          |class FoldedDivision {
+          |public:
+          |  static def main(args: String[]): String {
+          |    try {
+          |      IO::println(1 / 0)
+          |    } catch e: ArithmeticException {
+          |      return "thrown"
+          |    }
+          |    return "folded"
+          |  }
+          |}
+          |""".stripMargin,
+        "FoldedDivision.on",
+        Array()
+      )
+      assert(Shell.Success("thrown") == result)
+    }
+
+    it("prunes branches, loops and selects on constants") {
+      val result = shell.run(
+        """
+          |class FoldedBranches {
+          |public:
+          |  static def pick(): String {
+          |    val key = 3
+          |    return select key {
+          |      case 1: "one"
+          |      case 3: "three"
+          |      else: "other"
+          |    }
+          |  }
+          |  static def main(args: String[]): String {
+          |    var n = 0
+          |    while (false) { n = n + 1 }
+          |    if (1 < 2 && true) { n = n + 10 } else { n = n + 20 }
+          |    if (false || 2 > 3) { n = n + 100 }
+          |    return n + ":" + pick()
+          |  }
+          |}
+          |""".stripMargin,
+        "FoldedBranches.on",
+        Array()
+      )
+      assert(Shell.Success("10:three") == result)
+    }
+  }
+}
@@ -208,5 +208,31 @@ class ErrorRecoverySpec extends AbstractShellSpec {
       assert(exception.problems.nonEmpty)
       assert(exception.problems.head.isInstanceOf[CompileError])
     }
+
+    it("reports errors in source order when parsing in parallel") {
+      val parsing = new Parsing(defaultConfig.copy(parallelism = 4))
+      val broken = "class Broken {\npublic:\n  def f(): Int {\n"
+      val valid = "class Valid {\npublic:\n  def f(): Int = 1\n}\n"
+      val sources = (1 to 8).map { i =>
+        if (i % 2 == 0) stringSource(broken, s"Broken$i.on") else stringSource(valid, s"Valid$i.on")
+      }
+
+      val exception = intercept[CompilationException] {
+        parsing.processBody(sources, null)
+      }
+
+      val files = exception.problems.map(_.sourceFile).distinct
+      assert(files == Seq("Broken2.on", "Broken4.on", "Broken6.on", "Broken8.on"))
+    }
+
+    it("keeps units in source order when parsing in parallel") {
+      val parsing = new Parsing(defaultConfig.copy(parallelism = 4))
+      val sources = (1 to 8).map { i =>
+        stringSource(s"class C$i {\npublic:\n  def f(): Int = $i\n}\n", s"C$i.on")
+      }
+
+      val units = parsing.processBody(sources, null)
+      assert(units.map(_.sourceFile) == (1 to 8).map(i => s"C$i.on"))
+    }
   }
 }
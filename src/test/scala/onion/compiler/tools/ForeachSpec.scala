@@ -28,4 +28,112 @@ class ForeachSpec extends AbstractShellSpec {
     }
   }
 
+  describe("Ranges") {
+    it("counts through range and rangeWithStep") {
+      val result = shell.run(
+        """
+          |class RangeLoops {
+          |public:
+          |  static def main(args: String[]): String {
+          |    var sum = 0
+          |    foreach i: Int in Colls::range(0, 10) {
+          |      if (i % 2 == 0) { continue; }
+          |      sum = sum + i
+          |    }
+          |    var s = "" + sum + ":"
+          |    foreach i: Int in Colls::rangeWithStep(10, 0, -3) { s = s + i + " " }
+          |    val step = -4
+          |    foreach i: Integer in Colls::rangeWithStep(10, -1, step) { s = s + i + " " }
+          |    foreach d: Double in Colls::rangeWithStep(0, 5, 2) { s = s + d + " " }
+          |    return s
+          |  }
+          |}
+        """.stripMargin,
+        "RangeLoops.on",
+        Array()
+      )
+      assert(Shell.Success("25:10 7 4 1 10 6 2 0.0 2.0 4.0 ") == result)
+    }
+
+    it("rejects a variable step of zero like rangeWithStep") {
+      val result = shell.run(
+        """
+          |class ZeroStep {
+          |public:
+          |  static def count(step: Int): String {
+          |    var s = "start"
+          |    foreach i: Int in Colls::rangeWithStep(0, 5, step) { s = s + i }
+          |    return s
+          |  }
+          |  static def main(args: String[]): String {
+          |    try {
+          |      return count(args.length)
+          |    } catch e: IllegalArgumentException {
+          |      return "rejected"
+          |    }
+          |  }
+          |}
+        """.stripMargin,
+        "ZeroStep.on",
+        Array()
+      )
+      assert(Shell.Success("rejected") == result)
+    }
+  }
+
+  describe("Random access lists") {
+    it("iterates an ArrayList by index") {
+      val result = shell.run(
+        """
+          |import {
+          |  java.util.ArrayList;
+          |}
+          |class IndexedLoop {
+          |public:
+          |  static def main(args: String[]): String {
+          |    val list = new ArrayList[String]()
+          |    list.add("a")
+          |    list.add("b")
+          |    list.add("c")
+          |    var result = ""
+          |    foreach x: String in list {
+          |      if (x == "b") { continue; }
+          |      result = result + x
+          |    }
+          |    return result
+          |  }
+          |}
+        """.stripMargin,
+        "IndexedLoop.on",
+        Array()
+      )
+      assert(Shell.Success("ac") == result)
+    }
+
+    it("visits elements added during the loop") {
+      val result = shell.run(
+        """
+          |import {
+          |  java.util.ArrayList;
+          |}
+          |class GrowingLoop {
+          |public:
+          |  static def main(args: String[]): String {
+          |    val list = new ArrayList[String]()
+          |    list.add("a")
+          |    var result = ""
+          |    foreach x: String in list {
+          |      if (list.size() < 3) { list.add(x + "+"); }
+          |      result = result + x + " "
+          |    }
+          |    return result
+          |  }
+          |}
+        """.stripMargin,
+        "GrowingLoop.on",
+        Array()
+      )
+      assert(Shell.Success("a a+ a++ ") == result)
+    }
+  }
 }
@@ -146,4 +146,132 @@ class FunctionTypeSpec extends AbstractShellSpec {
       assert(Shell.Success(3) == result)
     }
   }
+  describe("Closures") {
+    it("refer to the instance of the method defining them") {
+      val result = shell.run(
+        """
+          |class ClosureOwner {
+          |  val base: Int
+          |public:
+          |  def this(base: Int) { this.base = base }
+          |  def add(x: Int): Int = x + this.base
+          |  def run(): Int {
+          |    val f: (Int) -> Int = (x: Int) -> { return add(x) * this.base; }
+          |    return f(1)
+          |  }
+          |  static def main(args: String[]): Int = new ClosureOwner(10).run()
+          |}
+          |""".stripMargin,
+        "ClosureOwner.on",
+        Array()
+      )
+      assert(Shell.Success(110) == result)
+    }
+
+    it("keep assignments to captured variables across calls") {
+      val result = shell.run(
+        """
+          |class ClosureState {
+          |public:
+          |  static def toggle(on: Boolean): () -> JBoolean =
+          |    () -> {
+          |      on = !on
+          |      return JBoolean::valueOf(on);
+          |    }
+          |  static def main(args: String[]): String {
+          |    var name: String = "a"
+          |    val append: () -> JInteger = () -> {
+          |      name = name + "b"
+          |      val nested: () -> JInteger = () -> { name = name + "c"; return new JInteger(0); }
+          |      return nested.call();
+          |    }
+          |    append.call()
+          |    append.call()
+          |    val t: () -> JBoolean = toggle(false)
+          |    t.call()
+          |    return name + t.call()
+          |  }
+          |}
+          |""".stripMargin,
+        "ClosureState.on",
+        Array()
+      )
+      assert(Shell.Success("abcbcfalse") == result)
+    }
+
+    it("reuse one instance when they capture nothing") {
+      val result = shell.run(
+        """
+          |class ClosureReuse {
+          |  val base: Int
+          |public:
+          |  def this(base: Int) { this.base = base }
+          |  def plain(): () -> JInteger = () -> { return new JInteger(1); }
+          |  def bound(): () -> JInteger = () -> { return new JInteger(this.base); }
+          |  static def main(args: String[]): String {
+          |    val owner = new ClosureReuse(2)
+          |    var reused = true
+          |    var i = 0
+          |    while (i < 3) {
+          |      reused = reused && owner.plain() === new ClosureReuse(3).plain()
+          |      i += 1
+          |    }
+          |    return "" + reused + (owner.bound() === owner.bound())
+          |  }
+          |}
+          |""".stripMargin,
+        "ClosureReuse.on",
+        Array()
+      )
+      assert(Shell.Success("truefalse") == result)
+    }
+
+    it("implement the primitive specialization of their function type") {
+      val result = shell.run(
+        """
+          |class ClosureSpecialization {
+          |public:
+          |  static def twice(f: Int -> Int, x: Int): Int {
+          |    return f(f(x))
+          |  }
+          |  static def main(args: String[]): String {
+          |    val inc: Int -> Int = (x: Int) -> { return x + 1; }
+          |    val add: (Long, Long) -> Long = (a: Long, b: Long) -> { return a + b; }
+          |    val positive: Double -> Boolean = (d: Double) -> { return d > 0.0; }
+          |    val show: Int -> String = (i: Int) -> { return "#" + i; }
+          |    val small: Byte = 3B
+          |    return "" + twice(inc, 1) + "," + add(2L, 40L) + "," + positive(-1.5) + "," + show.call(7) + "," +
+          |      inc(small) + "," + (inc is IntToIntFunction1) + (show is IntFunction1)
+          |  }
+          |}
+          |""".stripMargin,
+        "ClosureSpecialization.on",
+        Array()
+      )
+      assert(Shell.Success("3,42,false,#7,4,truetrue") == result)
+    }
+
+    it("call functions without the specialization through call") {
+      val result = shell.run(
+        """
+          |class Doubler <: Function1[Int, Int] {
+          |public:
+          |  def this {}
+          |  def call(x: Int): Int = x * 2
+          |}
+          |class Unspecialized {
+          |public:
+          |  static def twice(f: Int -> Int, x: Int): Int = f(f(x))
+          |  static def main(args: String[]): String {
+          |    val boxed: Function1[Integer, Integer] = (x: Integer) -> { return x + 3; }
+          |    return twice(new Doubler, 5) + "," + twice(boxed, 1)
+          |  }
+          |}
+          |""".stripMargin,
+        "Unspecialized.on",
+        Array()
+      )
+      assert(Shell.Success("20,7") == result)
+    }
+  }
 }
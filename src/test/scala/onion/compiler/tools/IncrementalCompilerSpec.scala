@@ -0,0 +1,93 @@
+package onion.compiler.tools
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path}
+import onion.compiler.{CompilerConfig, IncrementalCompiler}
+import onion.compiler.CompilationOutcome.{Failure, Success}
+import onion.tools.CompilerFrontend
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.diagrams.Diagrams
+
+class IncrementalCompilerSpec extends AnyFunSpec with Diagrams {
+
+  private def write(dir: Path, name: String, content: String): Unit =
+    Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8))
+
+  private def writeSources(dir: Path, aBody: String, aApi: String, cBody: String): Unit = {
+    write(dir, "IncA.on", s"class IncA {\npublic:\n  static def value(): Int = $aBody\n$aApi}\n")
+    write(dir, "IncB.on", "class IncB {\npublic:\n  static def twice(): Int = IncA::value() * 2\n}\n")
+    write(dir, "IncC.on", s"class IncC {\npublic:\n  static def main(args: String[]): Int = $cBody\n}\n")
+  }
+
+  private val files = Seq("IncA.on", "IncB.on", "IncC.on")
+
+  private def onionc(dir: Path, sources: Seq[String]): Int =
+    new CompilerFrontend(null, dir.toFile).run(Array("--incremental", "-d", "out") ++ sources, false)
+
+  // Same options as the frontend's defaults, so the saved state is reused
+  private def config(dir: Path): CompilerConfig =
+    CompilerConfig(Seq(new File(dir.toFile, ".").getPath), "", System.getProperty("file.encoding"), new File(dir.toFile, "out").getPath, 10)
+
+  describe("IncrementalCompiler") {
+    it("recompiles only the changed source when its API is unchanged") {
+      val dir = Files.createTempDirectory("onion-incremental")
+      writeSources(dir, "1", "", "0")
+      val out = dir.resolve("out")
+      assert(onionc(dir, files) == 0)
+      assert(Files.exists(out.resolve(IncrementalCompiler.StateFileName)))
+
+      val config = this.config(dir)
+      assert(new IncrementalCompiler(config).compile(files, dir.toFile).compiledSources.isEmpty)
+
+      writeSources(dir, "1", "", "42")
+      val result = new IncrementalCompiler(config).compile(files, dir.toFile)
+      assert(result.compiledSources == Seq("IncC.on"))
+      result.outcome match {
+        case Success(classes) => assert(classes.map(_.className) == Seq("IncC"))
+        case Failure(errors) => fail(errors.mkString("\n"))
+      }
+    }
+
+    it("recompiles dependents when an API changes") {
+      val dir = Files.createTempDirectory("onion-incremental")
+      writeSources(dir, "1", "", "0")
+      val out = dir.resolve("out")
+      assert(onionc(dir, files) == 0)
+
+      val config = this.config(dir)
+      writeSources(dir, "2", "", "0")
+      assert(new IncrementalCompiler(config).compile(files, dir.toFile).compiledSources == Seq("IncA.on"))
+
+      writeSources(dir, "2", "  static def extra(): Int = 3\n", "0")
+      val result = new IncrementalCompiler(config).compile(files, dir.toFile)
+      assert(result.compiledSources == Seq("IncA.on", "IncB.on"))
+    }
+
+    it("profiles every round of an incremental run") {
+      val dir = Files.createTempDirectory("onion-incremental")
+      writeSources(dir, "1", "", "0")
+      assert(onionc(dir, files) == 0)
+
+      val profile = dir.resolve("profile.json")
+      val config = this.config(dir).copy(profileOutput = Some(profile.toString))
+      writeSources(dir, "2", "  static def extra(): Int = 3\n", "0")
+      val result = new IncrementalCompiler(config).compile(files, dir.toFile)
+      assert(result.compiledSources == Seq("IncA.on", "IncB.on"))
+      val json = Files.readString(profile)
+      assert(json.split("\"name\": \"typing\"", -1).length == 3)
+      assert(json.contains("\"name\": \"codegen\""))
+    }
+
+    it("deletes the class files of removed sources") {
+      val dir = Files.createTempDirectory("onion-incremental")
+      writeSources(dir, "1", "", "0")
+      val out = dir.resolve("out")
+      assert(onionc(dir, files) == 0)
+      assert(Files.exists(out.resolve("IncC.class")))
+      assert(onionc(dir, Seq("IncA.on", "IncB.on")) == 0)
+      assert(!Files.exists(out.resolve("IncC.class")))
+      assert(Files.exists(out.resolve("IncB.class")))
+    }
+  }
+}
@@ -216,4 +216,73 @@ class SelectStatementPatternSpec extends AbstractShellSpec {
       assert(Shell.Success("str: hello") == result)
     }
   }
+
+  describe("Select statement on constants") {
+    it("dispatches on int, char and string constants") {
+      val result = shell.run(
+        """
+          |class ConstantSelect {
+          |public:
+          |  static def num(n: Int): String {
+          |    return select n {
+          |      case 1, 2: "low"
+          |      case 3: "three"
+          |      case 1000: "big"
+          |      case -5: "neg"
+          |      case 3: "unreachable"
+          |      else: "other"
+          |    }
+          |  }
+          |  static def word(s: String): Int {
+          |    return select s {
+          |      case "Aa": 1
+          |      case "BB": 2
+          |      case "foo", "bar": 3
+          |      else: 0
+          |    }
+          |  }
+          |  static def letter(c: Char): String {
+          |    return select c {
+          |      case 'a': "A"
+          |      case 'b': "B"
+          |      else: "?"
+          |    }
+          |  }
+          |  static def main(args: String[]): String {
+          |    return num(1) + num(2) + num(3) + num(1000) + num(-5) + num(7) + ":" +
+          |      word("Aa") + word("BB") + word("bar") + word("foo") + word("x") + ":" +
+          |      letter('a') + letter('b') + letter('z')
+          |  }
+          |}
+          |""".stripMargin,
+        "ConstantSelect.on",
+        Array()
+      )
+      assert(Shell.Success("lowlowthreebignegother:12330:AB?") == result)
+    }
+
+    it("dispatches on enum constants") {
+      val result = shell.run(
+        """
+          |enum Color { RED, GREEN, BLUE }
+          |class EnumSelect {
+          |public:
+          |  static def name(c: Color): String {
+          |    select c {
+          |      case Color::RED: return "r"
+          |      case Color::BLUE: return "b"
+          |    }
+          |    return "g"
+          |  }
+          |  static def main(args: String[]): String {
+          |    return name(Color::RED) + name(Color::GREEN) + name(Color::BLUE)
+          |  }
+          |}
+          |""".stripMargin,
+        "EnumSelect.on",
+        Array()
+      )
+      assert(Shell.Success("rgb") == result)
+    }
+  }
 }
@@ -0,0 +1,166 @@
+package onion.compiler.tools
+
+import onion.tools.Shell
+import onion.compiler.{CompilationOutcome, CompilerConfig, InputSource, OnionCompiler}
+import java.io.{Reader, StringReader}
+
+class TailCallSpec extends AbstractShellSpec {
+  private def compileErrors(source: String): Seq[(String, Int)] = {
+    val config = CompilerConfig(Seq("."), "java.lang.Object", "UTF-8", ".", 10)
+    val input = new InputSource {
+      override def openReader: Reader = new StringReader(source)
+      override def name: String = "TailRec.on"
+    }
+    new OnionCompiler(config).compile(Seq(input)) match {
+      case CompilationOutcome.Failure(errors) => errors.flatMap(e => e.errorCode.map(_ -> e.location.line))
+      case success => fail(s"expected compilation to fail: $success")
+    }
+  }
+
+  describe("Self tail calls") {
+    it("run in constant stack space") {
+      val result = shell.run(
+        """
+          |class DeepRecursion {
+          |  def count(n: Int, acc: Long): Long {
+          |    if n == 0 { return acc; }
+          |    return count(n - 1, acc + n);
+          |  }
+          |public:
+          |  def this {}
+          |  static def down(n: Int): Int = if n == 0 { 7 } else { down(n - 1) }
+          |  static def main(args: String[]): String {
+          |    return new DeepRecursion().count(10000000, 0L) + " " + down(10000000)
+          |  }
+          |}
+          |""".stripMargin,
+        "DeepRecursion.on",
+        Array()
+      )
+      assert(Shell.Success("50000005000000 7") == result)
+    }
+
+    it("evaluate every argument before rebinding the parameters") {
+      val result = shell.run(
+        """
+          |class Rebinding {
+          |public:
+          |  static def swap(a: String, b: String, k: Int): String {
+          |    if k == 0 { return a + b; }
+          |    return swap(b, a, k - 1);
+          |  }
+          |  static def visit(n: Int, seen: StringBuilder): Unit {
+          |    if n > 0 {
+          |      val f: () -> String = () -> { return "" + n; };
+          |      seen.append(f.call());
+          |      visit(n - 1, seen);
+          |    }
+          |  }
+          |  static def main(args: String[]): String {
+          |    val seen = new StringBuilder
+          |    visit(3, seen)
+          |    return swap("x", "y", 3) + " " + seen
+          |  }
+          |}
+          |""".stripMargin,
+        "Rebinding.on",
+        Array()
+      )
+      assert(Shell.Success("yx 321") == result)
+    }
+
+    it("leave calls that may dispatch to an override alone") {
+      val result = shell.run(
+        """
+          |class Countdown {
+          |public:
+          |  def this {}
+          |  def step(n: Int): String {
+          |    if n == 0 { return "base"; }
+          |    return step(n - 1);
+          |  }
+          |}
+          |class Shortcut : Countdown {
+          |public:
+          |  def this {}
+          |  def step(n: Int): String = "override"
+          |  static def main(args: String[]): String {
+          |    return new Shortcut().step(3)
+          |  }
+          |}
+          |""".stripMargin,
+        "Shortcut.on",
+        Array()
+      )
+      assert(Shell.Success("override") == result)
+    }
+  }
+
+  describe("tailrec") {
+    it("accepts a method whose recursive calls are all tail calls") {
+      val result = shell.run(
+        """
+          |class Gcd {
+          |public:
+          |  tailrec static def gcd(a: Int, b: Int): Int {
+          |    if b == 0 { return a; }
+          |    return gcd(b, a % b);
+          |  }
+          |  static def main(args: String[]): Int {
+          |    return gcd(1071, 462)
+          |  }
+          |}
+          |""".stripMargin,
+        "Gcd.on",
+        Array()
+      )
+      assert(Shell.Success(21) == result)
+    }
+
+    it("rejects a recursive call outside tail position") {
+      val errors = compileErrors(
+        """
+          |tailrec def factorial(n: Int): Int {
+          |  if n < 2 { return 1; }
+          |  return n * factorial(n - 1);
+          |}
+          |class Guarded {
+          |  tailrec def drain(n: Int): Int {
+          |    try { return drain(n - 1); } finally { IO::println(n); }
+          |  }
+          |}
+          |""".stripMargin)
+      assert(errors == Seq("E0054" -> 4, "E0054" -> 8))
+    }
+
+    it("reports only the calls on its own receiver") {
+      val errors = compileErrors(
+        """
+          |class Chain {
+          |  val next: Chain
+          |  tailrec def length(n: Int): Int {
+          |    if this.next == null { return n; }
+          |    val rest = this.next.length(0)
+          |    if rest < 0 { return length(n + 1) + 1; }
+          |    return length(n + 1);
+          |  }
+          |}
+          |""".stripMargin)
+      assert(errors == Seq("E0054" -> 7))
+    }
+
+    it("rejects a method that can be overridden") {
+      val errors = compileErrors(
+        """
+          |class Open {
+          |public:
+          |  tailrec def loop(n: Int): Int {
+          |    if n == 0 { return 0; }
+          |    return loop(n - 1);
+          |  }
+          |}
+          |""".stripMargin)
+      assert(errors == Seq("E0053" -> 4))
+    }
+  }
+}
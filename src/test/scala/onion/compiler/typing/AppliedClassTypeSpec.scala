@@ -0,0 +1,42 @@
+package onion.compiler.typing
+
+import java.util.concurrent.{Callable, Executors}
+import onion.compiler.{ClassTable, TypedAST}
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.diagrams.Diagrams
+import scala.jdk.CollectionConverters._
+
+class AppliedClassTypeSpec extends AnyFunSpec with Diagrams {
+  private val table = new ClassTable(".")
+  private val list = table.load("java.util.List")
+  private val string = table.load("java.lang.String")
+  private val integer = table.load("java.lang.Integer")
+
+  describe("AppliedClassType interning") {
+    it("returns the same instance for the same raw type and arguments") {
+      val a = TypedAST.AppliedClassType(list, List(string))
+      val b = TypedAST.AppliedClassType(list, Array[TypedAST.Type](string))
+      assert(a eq b)
+      assert(!(a eq TypedAST.AppliedClassType(list, List(integer))))
+    }
+
+    it("is scoped to the class table owning the raw type") {
+      val other = new ClassTable(".")
+      val applied = TypedAST.AppliedClassType(other.load("java.util.List"), List(other.load("java.lang.String")))
+      assert(!(applied eq TypedAST.AppliedClassType(list, List(string))))
+      other.close()
+    }
+
+    it("publishes one instance when threads race on the same arguments") {
+      val raw = table.load("java.util.Map")
+      val pool = Executors.newFixedThreadPool(8)
+      try {
+        val tasks = (1 to 64).map(_ => new Callable[TypedAST.AppliedClassType] {
+          def call(): TypedAST.AppliedClassType = TypedAST.AppliedClassType(raw, List(string, integer))
+        })
+        val results = pool.invokeAll(tasks.asJava).asScala.map(_.get)
+        assert(results.forall(_ eq results.head))
+      } finally pool.shutdown()
+    }
+  }
+}
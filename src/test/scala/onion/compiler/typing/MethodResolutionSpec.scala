@@ -2,7 +2,7 @@ package onion.compiler.typing
 
 import org.scalatest.funspec.AnyFunSpec
 import org.scalatest.diagrams.Diagrams
-import onion.compiler.TypedAST
+import onion.compiler.{ClassTable, Modifier, TypedAST}
 import onion.compiler.TypedAST._
 
 /**
@@ -193,4 +193,62 @@ class MethodResolutionSpec extends AnyFunSpec with Diagrams {
       assert(!TypeRules.isAllSuperType(intArgs, boolArgs))
     }
   }
+
+  // ============================================
+  // Flattened Method Tables and Memoized Resolution
+  // ============================================
+
+  describe("Method tables") {
+    val table = new ClassTable(".")
+    val arrayList = table.load("java.util.ArrayList")
+
+    it("flatten inherited methods and are reused for class-path types") {
+      val adds = arrayList.allMethods("add")
+      assert(adds.exists(_.affiliation.name == "java.util.ArrayList"))
+      val arities = adds.map(_.arguments.length).toSet
+      assert(arities.contains(1) && arities.contains(2))
+      val waits = arrayList.allMethods("wait")
+      assert(waits.forall(_.affiliation.name == "java.lang.Object"))
+      assert(arrayList.allMethods("add") eq adds)
+      val applied = TypedAST.AppliedClassType(arrayList, List(table.load("java.lang.String")))
+      assert(applied.allMethods("add") eq adds)
+    }
+
+    it("pick up methods added to a source class") {
+      val source = ClassDefinition.newClass(null, Modifier.PUBLIC, "MethodTableSample", arrayList, Array())
+      table.classes.add(source)
+      assert(source.allMethods("sample").isEmpty)
+      val sample = new MethodDefinition(null, Modifier.PUBLIC, source, "sample", Array(), BasicType.INT, null)
+      source.add(sample)
+      val samples = source.allMethods("sample")
+      assert(samples.length == 1)
+      assert(samples(0) eq sample)
+    }
+
+    it("are kept when a source class of another table changes") {
+      val source = ClassDefinition.newClass(null, Modifier.PUBLIC, "KeptSample", arrayList, Array())
+      table.classes.add(source)
+      val adds = source.allMethods("add")
+      val other = new ClassTable(".")
+      val elsewhere = ClassDefinition.newClass(null, Modifier.PUBLIC, "ElsewhereSample", arrayList, Array())
+      other.classes.add(elsewhere)
+      elsewhere.add(new MethodDefinition(null, Modifier.PUBLIC, elsewhere, "add", Array(BasicType.INT), BasicType.INT, null))
+      assert(source.allMethods("add") eq adds)
+      assert(elsewhere.allMethods("add").length == adds.length + 1)
+    }
+
+    it("memoize resolutions until a source class changes") {
+      val source = ClassDefinition.newClass(null, Modifier.PUBLIC, "ResolutionSample", arrayList, Array())
+      table.classes.add(source)
+      val params = Array[Term](new IntValue(1))
+      val before = MethodResolution.findMethods(source, "get", params, table)
+      assert(before.length == 1)
+      assert(MethodResolution.findMethods(source, "get", params, table).sameElements(before))
+      val overriding = new MethodDefinition(null, Modifier.PUBLIC, source, "get", Array(BasicType.INT), table.rootClass, null)
+      source.add(overriding)
+      val after = MethodResolution.findMethods(source, "get", params, table)
+      assert(after.length == 1)
+      assert(after(0) eq overriding)
+    }
+  }
 }
@@ -2,7 +2,7 @@ package onion.compiler.typing
 
 import org.scalatest.funspec.AnyFunSpec
 import org.scalatest.diagrams.Diagrams
-import onion.compiler.TypedAST
+import onion.compiler.{ClassTable, Modifier, TypedAST}
 import onion.compiler.TypedAST._
 
 /**
@@ -306,4 +306,52 @@ class TypeRulesSpec extends AnyFunSpec with Diagrams {
       // This requires creating mock TypeVariableType instances
     }
   }
+
+  // ============================================
+  // Class Subtyping via Supertype Closures
+  // ============================================
+
+  describe("Class subtyping") {
+    val table = new ClassTable(".")
+    val arrayList = table.load("java.util.ArrayList")
+    val collection = table.load("java.util.Collection")
+    val string = table.load("java.lang.String")
+    val integer = table.load("java.lang.Integer")
+
+    it("answers from a closure built once per class-path type") {
+      assert(TypeRules.isSuperType(collection, arrayList))
+      assert(TypeRules.isSuperType(table.rootClass, arrayList))
+      assert(!TypeRules.isSuperType(arrayList, collection))
+      assert(!TypeRules.isSuperType(string, arrayList))
+      assert(arrayList.supertypes eq arrayList.supertypes)
+    }
+
+    it("matches applied supertypes by their type arguments") {
+      val strings = TypedAST.AppliedClassType(arrayList, List(string))
+      val stringCollection = TypedAST.AppliedClassType(collection, List(string))
+      val integerCollection = TypedAST.AppliedClassType(collection, List(integer))
+      assert(TypeRules.isSuperType(stringCollection, strings))
+      assert(!TypeRules.isSuperType(integerCollection, strings))
+      assert(TypeRules.isSuperType(collection, strings))
+      val wildcard = TypedAST.AppliedClassType(collection, List(new WildcardType(table.rootClass, None)))
+      assert(TypeRules.isSuperType(wildcard, strings))
+    }
+
+    it("sees supertypes assigned to a source class later") {
+      val source = ClassDefinition.newClass(null, Modifier.PUBLIC, "SupertypeSample", table.rootClass, Array())
+      assert(!TypeRules.isSuperType(collection, source))
+      source.setSuperClass(arrayList)
+      assert(TypeRules.isSuperType(collection, source))
+    }
+
+    it("re-checks type arguments mentioning a source class that changed") {
+      val source = ClassDefinition.newClass(null, Modifier.PUBLIC, "ArgumentSample", table.rootClass, Array())
+      table.classes.add(source)
+      val sources = TypedAST.AppliedClassType(arrayList, List(source))
+      val collections = TypedAST.AppliedClassType(collection, List(new WildcardType(collection, None)))
+      assert(!TypeRules.isSuperType(collections, sources))
+      source.setSuperClass(arrayList)
+      assert(TypeRules.isSuperType(collections, sources))
+    }
+  }
 }